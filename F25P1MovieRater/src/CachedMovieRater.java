@@ -0,0 +1,616 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// -------------------------------------------------------------------------
+/**
+ * MovieRater that answers repeated listReviewer, listMovie, similarReviewer
+ * and similarMovie calls from a size bounded LRU cache in front of a
+ * MovieRaterDB. Writes drop exactly the cached answers they can change:
+ *
+ * -a rating (r, m): the listings of r and m, similarMovie of m and of every
+ * movie r rated, similarReviewer of r and of every reviewer of m
+ * -reviewer r: the above for each of r's ratings, together
+ * -movie m: the above for each of m's ratings, together
+ *
+ * To find them without walking the matrix, each cached answer is indexed
+ * by the reviewers and movies whose ratings it read: listReviewer(r) by r,
+ * similarMovie(m) by m and every reviewer of m, and the same way round for
+ * movies. A change to rating (r, m) then drops whatever is indexed under r
+ * or m, so it costs about as much as what it drops, however many ratings r
+ * and m have. Deleting a reviewer or movie still walks its own ratings,
+ * which the delete does anyway. The index stays right because an answer's
+ * reviewers and movies cannot change while it is cached: any change to
+ * them drops it first.
+ *
+ * A write that changes nothing (deleting a missing score) drops nothing.
+ * printRatings and the top-k queries are passed straight through.
+ *
+ * @author benblucher, austink23
+ * @version Oct 17, 2026
+ */
+public class CachedMovieRater implements MovieRater {
+
+    private static final int LIST_REVIEWER = 0; // cache key kinds
+    private static final int LIST_MOVIE = 1;
+    private static final int SIMILAR_REVIEWER = 2;
+    private static final int SIMILAR_MOVIE = 3;
+    private static final Object NOT_FOUND = new Object(); // a cached null
+
+    private final MovieRaterDB db; // the database being cached
+    private final int capacity; // most answers kept
+    private final LinkedHashMap<Long, Object> cache; // in LRU order
+    private final Map<Integer, HashSet<Long>> byReviewer; // keys reading r
+    private final Map<Integer, HashSet<Long>> byMovie; // keys reading m
+    private final Map<Long, Reads> reads; // what each cached key read
+
+    private long hits; // lookups answered from the cache
+    private long misses; // lookups passed to the database
+    private long evictions; // answers dropped to make room
+    private long invalidations; // answers dropped by writes
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new CachedMovieRater.
+     *
+     * @param db
+     *            the database to put the cache in front of
+     * @param capacity
+     *            the most answers to keep
+     */
+    public CachedMovieRater(MovieRaterDB db, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: "
+                + capacity);
+        }
+        this.db = db;
+        this.capacity = capacity;
+        cache = new LinkedHashMap<Long, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Object> e) {
+                if (size() > CachedMovieRater.this.capacity) {
+                    evictions++;
+                    unindex(e.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        byReviewer = new HashMap<>();
+        byMovie = new HashMap<>();
+        reads = new HashMap<>();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * (Re)initialize the database.
+     *
+     * @return true on clear
+     */
+    public boolean clear() {
+        invalidations += cache.size();
+        cache.clear();
+        byReviewer.clear();
+        byMovie.clear();
+        reads.clear();
+        return db.clear();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Add a score to the database. If there already is a score for this
+     * reviewer and movie pair, then update it.
+     *
+     * @param reviewer
+     *            The reviewer giving the rating
+     *            (must be a positive integer)
+     * @param movie
+     *            The movie being rated
+     *            (must be a positive integer)
+     * @param score
+     *            The rating score (1-10)
+     * @return True if the review was successfully added.
+     *         False otherwise (for bad input values)
+     */
+    public boolean addReview(int reviewer, int movie, int score) {
+        if (!MovieRaterDB.isValid(reviewer, movie, score)) {
+            return false;
+        }
+        invalidateRating(reviewer, movie);
+        return db.addReview(reviewer, movie, score);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified reviewer. This will delete all associated ratings.
+     *
+     * @param reviewer
+     *            The reviewer to delete
+     *
+     * @return True if the reviewer was successfully deleted.
+     *         False if no such reviewer in the database.
+     */
+    public boolean deleteReviewer(int reviewer) {
+        SparseMatrix.HeaderNode header = db.matrix().peekRowHeader(reviewer);
+        if (header == null) {
+            return false;
+        }
+        dropReading(byReviewer, reviewer);
+        for (SparseMatrix.Node node = header.getnNode(); node != null;
+            node = node.getRight()) {
+            dropReading(byMovie, node.getCol()); // each rating goes
+        }
+        return db.deleteReviewer(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified movie. This will delete all associated ratings.
+     *
+     * @param movie
+     *            The movie to delete
+     *
+     * @return True if the movie was successfully deleted.
+     *         False if no such movie in the database.
+     */
+    public boolean deleteMovie(int movie) {
+        SparseMatrix.HeaderNode header = db.matrix().peekColHeader(movie);
+        if (header == null) {
+            return false;
+        }
+        dropReading(byMovie, movie);
+        for (SparseMatrix.Node node = header.getnNode(); node != null;
+            node = node.getDown()) {
+            dropReading(byReviewer, node.getRow()); // each rating goes
+        }
+        return db.deleteMovie(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified score.
+     *
+     * @param reviewer
+     *            The reviewer of the score to delete
+     * @param movie
+     *            The movie of the score to delete
+     *
+     * @return True if the score was successfully deleted.
+     *         False if no such score in the database.
+     */
+    public boolean deleteScore(int reviewer, int movie) {
+        if (!db.matrix().contains(reviewer, movie)) {
+            return false; // nothing to delete, nothing changes
+        }
+        invalidateRating(reviewer, movie);
+        return db.deleteScore(reviewer, movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Dump out all the ratings. Each reviewer's rating should be in a
+     * separate line (in ascending order by reviewer index), with
+     * movie/score pairs listed in ascending order of movie index.
+     *
+     * @return String representing the listing, empty string if there are none
+     */
+    public String printRatings() {
+        return db.printRatings();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given reviewer, with scores listed in
+     * ascending order of movie index.
+     *
+     * @param reviewer
+     *            The reviewer to list ratings for
+     * @return String representing the listing, null if no such reviewer
+     */
+    public String listReviewer(int reviewer) {
+        Object answer = cache.get(key(LIST_REVIEWER, reviewer));
+        if (answer == null) {
+            misses++;
+            answer = remember(LIST_REVIEWER, reviewer, db.listReviewer(
+                reviewer));
+        }
+        else {
+            hits++;
+        }
+        return answer == NOT_FOUND ? null : (String)answer;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given movie, with scores listed in
+     * ascending order of reviewer index.
+     *
+     * @param movie
+     *            The movie to list ratings for
+     * @return String representing the listing, null if no such movie
+     */
+    public String listMovie(int movie) {
+        Object answer = cache.get(key(LIST_MOVIE, movie));
+        if (answer == null) {
+            misses++;
+            answer = remember(LIST_MOVIE, movie, db.listMovie(movie));
+        }
+        else {
+            hits++;
+        }
+        return answer == NOT_FOUND ? null : (String)answer;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the movie most similar to the specified one.
+     *
+     * @param movie
+     *            the movie to find match for.
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    public int similarMovie(int movie) {
+        Object answer = cache.get(key(SIMILAR_MOVIE, movie));
+        if (answer == null) {
+            misses++;
+            answer = remember(SIMILAR_MOVIE, movie, db.similarMovie(movie));
+        }
+        else {
+            hits++;
+        }
+        return (Integer)answer;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the reviewer most similar to the specified one.
+     *
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    public int similarReviewer(int reviewer) {
+        Object answer = cache.get(key(SIMILAR_REVIEWER, reviewer));
+        if (answer == null) {
+            misses++;
+            answer = remember(SIMILAR_REVIEWER, reviewer, db.similarReviewer(
+                reviewer));
+        }
+        else {
+            hits++;
+        }
+        return (Integer)answer;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k movies most similar to the specified one, best first.
+     * Not cached.
+     *
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this movie does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarMovies(int movie, int k) {
+        return db.similarMovies(movie, k);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k reviewers most similar to the specified one, best first.
+     * Not cached.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this reviewer does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        return db.similarReviewers(reviewer, k);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a movie's ratings.
+     * Not cached, the database keeps these up to date itself.
+     *
+     * @param movie
+     *            the movie to summarize.
+     * @return The stats, null if no such movie.
+     */
+    public RatingStats movieStats(int movie) {
+        return db.movieStats(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a reviewer's ratings.
+     * Not cached, the database keeps these up to date itself.
+     *
+     * @param reviewer
+     *            the reviewer to summarize.
+     * @return The stats, null if no such reviewer.
+     */
+    public RatingStats reviewerStats(int reviewer) {
+        return db.reviewerStats(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of lookups that had to go to the database.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of answers dropped because the cache was full.
+     *
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of answers dropped because a write changed them.
+     *
+     * @return the invalidation count
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of answers in the cache.
+     *
+     * @return the number of cached answers
+     */
+    public int size() {
+        return cache.size();
+    }
+
+
+    /**
+     * Drop every cached answer that a change to the rating (reviewer,
+     * movie) can affect: those that read the reviewer's or the movie's
+     * ratings.
+     *
+     * @param reviewer
+     *            - the rating's reviewer
+     * @param movie
+     *            - the rating's movie
+     */
+    private void invalidateRating(int reviewer, int movie) {
+        dropReading(byReviewer, reviewer);
+        dropReading(byMovie, movie);
+    }
+
+
+    /**
+     * Drop every cached answer indexed under one reviewer or movie.
+     *
+     * @param index
+     *            - byReviewer or byMovie
+     * @param id
+     *            - the reviewer or movie
+     */
+    private void dropReading(Map<Integer, HashSet<Long>> index, int id) {
+        HashSet<Long> keys = index.remove(id);
+        if (keys == null) {
+            return; // nothing cached read it
+        }
+        for (Long key : keys) {
+            cache.remove(key);
+            unindex(key); // never touches keys, it is out of the index
+            invalidations++;
+        }
+    }
+
+
+    /**
+     * Cache an answer.
+     *
+     * @param kind
+     *            - which query
+     * @param id
+     *            - the reviewer or movie
+     * @param answer
+     *            - the answer, may be null
+     * @return what was stored, NOT_FOUND for null
+     */
+    private Object remember(int kind, int id, Object answer) {
+        Object stored = answer == null ? NOT_FOUND : answer;
+        Long key = key(kind, id);
+        cache.put(key, stored);
+        index(key, kind, id);
+        return stored;
+    }
+
+
+    /**
+     * Index a newly cached answer under the reviewers and movies whose
+     * changes can affect it, following the rules in the class comment.
+     *
+     * @param key
+     *            - the answer's cache key
+     * @param kind
+     *            - which query
+     * @param id
+     *            - the reviewer or movie
+     */
+    private void index(Long key, int kind, int id) {
+        int[] reviewers = {};
+        int[] movies = {};
+        if (kind == LIST_REVIEWER) {
+            reviewers = new int[] { id };
+        }
+        else if (kind == LIST_MOVIE) {
+            movies = new int[] { id };
+        }
+        else if (kind == SIMILAR_REVIEWER) {
+            reviewers = new int[] { id };
+            movies = lineIds(db.matrix().peekRowHeader(id), true);
+        }
+        else {
+            movies = new int[] { id };
+            reviewers = lineIds(db.matrix().peekColHeader(id), false);
+        }
+        reads.put(key, new Reads(reviewers, movies));
+        for (int reviewer : reviewers) {
+            byReviewer.computeIfAbsent(reviewer, r -> new HashSet<>()).add(
+                key);
+        }
+        for (int movie : movies) {
+            byMovie.computeIfAbsent(movie, m -> new HashSet<>()).add(key);
+        }
+    }
+
+
+    /**
+     * Take an answer that is leaving the cache out of the index.
+     *
+     * @param key
+     *            - the answer's cache key
+     */
+    private void unindex(Long key) {
+        Reads read = reads.remove(key);
+        if (read == null) {
+            return;
+        }
+        for (int reviewer : read.reviewers) {
+            unindex(byReviewer, reviewer, key);
+        }
+        for (int movie : read.movies) {
+            unindex(byMovie, movie, key);
+        }
+    }
+
+
+    /**
+     * Remove one key from the set indexed under one reviewer or movie,
+     * and the set too once it is empty.
+     *
+     * @param index
+     *            - byReviewer or byMovie
+     * @param id
+     *            - the reviewer or movie
+     * @param key
+     *            - the cache key
+     */
+    private static void unindex(
+        Map<Integer, HashSet<Long>> index,
+        int id,
+        Long key) {
+        HashSet<Long> keys = index.get(id);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            index.remove(id);
+        }
+    }
+
+
+    /**
+     * Collect the other ids along a row (its movies) or a column (its
+     * reviewers).
+     *
+     * @param header
+     *            - the row or column, may be null
+     * @param row
+     *            - true for a row
+     * @return the ids, empty for no header
+     */
+    private static int[] lineIds(SparseMatrix.HeaderNode header, boolean row) {
+        if (header == null) {
+            return new int[0];
+        }
+        int[] ids = new int[header.getCount()];
+        int i = 0;
+        for (SparseMatrix.Node node = header.getnNode(); node != null;
+            node = row ? node.getRight() : node.getDown()) {
+            ids[i++] = row ? node.getCol() : node.getRow();
+        }
+        return ids;
+    }
+
+
+    /**
+     * Pack a query kind and id into one cache key.
+     *
+     * @param kind
+     *            - which query
+     * @param id
+     *            - the reviewer or movie
+     * @return the key
+     */
+    private static Long key(int kind, int id) {
+        return ((long)kind << 32) | (id & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * The reviewers and movies a cached answer is indexed under.
+     */
+    private static final class Reads {
+        private final int[] reviewers; // whose changes drop the answer
+        private final int[] movies; // the same for movies
+
+        /**
+         * Create a new Reads.
+         *
+         * @param reviewers
+         *            - the reviewers
+         * @param movies
+         *            - the movies
+         */
+        Reads(int[] reviewers, int[] movies) {
+            this.reviewers = reviewers;
+            this.movies = movies;
+        }
+    }
+}
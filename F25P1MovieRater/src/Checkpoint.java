@@ -0,0 +1,382 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact binary checkpoint of a SparseMatrix, written and read through a
+ * FileChannel. After a 20 byte header (MAGIC, VERSION, row count, rating
+ * count) the rows follow in ascending order, each as:
+ *
+ * -the row id, as a varint of its zigzag delta from the previous row id
+ * -the number of values in the row, as a varint
+ * -each col id, as a varint of its zigzag delta from the previous col id
+ * (the first from 0), so runs of nearby movies take a byte each
+ * -the values packed two to a byte, 4 bits each (scores are 1-10)
+ *
+ * A rating usually takes a byte and a half. Since the file is in (row,
+ * col) order, read() links every node straight onto the end of its row
+ * and column with SparseMatrix.Appender, with no searching or sorting.
+ *
+ * write() goes to a temporary file that is forced and then moved over the
+ * target, so a crash never leaves a half written checkpoint behind.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class Checkpoint {
+
+    private static final int MAGIC = 0x4D52434B; // "MRCK"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int BUFFER_BYTES = 1 << 20; // I/O buffer size
+    private static final int MAX_VARINT = 10; // bytes in the longest varint
+    private static final int MAX_VALUE = 15; // largest 4 bit value
+
+    private final FileChannel channel; // file being written or read
+    private final ByteBuffer buffer; // bytes on their way to or from it
+
+    /**
+     * Create a Checkpoint over an open file.
+     *
+     * @param channel
+     *            - the file
+     */
+    private Checkpoint(FileChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    }
+
+
+    /**
+     * Write every value of a matrix to a checkpoint file, replacing it.
+     *
+     * @param matrix
+     *            - the matrix to save
+     * @param file
+     *            - the checkpoint file
+     * @return the number of values written
+     * @throws IOException
+     *             if writing fails
+     * @throws IllegalArgumentException
+     *             if a value does not fit in 4 bits (1-15)
+     */
+    static long write(SparseMatrix matrix, Path file) throws IOException {
+        Path temp = Paths.get(file + ".tmp");
+        long ratings;
+        try (FileChannel channel = FileChannel.open(temp,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ratings = new Checkpoint(channel).writeMatrix(matrix);
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        return ratings;
+    }
+
+
+    /**
+     * Read a checkpoint file into a new matrix.
+     *
+     * @param file
+     *            - the checkpoint file
+     * @return the matrix
+     * @throws IOException
+     *             if reading fails or the file is not a whole checkpoint
+     */
+    static SparseMatrix read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.READ)) {
+            return new Checkpoint(channel).readMatrix();
+        }
+    }
+
+
+    /**
+     * Write the header and every row, then force the file.
+     *
+     * @param matrix
+     *            - the matrix to save
+     * @return the number of values written
+     * @throws IOException
+     *             if writing fails
+     */
+    private long writeMatrix(SparseMatrix matrix) throws IOException {
+        buffer.position(HEADER_BYTES); // filled in once the counts are known
+        int rows = 0;
+        long ratings = 0;
+        long prevRow = 0;
+        SparseMatrix.HeaderNode header = matrix.getRowHeaderList();
+        while (header != null) {
+            SparseMatrix.Node first = header.getnNode();
+            if (first != null) {
+                int count = header.getCount();
+                room(2 * MAX_VARINT);
+                putVarLong(zigzag(header.getIndex() - prevRow));
+                putVarLong(count);
+                prevRow = header.getIndex();
+
+                long prevCol = 0;
+                for (SparseMatrix.Node n = first; n != null; n = n
+                    .getRight()) {
+                    room(MAX_VARINT);
+                    putVarLong(zigzag(n.getCol() - prevCol));
+                    prevCol = n.getCol();
+                }
+                for (SparseMatrix.Node n = first; n != null; n = n
+                    .getRight()) {
+                    int low = nibble(n);
+                    n = n.getRight();
+                    int high = n == null ? 0 : nibble(n);
+                    room(1);
+                    buffer.put((byte)(low | (high << 4)));
+                    if (n == null) {
+                        break;
+                    }
+                }
+                rows++;
+                ratings += count;
+            }
+            header = header.getN();
+        }
+        drain();
+
+        ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES);
+        head.putInt(MAGIC).putInt(VERSION).putInt(rows).putLong(ratings);
+        head.flip();
+        while (head.hasRemaining()) {
+            channel.write(head, head.position());
+        }
+        channel.force(true);
+        return ratings;
+    }
+
+
+    /**
+     * Read the header and every row, appending the values to a new
+     * matrix.
+     *
+     * @return the matrix
+     * @throws IOException
+     *             if reading fails or the file is not a whole checkpoint
+     */
+    private SparseMatrix readMatrix() throws IOException {
+        buffer.limit(0);
+        need(HEADER_BYTES);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a MovieRater checkpoint");
+        }
+        int rows = buffer.getInt();
+        long ratings = buffer.getLong();
+        // every rating takes at least a byte for its col delta
+        if (rows < 0 || ratings < 0 || ratings > channel.size()) {
+            throw new IOException("corrupt checkpoint header");
+        }
+
+        SparseMatrix matrix = new SparseMatrix();
+        SparseMatrix.Appender appender = matrix.appender();
+        int[] cols = new int[16];
+        long row = 0;
+        long seen = 0;
+        for (int r = 0; r < rows; r++) {
+            row += unzigzag(getVarLong());
+            long count = getVarLong();
+            // ids are positive ints, and count has to fit an int array
+            if (row <= 0 || row > Integer.MAX_VALUE || count <= 0
+                || count > Integer.MAX_VALUE || seen + count > ratings) {
+                throw new IOException("corrupt checkpoint row " + row);
+            }
+            if (count > cols.length) {
+                cols = new int[(int)Math.max(count, cols.length * 2L)];
+            }
+            long col = 0;
+            for (int i = 0; i < count; i++) {
+                col += unzigzag(getVarLong());
+                if (col <= 0 || col > Integer.MAX_VALUE) {
+                    throw new IOException("corrupt checkpoint row " + row);
+                }
+                cols[i] = (int)col;
+            }
+            try {
+                for (int i = 0; i < count; i += 2) {
+                    need(1);
+                    int packed = buffer.get() & 0xFF;
+                    appender.append((int)row, cols[i], value(packed & 0xF));
+                    if (i + 1 < count) {
+                        appender.append((int)row, cols[i + 1], value(
+                            packed >>> 4));
+                    }
+                }
+            }
+            catch (IllegalArgumentException e) {
+                // rows or cols out of order: the deltas were damaged
+                throw new IOException("corrupt checkpoint row " + row, e);
+            }
+            seen += count;
+        }
+        if (seen != ratings) {
+            throw new IOException("checkpoint is missing ratings");
+        }
+        return matrix;
+    }
+
+
+    /**
+     * Get the 4 bit form of a node's value.
+     *
+     * @param node
+     *            - the node
+     * @return its value
+     * @throws IllegalArgumentException
+     *             if the value does not fit in 4 bits
+     */
+    private static int nibble(SparseMatrix.Node node) {
+        int value = node.getValue();
+        if (value < 1 || value > MAX_VALUE) {
+            throw new IllegalArgumentException("value " + value + " at ("
+                + node.getRow() + ", " + node.getCol()
+                + ") does not fit in a checkpoint");
+        }
+        return value;
+    }
+
+
+    /**
+     * Check a value read back from the file.
+     *
+     * @param value
+     *            - the 4 bit value
+     * @return the value
+     * @throws IOException
+     *             if it is 0, which write() never produces for a rating
+     */
+    private static int value(int value) throws IOException {
+        if (value == 0) {
+            throw new IOException("corrupt checkpoint value");
+        }
+        return value;
+    }
+
+
+    /**
+     * Make sure the write buffer has room for some bytes, writing it out
+     * first if not.
+     *
+     * @param bytes
+     *            - room needed
+     * @throws IOException
+     *             if writing fails
+     */
+    private void room(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+
+    /**
+     * Write out everything in the write buffer.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+
+    /**
+     * Make sure the read buffer holds some bytes, reading more if not.
+     *
+     * @param bytes
+     *            - bytes needed
+     * @throws IOException
+     *             if reading fails or the file ends first
+     */
+    private void need(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("checkpoint ends early");
+            }
+        }
+        buffer.flip();
+    }
+
+
+    /**
+     * Append an unsigned varint: 7 bits per byte, low bits first, high
+     * bit set on every byte but the last.
+     *
+     * @param value
+     *            - the value, treated as unsigned
+     */
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+
+    /**
+     * Read an unsigned varint.
+     *
+     * @return the value
+     * @throws IOException
+     *             if the file ends first or the varint is too long
+     */
+    private long getVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT; shift += 7) {
+            need(1);
+            byte b = buffer.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("corrupt checkpoint varint");
+    }
+
+
+    /**
+     * Map a signed delta to an unsigned one, small magnitudes first.
+     *
+     * @param delta
+     *            - the delta
+     * @return 0, -1, 1, -2, 2 ... as 0, 1, 2, 3, 4 ...
+     */
+    private static long zigzag(long delta) {
+        return (delta << 1) ^ (delta >> 63);
+    }
+
+
+    /**
+     * Undo zigzag().
+     *
+     * @param value
+     *            - the zigzag form
+     * @return the delta
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Runs a command file against a MovieRaterDB. One command per line:
+ *
+ * -add reviewer movie score
+ * -delete reviewer movie, delete reviewer R, delete movie M
+ * -list reviewer R, list movie M
+ * -similar reviewer R, similar movie M
+ * -print
+ * -clear
+ *
+ * Blank lines are ignored. A successful add prints nothing; every other
+ * command prints one line (print prints the whole listing). Runs of
+ * consecutive adds are collected and inserted as one sorted batch right
+ * before the next command that is not an add, so the output is the same as
+ * running each add on its own.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class CommandProcessor {
+
+    private final MovieRaterDB db; // database the commands run against
+    private final RatingBatch pending; // adds not yet inserted
+
+    private String line; // line being parsed
+    private int pos; // parse position in line
+
+    /**
+     * Create a new CommandProcessor.
+     *
+     * @param db
+     *            the database the commands run against
+     */
+    public CommandProcessor(MovieRaterDB db) {
+        this.db = db;
+        pending = new RatingBatch();
+    }
+
+
+    /**
+     * Run every command in the input, writing the results to the output.
+     * The output is not flushed here, that is left to the caller.
+     *
+     * @param in
+     *            the commands, one per line
+     * @param out
+     *            where the results go
+     * @return the number of commands run
+     * @throws IOException
+     *             if reading or writing fails
+     */
+    public long process(BufferedReader in, Appendable out) throws IOException {
+        long commands = 0;
+        while ((line = in.readLine()) != null) {
+            pos = 0;
+            String command = nextToken();
+            if (command == null) {
+                continue; // blank line
+            }
+            commands++;
+            if (command.equals("add")) {
+                add(out);
+                continue;
+            }
+            flushAdds(); // everything else must see the adds before it
+            if (command.equals("delete")) {
+                delete(out);
+            }
+            else if (command.equals("list")) {
+                list(out);
+            }
+            else if (command.equals("similar")) {
+                similar(out);
+            }
+            else if (command.equals("print") && nextToken() == null) {
+                db.printRatings(out);
+                out.append('\n');
+            }
+            else if (command.equals("clear") && nextToken() == null) {
+                db.clear();
+                out.append("Database cleared\n");
+            }
+            else {
+                unknown(out);
+            }
+        }
+        flushAdds();
+        return commands;
+    }
+
+
+    /**
+     * Handle 'add reviewer movie score': queue it if it is valid.
+     *
+     * @param out
+     *            - where an error goes
+     * @throws IOException
+     *             if writing fails
+     */
+    private void add(Appendable out) throws IOException {
+        int reviewer = nextInt();
+        int movie = nextInt();
+        int score = nextInt();
+        if (pos < 0 || nextToken() != null) {
+            unknown(out);
+        }
+        else if (!MovieRaterDB.isValid(reviewer, movie, score)) {
+            out.append("Bad rating: ").append(line.trim()).append('\n');
+        }
+        else {
+            pending.add(reviewer, movie, score);
+            if (pending.size() == RatingLoader.BATCH_SIZE) {
+                flushAdds();
+            }
+        }
+    }
+
+
+    /**
+     * Handle 'delete reviewer R', 'delete movie M' or 'delete R M'.
+     *
+     * @param out
+     *            - where the result goes
+     * @throws IOException
+     *             if writing fails
+     */
+    private void delete(Appendable out) throws IOException {
+        int mark = pos;
+        String kind = nextToken();
+        if ("reviewer".equals(kind) || "movie".equals(kind)) {
+            int id = nextInt();
+            if (pos < 0 || nextToken() != null) {
+                unknown(out);
+                return;
+            }
+            boolean done = kind.equals("reviewer")
+                ? db.deleteReviewer(id)
+                : db.deleteMovie(id);
+            out.append(done ? "Deleted " : "Not found: ").append(kind).append(
+                ' ');
+            SparseMatrix.appendInt(out, id);
+            out.append('\n');
+            return;
+        }
+
+        pos = mark; // 'delete R M'
+        int reviewer = nextInt();
+        int movie = nextInt();
+        if (pos < 0 || nextToken() != null) {
+            unknown(out);
+            return;
+        }
+        out.append(db.deleteScore(reviewer, movie)
+            ? "Deleted score "
+            : "Not found: score ");
+        SparseMatrix.appendInt(out, reviewer);
+        out.append(' ');
+        SparseMatrix.appendInt(out, movie);
+        out.append('\n');
+    }
+
+
+    /**
+     * Handle 'list reviewer R' or 'list movie M'.
+     *
+     * @param out
+     *            - where the listing goes
+     * @throws IOException
+     *             if writing fails
+     */
+    private void list(Appendable out) throws IOException {
+        String kind = nextToken();
+        int id = nextInt();
+        if (pos < 0 || nextToken() != null || !("reviewer".equals(kind)
+            || "movie".equals(kind))) {
+            unknown(out);
+            return;
+        }
+        boolean found = kind.equals("reviewer")
+            ? db.listReviewer(id, out)
+            : db.listMovie(id, out);
+        if (!found) {
+            out.append("Not found: ").append(kind).append(' ');
+            SparseMatrix.appendInt(out, id);
+        }
+        out.append('\n');
+    }
+
+
+    /**
+     * Handle 'similar reviewer R' or 'similar movie M'.
+     *
+     * @param out
+     *            - where the result goes
+     * @throws IOException
+     *             if writing fails
+     */
+    private void similar(Appendable out) throws IOException {
+        String kind = nextToken();
+        int id = nextInt();
+        if (pos < 0 || nextToken() != null || !("reviewer".equals(kind)
+            || "movie".equals(kind))) {
+            unknown(out);
+            return;
+        }
+        int match = kind.equals("reviewer")
+            ? db.similarReviewer(id)
+            : db.similarMovie(id);
+        out.append("Similar to ").append(kind).append(' ');
+        SparseMatrix.appendInt(out, id);
+        out.append(": ");
+        SparseMatrix.appendInt(out, match);
+        out.append('\n');
+    }
+
+
+    /**
+     * Report a line that is not a valid command.
+     *
+     * @param out
+     *            - where the error goes
+     * @throws IOException
+     *             if writing fails
+     */
+    private void unknown(Appendable out) throws IOException {
+        out.append("Unknown command: ").append(line.trim()).append('\n');
+    }
+
+
+    /**
+     * Insert the queued adds as one batch.
+     */
+    private void flushAdds() {
+        if (pending.size() > 0) {
+            db.addBatch(pending);
+            pending.clear();
+        }
+    }
+
+
+    /**
+     * Get the next space separated token of the line.
+     *
+     * @return the token, or null at the end of the line
+     */
+    private String nextToken() {
+        if (pos < 0) {
+            return null;
+        }
+        while (pos < line.length() && Character.isWhitespace(line.charAt(
+            pos))) {
+            pos++;
+        }
+        if (pos == line.length()) {
+            return null;
+        }
+        int start = pos;
+        while (pos < line.length() && !Character.isWhitespace(line.charAt(
+            pos))) {
+            pos++;
+        }
+        return line.substring(start, pos);
+    }
+
+
+    /**
+     * Parse the next token of the line as an int, without creating a
+     * String for it. On a missing or bad number pos is set to -1, which
+     * the callers check once after reading all their arguments.
+     *
+     * @return the number, 0 if it was missing or bad
+     */
+    private int nextInt() {
+        if (pos < 0) {
+            return 0;
+        }
+        while (pos < line.length() && Character.isWhitespace(line.charAt(
+            pos))) {
+            pos++;
+        }
+        boolean negative = pos < line.length() && line.charAt(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        int start = pos;
+        long value = 0;
+        while (pos < line.length() && !Character.isWhitespace(line.charAt(
+            pos))) {
+            char c = line.charAt(pos++);
+            value = value * 10 + (c - '0');
+            if (c < '0' || c > '9' || value > Integer.MAX_VALUE + 1L) {
+                pos = -1;
+                return 0;
+            }
+        }
+        value = negative ? -value : value;
+        if (pos == start || value > Integer.MAX_VALUE) {
+            pos = -1;
+            return 0;
+        }
+        return (int)value;
+    }
+}
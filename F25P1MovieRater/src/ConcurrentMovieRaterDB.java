@@ -0,0 +1,646 @@
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// -------------------------------------------------------------------------
+/**
+ * Thread-safe MovieRater. It runs the same MovieRaterDB, guarded by striped
+ * read/write locks instead of one global lock, so calls on different rows
+ * and columns can run at the same time.
+ *
+ * -rows and columns each hash onto STRIPES read/write locks. Every change
+ * to a row list holds that row's stripe for writing, and every change to a
+ * column list holds that column's stripe for writing.
+ * -one more read/write lock guards the header directories and header lists:
+ * reads (and adds whose headers already exist) hold it for reading, and
+ * anything that can create or unlink a header holds it for writing.
+ * -locks are always taken in the same order (row stripes by index, then
+ * column stripes by index, then the header lock), so there is no deadlock.
+ *
+ * Since every change to any list holds the write stripe of at least one
+ * row it touches, holding every row stripe for reading freezes the whole
+ * matrix. printRatings and the similarity queries do that, and still run
+ * alongside each other and alongside the list calls.
+ *
+ * @author benblucher, austink23
+ * @version Oct 17, 2026
+ */
+public class ConcurrentMovieRaterDB implements MovieRater {
+
+    /** number of lock stripes for rows, and for columns */
+    static final int STRIPES = 64;
+
+    private final MovieRaterDB db; // the data, only touched under locks
+    private final ReentrantReadWriteLock[] rowLocks; // row stripes
+    private final ReentrantReadWriteLock[] colLocks; // column stripes
+    private final ReentrantReadWriteLock headers; // header lists/directories
+    private final ThreadLocal<SimilarityAccumulator> scratch; // per thread
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new, empty ConcurrentMovieRaterDB.
+     */
+    public ConcurrentMovieRaterDB() {
+        db = new MovieRaterDB();
+        rowLocks = new ReentrantReadWriteLock[STRIPES];
+        colLocks = new ReentrantReadWriteLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            rowLocks[i] = new ReentrantReadWriteLock();
+            colLocks[i] = new ReentrantReadWriteLock();
+        }
+        headers = new ReentrantReadWriteLock();
+        scratch = ThreadLocal.withInitial(SimilarityAccumulator::new);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * (Re)initialize the database. Waits for every other call to finish.
+     *
+     * @return true on clear
+     */
+    public boolean clear() {
+        lockAll(rowLocks, true);
+        lockAll(colLocks, true);
+        headers.writeLock().lock();
+        try {
+            return db.clear();
+        }
+        finally {
+            headers.writeLock().unlock();
+            unlockAll(colLocks, true);
+            unlockAll(rowLocks, true);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Add a score to the database. If there already is a score for this
+     * reviewer and movie pair, then update it. Only the reviewer's row
+     * stripe and the movie's column stripe are locked; the header lock is
+     * only taken for writing when a new header has to be made.
+     *
+     * @param reviewer
+     *            The reviewer giving the rating
+     *            (must be a positive integer)
+     * @param movie
+     *            The movie being rated
+     *            (must be a positive integer)
+     * @param score
+     *            The rating score (1-10)
+     * @return True if the review was successfully added.
+     *         False otherwise (for bad input values)
+     */
+    public boolean addReview(int reviewer, int movie, int score) {
+        if (!MovieRaterDB.isValid(reviewer, movie, score)) {
+            return false;
+        }
+        Lock row = rowLock(reviewer).writeLock();
+        Lock col = colLock(movie).writeLock();
+        row.lock();
+        col.lock();
+        try {
+            headers.readLock().lock();
+            try {
+                SparseMatrix matrix = db.matrix();
+                if (matrix.peekRowHeader(reviewer) != null && matrix
+                    .peekColHeader(movie) != null) {
+                    return db.addReview(reviewer, movie, score);
+                }
+            }
+            finally {
+                headers.readLock().unlock();
+            }
+            headers.writeLock().lock();
+            try {
+                return db.addReview(reviewer, movie, score);
+            }
+            finally {
+                headers.writeLock().unlock();
+            }
+        }
+        finally {
+            col.unlock();
+            row.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified reviewer. This will delete all associated
+     * ratings. Locks the reviewer's row stripe, then the stripes of every
+     * movie in that row.
+     *
+     * @param reviewer
+     *            The reviewer to delete
+     *
+     * @return True if the reviewer was successfully deleted.
+     *         False if no such reviewer in the database.
+     */
+    public boolean deleteReviewer(int reviewer) {
+        Lock row = rowLock(reviewer).writeLock();
+        row.lock();
+        try {
+            // the row cannot change while we hold its stripe
+            boolean[] cols = new boolean[STRIPES];
+            headers.readLock().lock();
+            try {
+                SparseMatrix.HeaderNode header = db.matrix().peekRowHeader(
+                    reviewer);
+                if (header == null) {
+                    return false;
+                }
+                for (SparseMatrix.Node curr = header.getnNode(); curr != null;
+                    curr = curr.getRight()) {
+                    cols[stripe(curr.getCol())] = true;
+                }
+            }
+            finally {
+                headers.readLock().unlock();
+            }
+
+            lockSome(colLocks, cols);
+            headers.writeLock().lock();
+            try {
+                return db.deleteReviewer(reviewer);
+            }
+            finally {
+                headers.writeLock().unlock();
+                unlockSome(colLocks, cols);
+            }
+        }
+        finally {
+            row.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified movie. This will delete all associated ratings.
+     * Row stripes have to be locked before column stripes, so the rows of
+     * the movie are read first, their stripes locked, and then the movie is
+     * checked again; if a reviewer on a stripe we do not hold rated it in
+     * the meantime, we let go and try again with that stripe added.
+     *
+     * @param movie
+     *            The movie to delete
+     *
+     * @return True if the movie was successfully deleted.
+     *         False if no such movie in the database.
+     */
+    public boolean deleteMovie(int movie) {
+        ReentrantReadWriteLock colStripe = colLock(movie);
+        boolean[] rows = new boolean[STRIPES];
+        colStripe.readLock().lock();
+        try {
+            if (!addRowStripes(movie, rows)) {
+                return false;
+            }
+        }
+        finally {
+            colStripe.readLock().unlock();
+        }
+
+        while (true) {
+            boolean[] held = rows.clone();
+            lockSome(rowLocks, held);
+            colStripe.writeLock().lock();
+            try {
+                if (!addRowStripes(movie, rows)) {
+                    return false; // someone else deleted it
+                }
+                if (covers(held, rows)) {
+                    headers.writeLock().lock();
+                    try {
+                        return db.deleteMovie(movie);
+                    }
+                    finally {
+                        headers.writeLock().unlock();
+                    }
+                }
+            }
+            finally {
+                colStripe.writeLock().unlock();
+                unlockSome(rowLocks, held);
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified score. Only the reviewer's row stripe and the
+     * movie's column stripe are locked; the header lock is only taken for
+     * writing when the delete may leave the row or column empty, which
+     * unlinks its header.
+     *
+     * @param reviewer
+     *            The reviewer of the score to delete
+     * @param movie
+     *            The movie of the score to delete
+     *
+     * @return True if the score was successfully deleted.
+     *         False if no such score in the database.
+     */
+    public boolean deleteScore(int reviewer, int movie) {
+        Lock row = rowLock(reviewer).writeLock();
+        Lock col = colLock(movie).writeLock();
+        row.lock();
+        col.lock();
+        try {
+            headers.readLock().lock();
+            try {
+                SparseMatrix matrix = db.matrix();
+                SparseMatrix.HeaderNode rowHeader = matrix.peekRowHeader(
+                    reviewer);
+                SparseMatrix.HeaderNode colHeader = matrix.peekColHeader(
+                    movie);
+                if (rowHeader == null || colHeader == null) {
+                    return false;
+                }
+                // the counts cannot change while we hold both stripes; with
+                // more than one value left, neither header gets unlinked
+                if (rowHeader.getCount() > 1 && colHeader.getCount() > 1) {
+                    return db.deleteScore(reviewer, movie);
+                }
+            }
+            finally {
+                headers.readLock().unlock();
+            }
+            headers.writeLock().lock();
+            try {
+                return db.deleteScore(reviewer, movie);
+            }
+            finally {
+                headers.writeLock().unlock();
+            }
+        }
+        finally {
+            col.unlock();
+            row.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Dump out all the ratings. Each reviewer's rating should be in a
+     * separate line (in ascending order by reviewer index), with
+     * movie/score pairs listed in ascending order of movie index.
+     *
+     * @return String representing the listing, empty string if there are none
+     */
+    public String printRatings() {
+        lockAll(rowLocks, false);
+        headers.readLock().lock();
+        try {
+            return db.printRatings();
+        }
+        finally {
+            headers.readLock().unlock();
+            unlockAll(rowLocks, false);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given reviewer, with scores listed in
+     * ascending order of movie index. Only blocks writers on the same row
+     * stripe.
+     *
+     * @param reviewer
+     *            The reviewer to list ratings for
+     * @return String representing the listing, null if no such reviewer
+     */
+    public String listReviewer(int reviewer) {
+        Lock row = rowLock(reviewer).readLock();
+        row.lock();
+        headers.readLock().lock();
+        try {
+            return db.listReviewer(reviewer);
+        }
+        finally {
+            headers.readLock().unlock();
+            row.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given movie, with scores listed in
+     * ascending order of reviewer index. Only blocks writers on the same
+     * column stripe.
+     *
+     * @param movie
+     *            The movie to list ratings for
+     * @return String representing the listing, null if no such movie
+     */
+    public String listMovie(int movie) {
+        Lock col = colLock(movie).readLock();
+        col.lock();
+        headers.readLock().lock();
+        try {
+            return db.listMovie(movie);
+        }
+        finally {
+            headers.readLock().unlock();
+            col.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the movie most similar to the specified one.
+     *
+     * @param movie
+     *            the movie to find match for.
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    public int similarMovie(int movie) {
+        lockAll(rowLocks, false);
+        headers.readLock().lock();
+        try {
+            return db.similarMovie(movie, scratch.get());
+        }
+        finally {
+            headers.readLock().unlock();
+            unlockAll(rowLocks, false);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the reviewer most similar to the specified one.
+     *
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    public int similarReviewer(int reviewer) {
+        lockAll(rowLocks, false);
+        headers.readLock().lock();
+        try {
+            return db.similarReviewer(reviewer, scratch.get());
+        }
+        finally {
+            headers.readLock().unlock();
+            unlockAll(rowLocks, false);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k movies most similar to the specified one, best first.
+     *
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this movie does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarMovies(int movie, int k) {
+        lockAll(rowLocks, false);
+        headers.readLock().lock();
+        try {
+            return db.similarMovies(movie, k, scratch.get());
+        }
+        finally {
+            headers.readLock().unlock();
+            unlockAll(rowLocks, false);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k reviewers most similar to the specified one, best first.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this reviewer does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        lockAll(rowLocks, false);
+        headers.readLock().lock();
+        try {
+            return db.similarReviewers(reviewer, k, scratch.get());
+        }
+        finally {
+            headers.readLock().unlock();
+            unlockAll(rowLocks, false);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a movie's ratings.
+     *
+     * @param movie
+     *            the movie to summarize.
+     * @return The stats, null if no such movie.
+     */
+    public RatingStats movieStats(int movie) {
+        Lock col = colLock(movie).readLock();
+        col.lock();
+        headers.readLock().lock();
+        try {
+            return db.movieStats(movie);
+        }
+        finally {
+            headers.readLock().unlock();
+            col.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a reviewer's ratings.
+     *
+     * @param reviewer
+     *            the reviewer to summarize.
+     * @return The stats, null if no such reviewer.
+     */
+    public RatingStats reviewerStats(int reviewer) {
+        Lock row = rowLock(reviewer).readLock();
+        row.lock();
+        headers.readLock().lock();
+        try {
+            return db.reviewerStats(reviewer);
+        }
+        finally {
+            headers.readLock().unlock();
+            row.unlock();
+        }
+    }
+
+
+    /**
+     * Mark the row stripes of every reviewer of a movie. The caller must
+     * hold the movie's column stripe.
+     *
+     * @param movie
+     *            - the movie
+     * @param rows
+     *            - flags to set, one per row stripe
+     * @return false if the movie has no ratings
+     */
+    private boolean addRowStripes(int movie, boolean[] rows) {
+        headers.readLock().lock();
+        try {
+            SparseMatrix.HeaderNode header = db.matrix().peekColHeader(movie);
+            if (header == null) {
+                return false;
+            }
+            for (SparseMatrix.Node curr = header.getnNode(); curr != null;
+                curr = curr.getDown()) {
+                rows[stripe(curr.getRow())] = true;
+            }
+            return true;
+        }
+        finally {
+            headers.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Check that every stripe flagged in needed is flagged in held.
+     *
+     * @param held
+     *            - stripes we hold
+     * @param needed
+     *            - stripes we need
+     * @return true if held covers needed
+     */
+    private static boolean covers(boolean[] held, boolean[] needed) {
+        for (int i = 0; i < STRIPES; i++) {
+            if (needed[i] && !held[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Get the lock stripe for a reviewer.
+     *
+     * @param reviewer
+     *            - reviewer id
+     * @return the row stripe
+     */
+    private ReentrantReadWriteLock rowLock(int reviewer) {
+        return rowLocks[stripe(reviewer)];
+    }
+
+
+    /**
+     * Get the lock stripe for a movie.
+     *
+     * @param movie
+     *            - movie id
+     * @return the column stripe
+     */
+    private ReentrantReadWriteLock colLock(int movie) {
+        return colLocks[stripe(movie)];
+    }
+
+
+    /**
+     * Map an id onto a stripe, spreading out ids that differ by a multiple
+     * of STRIPES.
+     *
+     * @param id
+     *            - reviewer or movie id
+     * @return the stripe index
+     */
+    private static int stripe(int id) {
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+
+    /**
+     * Lock every stripe, in index order.
+     *
+     * @param locks
+     *            - the stripes
+     * @param write
+     *            - true for the write locks, false for the read locks
+     */
+    private static void lockAll(ReentrantReadWriteLock[] locks,
+        boolean write) {
+        for (ReentrantReadWriteLock lock : locks) {
+            (write ? lock.writeLock() : lock.readLock()).lock();
+        }
+    }
+
+
+    /**
+     * Unlock every stripe, in reverse index order.
+     *
+     * @param locks
+     *            - the stripes
+     * @param write
+     *            - true for the write locks, false for the read locks
+     */
+    private static void unlockAll(ReentrantReadWriteLock[] locks,
+        boolean write) {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            (write ? locks[i].writeLock() : locks[i].readLock()).unlock();
+        }
+    }
+
+
+    /**
+     * Write lock the flagged stripes, in index order.
+     *
+     * @param locks
+     *            - the stripes
+     * @param flags
+     *            - which stripes to lock
+     */
+    private static void lockSome(ReentrantReadWriteLock[] locks,
+        boolean[] flags) {
+        for (int i = 0; i < STRIPES; i++) {
+            if (flags[i]) {
+                locks[i].writeLock().lock();
+            }
+        }
+    }
+
+
+    /**
+     * Unlock the flagged write stripes, in reverse index order.
+     *
+     * @param locks
+     *            - the stripes
+     * @param flags
+     *            - which stripes to unlock
+     */
+    private static void unlockSome(ReentrantReadWriteLock[] locks,
+        boolean[] flags) {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            if (flags[i]) {
+                locks[i].writeLock().unlock();
+            }
+        }
+    }
+}
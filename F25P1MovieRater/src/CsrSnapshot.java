@@ -0,0 +1,839 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Immutable compressed copy of a SparseMatrix, stored both row-major (CSR)
+ * and column-major (CSC) in flat primitive arrays so reads and similarity
+ * queries walk contiguous memory instead of chasing Node pointers.
+ *
+ * -row i of the snapshot is reviewer rowIds[i], and its ratings are at
+ * positions rowPtr[i] .. rowPtr[i + 1] - 1 of colIdx/rowValues
+ * -column j is movie colIds[j], and its ratings are at positions
+ * colPtr[j] .. colPtr[j + 1] - 1 of rowIdx/colValues
+ * -ids are kept in ascending order everywhere, same as the linked lists
+ *
+ * A snapshot never changes after it is built, so it can be shared between
+ * threads and read while the SparseMatrix it came from keeps changing.
+ *
+ * A new snapshot can also be made from an older one plus copies of just
+ * the rows and columns that changed since (copyRows/copyCols, which need
+ * the matrix to hold still, so they are the only part that has to run
+ * under the writer's lock). The unchanged rows and columns are then moved
+ * over from the older snapshot in long System.arraycopy runs.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class CsrSnapshot {
+
+    private final int[] rowIds; // reviewer id of each row, ascending
+    private final int[] rowPtr; // start of each row in colIdx/rowValues
+    private final int[] colIdx; // movie id of each rating, row-major
+    private final byte[] rowValues; // score of each rating, row-major
+
+    private final int[] colIds; // movie id of each column, ascending
+    private final int[] colPtr; // start of each column in rowIdx/colValues
+    private final int[] rowIdx; // reviewer id of each rating, column-major
+    private final byte[] colValues; // score of each rating, column-major
+
+    /**
+     * Create a new CsrSnapshot holding every rating currently in the matrix.
+     *
+     * @param matrix
+     *            - the matrix to copy
+     * @throws IllegalArgumentException
+     *             if a value does not fit in a byte (scores are 1-10)
+     */
+    public CsrSnapshot(SparseMatrix matrix) {
+        // first pass: count the rows, columns and ratings
+        int rows = 0;
+        int ratings = 0;
+        SparseMatrix.HeaderNode header = matrix.getRowHeaderList();
+        while (header != null) {
+            SparseMatrix.Node curr = header.getnNode();
+            if (curr != null) {
+                rows++;
+            }
+            while (curr != null) {
+                ratings++;
+                curr = curr.getRight();
+            }
+            header = header.getN();
+        }
+        int cols = 0;
+        header = matrix.getColHeaderList();
+        while (header != null) {
+            if (header.getnNode() != null) {
+                cols++;
+            }
+            header = header.getN();
+        }
+
+        rowIds = new int[rows];
+        rowPtr = new int[rows + 1];
+        colIdx = new int[ratings];
+        rowValues = new byte[ratings];
+        colIds = new int[cols];
+        colPtr = new int[cols + 1];
+        rowIdx = new int[ratings];
+        colValues = new byte[ratings];
+
+        // second pass: copy the rows
+        int row = 0;
+        int pos = 0;
+        header = matrix.getRowHeaderList();
+        while (header != null) {
+            SparseMatrix.Node curr = header.getnNode();
+            if (curr != null) {
+                rowIds[row] = header.getIndex();
+                rowPtr[row++] = pos;
+                while (curr != null) {
+                    colIdx[pos] = curr.getCol();
+                    rowValues[pos++] = toByte(curr.getValue());
+                    curr = curr.getRight();
+                }
+            }
+            header = header.getN();
+        }
+        rowPtr[rows] = pos;
+
+        // and the columns
+        int col = 0;
+        pos = 0;
+        header = matrix.getColHeaderList();
+        while (header != null) {
+            SparseMatrix.Node curr = header.getnNode();
+            if (curr != null) {
+                colIds[col] = header.getIndex();
+                colPtr[col++] = pos;
+                while (curr != null) {
+                    rowIdx[pos] = curr.getRow();
+                    colValues[pos++] = toByte(curr.getValue());
+                    curr = curr.getDown();
+                }
+            }
+            header = header.getN();
+        }
+        colPtr[cols] = pos;
+    }
+
+
+    /**
+     * Create a new CsrSnapshot from an older one, with some of its rows and
+     * columns replaced. Does not touch any matrix, so it needs no lock.
+     *
+     * @param base
+     *            - the older snapshot
+     * @param rowChanges
+     *            - the new content of every changed row, an empty list for
+     *            a row that is gone
+     * @param colChanges
+     *            - the same for the changed columns
+     */
+    CsrSnapshot(CsrSnapshot base, Lists rowChanges, Lists colChanges) {
+        Lists rows = merge(new Lists(base.rowIds, base.rowPtr, base.colIdx,
+            base.rowValues), rowChanges);
+        Lists cols = merge(new Lists(base.colIds, base.colPtr, base.rowIdx,
+            base.colValues), colChanges);
+        rowIds = rows.ids;
+        rowPtr = rows.ptr;
+        colIdx = rows.idx;
+        rowValues = rows.values;
+        colIds = cols.ids;
+        colPtr = cols.ptr;
+        rowIdx = cols.idx;
+        colValues = cols.values;
+    }
+
+
+    /**
+     * Copy some rows of a matrix, for a later incremental snapshot. The
+     * matrix must not change while this runs.
+     *
+     * @param matrix
+     *            - the matrix
+     * @param rows
+     *            - ids of the rows, distinct, in any order (sorted in
+     *            place)
+     * @return the rows, a row with no values as an empty list
+     */
+    static Lists copyRows(SparseMatrix matrix, int[] rows) {
+        return copy(matrix, rows, true);
+    }
+
+
+    /**
+     * Copy some columns of a matrix, for a later incremental snapshot. The
+     * matrix must not change while this runs.
+     *
+     * @param matrix
+     *            - the matrix
+     * @param cols
+     *            - ids of the columns, distinct, in any order (sorted in
+     *            place)
+     * @return the columns, a column with no values as an empty list
+     */
+    static Lists copyCols(SparseMatrix matrix, int[] cols) {
+        return copy(matrix, cols, false);
+    }
+
+
+    /**
+     * Get the number of ratings in the snapshot.
+     *
+     * @return the number of ratings
+     */
+    public int size() {
+        return colIdx.length;
+    }
+
+
+    /**
+     * print row from left to right, same format as SparseMatrix.rowList
+     *
+     * @param row
+     *            you want to list
+     * @return String of values in row, null if the row has no values
+     */
+    public String rowList(int row) {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            if (!rowList(row, fString)) {
+                return null;
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString();
+    }
+
+
+    /**
+     * print row from left to right, writing straight to the output
+     *
+     * @param row
+     *            you want to list
+     * @param out
+     *            where the 'X: X X...' line is written
+     * @return true if the row was written, false if it has no values
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean rowList(int row, Appendable out) throws IOException {
+        int i = Arrays.binarySearch(rowIds, row);
+        if (i < 0) {
+            return false;
+        }
+        writeLine(out, row, rowValues, rowPtr[i], rowPtr[i + 1]);
+        return true;
+    }
+
+
+    /**
+     * Get the count, sum and score histogram of a row, by walking it.
+     *
+     * @param row
+     *            the row to summarize
+     * @return the stats, null if the row has no values
+     */
+    public RatingStats rowStats(int row) {
+        int i = Arrays.binarySearch(rowIds, row);
+        if (i < 0) {
+            return null;
+        }
+        RatingStats stats = new RatingStats();
+        for (int pos = rowPtr[i]; pos < rowPtr[i + 1]; pos++) {
+            stats.add(rowValues[pos]);
+        }
+        return stats;
+    }
+
+
+    /**
+     * Get the count, sum and score histogram of a column, by walking it.
+     *
+     * @param col
+     *            the column to summarize
+     * @return the stats, null if the column has no values
+     */
+    public RatingStats colStats(int col) {
+        int j = Arrays.binarySearch(colIds, col);
+        if (j < 0) {
+            return null;
+        }
+        RatingStats stats = new RatingStats();
+        for (int pos = colPtr[j]; pos < colPtr[j + 1]; pos++) {
+            stats.add(colValues[pos]);
+        }
+        return stats;
+    }
+
+
+    /**
+     * print col from top to bottom, same format as SparseMatrix.colList
+     *
+     * @param col
+     *            column you want to list
+     * @return String of values in column, null if the column has no values
+     */
+    public String colList(int col) {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            if (!colList(col, fString)) {
+                return null;
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString();
+    }
+
+
+    /**
+     * print col from top to bottom, writing straight to the output
+     *
+     * @param col
+     *            column you want to list
+     * @param out
+     *            where the 'X: X X...' line is written
+     * @return true if the column was written, false if it has no values
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean colList(int col, Appendable out) throws IOException {
+        int j = Arrays.binarySearch(colIds, col);
+        if (j < 0) {
+            return false;
+        }
+        writeLine(out, col, colValues, colPtr[j], colPtr[j + 1]);
+        return true;
+    }
+
+
+    /**
+     * list whole matrix using 'X: (X,X) (X,X)...' format, same as
+     * SparseMatrix.matrixList
+     *
+     * @return String of all values in matrix, "" if empty
+     */
+    public String matrixList() {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            matrixList(fString);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString();
+    }
+
+
+    /**
+     * list whole matrix using 'X: (X,X) (X,X)...' format, writing straight
+     * to the output
+     *
+     * @param out
+     *            where the listing is written
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public void matrixList(Appendable out) throws IOException {
+        for (int i = 0; i < rowIds.length; i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            SparseMatrix.appendInt(out, rowIds[i]);
+            out.append(':');
+            for (int pos = rowPtr[i]; pos < rowPtr[i + 1]; pos++) {
+                out.append(" (");
+                SparseMatrix.appendInt(out, colIdx[pos]);
+                out.append(", ");
+                SparseMatrix.appendInt(out, rowValues[pos]);
+                out.append(')');
+            }
+        }
+    }
+
+
+    /**
+     * Return the index for the movie most similar to the specified one, with
+     * the same rules as MovieRaterDB.similarMovie.
+     *
+     * @param movie
+     *            the movie to find match for
+     * @return The best matching index, -1 if this movie does not exist or
+     *         there is no suitable match
+     */
+    public int similarMovie(int movie) {
+        return similarMovie(movie, new SimilarityAccumulator());
+    }
+
+
+    /**
+     * Return the index for the movie most similar to the specified one,
+     * using the given scratch buffer. Walks the movie's column, and for each
+     * of its reviewers that reviewer's row, so only co-rated movies are
+     * scored.
+     *
+     * @param movie
+     *            the movie to find match for
+     * @param scratch
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The best matching index, -1 if this movie does not exist or
+     *         there is no suitable match
+     */
+    int similarMovie(int movie, SimilarityAccumulator scratch) {
+        collectMovies(movie, scratch);
+        return scratch.best();
+    }
+
+
+    /**
+     * Return the k movies most similar to the specified one, best first,
+     * with the same rules as MovieRaterDB.similarMovies.
+     *
+     * @param movie
+     *            the movie to find matches for
+     * @param k
+     *            the most matches to return
+     * @return The matching indexes, best first, empty if there are none
+     */
+    public int[] similarMovies(int movie, int k) {
+        return similarMovies(movie, k, new SimilarityAccumulator());
+    }
+
+
+    /**
+     * Return the k movies most similar to the specified one, best first,
+     * using the given scratch buffer.
+     *
+     * @param movie
+     *            the movie to find matches for
+     * @param k
+     *            the most matches to return
+     * @param scratch
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The matching indexes, best first, empty if there are none
+     */
+    int[] similarMovies(int movie, int k, SimilarityAccumulator scratch) {
+        collectMovies(movie, scratch);
+        return scratch.best(k);
+    }
+
+
+    /**
+     * Fill the scratch buffer with every movie that shares a reviewer with
+     * the target. Leaves it empty if the movie does not exist.
+     *
+     * @param movie
+     *            the target movie
+     * @param scratch
+     *            buffer to accumulate the candidates in (it is reset first)
+     */
+    private void collectMovies(int movie, SimilarityAccumulator scratch) {
+        scratch.reset();
+        int j = Arrays.binarySearch(colIds, movie);
+        if (j < 0) {
+            return; // movie does not exist
+        }
+        for (int pos = colPtr[j]; pos < colPtr[j + 1]; pos++) {
+            int score = colValues[pos];
+            int i = Arrays.binarySearch(rowIds, rowIdx[pos]);
+            for (int other = rowPtr[i]; other < rowPtr[i + 1]; other++) {
+                if (colIdx[other] != movie) {
+                    scratch.add(colIdx[other], Math.abs(score
+                        - rowValues[other]));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Return the index for the reviewer most similar to the specified one,
+     * with the same rules as MovieRaterDB.similarReviewer.
+     *
+     * @param reviewer
+     *            the reviewer to find match for
+     * @return The best matching index, -1 if this reviewer does not exist or
+     *         there is no suitable match
+     */
+    public int similarReviewer(int reviewer) {
+        return similarReviewer(reviewer, new SimilarityAccumulator());
+    }
+
+
+    /**
+     * Return the index for the reviewer most similar to the specified one,
+     * using the given scratch buffer. Walks the reviewer's row, and for each
+     * movie in it that movie's column, so only reviewers who share a movie
+     * are scored.
+     *
+     * @param reviewer
+     *            the reviewer to find match for
+     * @param scratch
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The best matching index, -1 if this reviewer does not exist or
+     *         there is no suitable match
+     */
+    int similarReviewer(int reviewer, SimilarityAccumulator scratch) {
+        collectReviewers(reviewer, scratch);
+        return scratch.best();
+    }
+
+
+    /**
+     * Return the k reviewers most similar to the specified one, best first,
+     * with the same rules as MovieRaterDB.similarReviewers.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for
+     * @param k
+     *            the most matches to return
+     * @return The matching indexes, best first, empty if there are none
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        return similarReviewers(reviewer, k, new SimilarityAccumulator());
+    }
+
+
+    /**
+     * Return the k reviewers most similar to the specified one, best first,
+     * using the given scratch buffer.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for
+     * @param k
+     *            the most matches to return
+     * @param scratch
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The matching indexes, best first, empty if there are none
+     */
+    int[] similarReviewers(
+        int reviewer,
+        int k,
+        SimilarityAccumulator scratch) {
+        collectReviewers(reviewer, scratch);
+        return scratch.best(k);
+    }
+
+
+    /**
+     * Fill the scratch buffer with every reviewer that shares a movie with
+     * the target. Leaves it empty if the reviewer does not exist.
+     *
+     * @param reviewer
+     *            the target reviewer
+     * @param scratch
+     *            buffer to accumulate the candidates in (it is reset first)
+     */
+    private void collectReviewers(int reviewer, SimilarityAccumulator scratch) {
+        scratch.reset();
+        int i = Arrays.binarySearch(rowIds, reviewer);
+        if (i < 0) {
+            return; // reviewer does not exist
+        }
+        for (int pos = rowPtr[i]; pos < rowPtr[i + 1]; pos++) {
+            int score = rowValues[pos];
+            int j = Arrays.binarySearch(colIds, colIdx[pos]);
+            for (int other = colPtr[j]; other < colPtr[j + 1]; other++) {
+                if (rowIdx[other] != reviewer) {
+                    scratch.add(rowIdx[other], Math.abs(score
+                        - colValues[other]));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Score two movies against each other with the same rule as
+     * MovieRaterDB's movie merge-join, over the column arrays. A short
+     * column against a much longer one gallops through the long one
+     * instead of walking it (see SimilarityKernel).
+     *
+     * @param movieA
+     *            one movie
+     * @param movieB
+     *            the other movie
+     * @return the mean absolute score difference over the reviewers they
+     *         share, or -1.0 if either does not exist or none is shared
+     */
+    public double movieSimilarity(int movieA, int movieB) {
+        return movieSimilarity(movieA, movieB, true);
+    }
+
+
+    /**
+     * Same as movieSimilarity(int, int), optionally forcing the plain merge
+     * so the two strategies can be compared.
+     *
+     * @param movieA
+     *            one movie
+     * @param movieB
+     *            the other movie
+     * @param gallop
+     *            false to always merge one position at a time
+     * @return the mean absolute score difference, or -1.0
+     */
+    double movieSimilarity(int movieA, int movieB, boolean gallop) {
+        int a = Arrays.binarySearch(colIds, movieA);
+        int b = Arrays.binarySearch(colIds, movieB);
+        if (a < 0 || b < 0) {
+            return -1.0;
+        }
+        if (!gallop) {
+            return SimilarityKernel.merge(rowIdx, colValues, colPtr[a],
+                colPtr[a + 1], colPtr[b], colPtr[b + 1]);
+        }
+        return SimilarityKernel.meanDifference(rowIdx, colValues, colPtr[a],
+            colPtr[a + 1], colPtr[b], colPtr[b + 1]);
+    }
+
+
+    /**
+     * Score two reviewers against each other with the same rule as
+     * MovieRaterDB's reviewer merge-join, over the row arrays.
+     *
+     * @param reviewerA
+     *            one reviewer
+     * @param reviewerB
+     *            the other reviewer
+     * @return the mean absolute score difference over the movies they
+     *         share, or -1.0 if either does not exist or none is shared
+     */
+    public double reviewerSimilarity(int reviewerA, int reviewerB) {
+        int a = Arrays.binarySearch(rowIds, reviewerA);
+        int b = Arrays.binarySearch(rowIds, reviewerB);
+        if (a < 0 || b < 0) {
+            return -1.0;
+        }
+        return SimilarityKernel.meanDifference(colIdx, rowValues, rowPtr[a],
+            rowPtr[a + 1], rowPtr[b], rowPtr[b + 1]);
+    }
+
+
+    /**
+     * Write one 'X: X X...' line for a row or column.
+     *
+     * @param out
+     *            where the line is written
+     * @param index
+     *            id of the row or column
+     * @param values
+     *            the value array for that orientation
+     * @param from
+     *            first position (inclusive)
+     * @param to
+     *            last position (exclusive)
+     * @throws IOException
+     *             if writing to out fails
+     */
+    private static void writeLine(
+        Appendable out,
+        int index,
+        byte[] values,
+        int from,
+        int to)
+        throws IOException {
+        SparseMatrix.appendInt(out, index);
+        out.append(':');
+        for (int pos = from; pos < to; pos++) {
+            out.append(' ');
+            SparseMatrix.appendInt(out, values[pos]);
+        }
+    }
+
+
+    /**
+     * Narrow a node value to a byte.
+     *
+     * @param value
+     *            - value to store
+     * @return the value as a byte
+     * @throws IllegalArgumentException
+     *             if the value does not fit
+     */
+    private static byte toByte(int value) {
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("value " + value
+                + " does not fit in a snapshot");
+        }
+        return (byte)value;
+    }
+
+
+    /**
+     * Copy some rows or columns of a matrix.
+     *
+     * @param matrix
+     *            - the matrix
+     * @param ids
+     *            - ids of the lists, distinct (sorted in place)
+     * @param byRow
+     *            - true for rows, false for columns
+     * @return the lists
+     */
+    private static Lists copy(SparseMatrix matrix, int[] ids, boolean byRow) {
+        Arrays.sort(ids);
+        SparseMatrix.Node[] firsts = new SparseMatrix.Node[ids.length];
+        int entries = 0;
+        for (int i = 0; i < ids.length; i++) {
+            SparseMatrix.HeaderNode header = byRow
+                ? matrix.peekRowHeader(ids[i])
+                : matrix.peekColHeader(ids[i]);
+            firsts[i] = header == null ? null : header.getnNode();
+            for (SparseMatrix.Node n = firsts[i]; n != null; n = byRow
+                ? n.getRight()
+                : n.getDown()) {
+                entries++;
+            }
+        }
+        int[] ptr = new int[ids.length + 1];
+        int[] idx = new int[entries];
+        byte[] values = new byte[entries];
+        int pos = 0;
+        for (int i = 0; i < ids.length; i++) {
+            ptr[i] = pos;
+            for (SparseMatrix.Node n = firsts[i]; n != null; n = byRow
+                ? n.getRight()
+                : n.getDown()) {
+                idx[pos] = byRow ? n.getCol() : n.getRow();
+                values[pos++] = toByte(n.getValue());
+            }
+        }
+        ptr[ids.length] = pos;
+        return new Lists(ids, ptr, idx, values);
+    }
+
+
+    /**
+     * Replace some lists of a side of a snapshot. Runs of unchanged lists
+     * between two changed ones are copied with one arraycopy each.
+     *
+     * @param base
+     *            - every list of the older snapshot
+     * @param changes
+     *            - the changed lists, empty for a list that is gone
+     * @return every list of the new snapshot
+     */
+    private static Lists merge(Lists base, Lists changes) {
+        int[] baseIds = base.ids;
+        int[] changedIds = changes.ids;
+        // first pass: count the lists and entries
+        int lists = 0;
+        int entries = 0;
+        int b = 0;
+        for (int c = 0; c <= changedIds.length; c++) {
+            int end = c == changedIds.length
+                ? baseIds.length
+                : insertionPoint(baseIds, b, changedIds[c]);
+            lists += end - b;
+            entries += base.ptr[end] - base.ptr[b];
+            b = end;
+            if (c < changedIds.length) {
+                if (b < baseIds.length && baseIds[b] == changedIds[c]) {
+                    b++; // replaced
+                }
+                int length = changes.ptr[c + 1] - changes.ptr[c];
+                if (length > 0) {
+                    lists++;
+                    entries += length;
+                }
+            }
+        }
+
+        // second pass: copy them
+        int[] ids = new int[lists];
+        int[] ptr = new int[lists + 1];
+        int[] idx = new int[entries];
+        byte[] values = new byte[entries];
+        int list = 0;
+        int pos = 0;
+        b = 0;
+        for (int c = 0; c <= changedIds.length; c++) {
+            int end = c == changedIds.length
+                ? baseIds.length
+                : insertionPoint(baseIds, b, changedIds[c]);
+            int from = base.ptr[b];
+            int length = base.ptr[end] - from;
+            System.arraycopy(baseIds, b, ids, list, end - b);
+            for (int i = b; i < end; i++) {
+                ptr[list++] = base.ptr[i] - from + pos;
+            }
+            System.arraycopy(base.idx, from, idx, pos, length);
+            System.arraycopy(base.values, from, values, pos, length);
+            pos += length;
+            b = end;
+            if (c < changedIds.length) {
+                if (b < baseIds.length && baseIds[b] == changedIds[c]) {
+                    b++;
+                }
+                from = changes.ptr[c];
+                length = changes.ptr[c + 1] - from;
+                if (length > 0) {
+                    ids[list] = changedIds[c];
+                    ptr[list++] = pos;
+                    System.arraycopy(changes.idx, from, idx, pos, length);
+                    System.arraycopy(changes.values, from, values, pos,
+                        length);
+                    pos += length;
+                }
+            }
+        }
+        ptr[lists] = pos;
+        return new Lists(ids, ptr, idx, values);
+    }
+
+
+    /**
+     * Find where a key is, or would go, in a sorted array.
+     *
+     * @param ids
+     *            - the sorted array
+     * @param from
+     *            - first position to search
+     * @param key
+     *            - the key
+     * @return the position of the key, or of the first id above it
+     */
+    private static int insertionPoint(int[] ids, int from, int key) {
+        int i = Arrays.binarySearch(ids, from, ids.length, key);
+        return i < 0 ? -i - 1 : i;
+    }
+
+
+    /**
+     * Some rows or columns in the same flat form as a snapshot: list i is
+     * id ids[i], with its entries at ptr[i] .. ptr[i + 1] - 1 of idx and
+     * values.
+     */
+    static final class Lists {
+        private final int[] ids; // id of each list, ascending
+        private final int[] ptr; // start of each list in idx/values
+        private final int[] idx; // the other id of each entry
+        private final byte[] values; // score of each entry
+
+        /**
+         * Create a new Lists.
+         *
+         * @param ids
+         *            - id of each list, ascending
+         * @param ptr
+         *            - start of each list, plus the end
+         * @param idx
+         *            - the other id of each entry
+         * @param values
+         *            - score of each entry
+         */
+        Lists(int[] ids, int[] ptr, int[] idx, byte[] values) {
+            this.ids = ids;
+            this.ptr = ptr;
+            this.idx = idx;
+            this.values = values;
+        }
+    }
+}
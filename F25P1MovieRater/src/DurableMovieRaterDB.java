@@ -0,0 +1,408 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// -------------------------------------------------------------------------
+/**
+ * MovieRater that keeps its ratings in a MovieRaterDB and logs every change
+ * to a WriteAheadLog, so the ratings survive a crash. Opening it restores
+ * the last checkpoint, if there is one, and replays the log after it to
+ * rebuild the matrix.
+ *
+ * -each change is logged first and only applied to the matrix once the
+ * log has taken it, so if logging throws (an UncheckedIOException) the
+ * matrix is left as it was; a change that does nothing (deleting a missing
+ * score) is not logged
+ * -log records are forced to disk in groups of groupSize (group commit),
+ * and a group that does not fill is forced maxDelayMillis after its first
+ * record, so after a crash only changes made in about the last
+ * maxDelayMillis can be lost; call sync() to make everything so far
+ * durable right away
+ * -clear() empties the log as well as the matrix
+ * -checkpoint() saves every rating to a Checkpoint file next to the log
+ * (the log's name plus CHECKPOINT_SUFFIX) and then empties the log, so a
+ * cold start reads the compact checkpoint and replays only the changes
+ * made since, instead of the whole history. A crash between the two steps
+ * just replays the old log over the new checkpoint, which gives the same
+ * ratings: every record sets or removes ratings outright, whatever was
+ * there before
+ *
+ * Reads go straight to the in-memory database.
+ *
+ * @author benblucher, austink23
+ * @version Oct 17, 2026
+ */
+public class DurableMovieRaterDB implements MovieRater, Closeable {
+
+    /** longest a change waits to be forced, unless told otherwise */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10;
+
+    /** added to the log's file name to name the checkpoint file */
+    public static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    private final MovieRaterDB db; // the ratings
+    private final WriteAheadLog log; // every change since the checkpoint
+    private final Path checkpointFile; // all the changes before that
+
+    // ----------------------------------------------------------
+    /**
+     * Open a durable database on a log file, replaying whatever the log
+     * already holds. Changes wait at most DEFAULT_MAX_DELAY_MILLIS to be
+     * forced to disk.
+     *
+     * @param file
+     *            the log file, created if it does not exist
+     * @param groupSize
+     *            log records forced to disk together, 1 to force each one
+     * @throws IOException
+     *             if the log cannot be read or written
+     */
+    public DurableMovieRaterDB(Path file, int groupSize) throws IOException {
+        this(file, groupSize, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Open a durable database on a log file, restoring its checkpoint (if
+     * any) and replaying whatever the log holds after it.
+     *
+     * @param file
+     *            the log file, created if it does not exist
+     * @param groupSize
+     *            log records forced to disk together, 1 to force each one
+     * @param maxDelayMillis
+     *            longest a change waits before its group is forced, even
+     *            if the group is not full
+     * @throws IOException
+     *             if the log cannot be read or written
+     */
+    public DurableMovieRaterDB(Path file, int groupSize, long maxDelayMillis)
+        throws IOException {
+        db = new MovieRaterDB();
+        checkpointFile = Paths.get(file + CHECKPOINT_SUFFIX);
+        if (Files.exists(checkpointFile)) {
+            db.restore(checkpointFile);
+        }
+        log = new WriteAheadLog(file, groupSize, maxDelayMillis, db);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * (Re)initialize the database.
+     *
+     * @return true on clear
+     */
+    public boolean clear() {
+        try {
+            log.reset();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return db.clear(); // only once the log is empty
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Add a score to the database. If there already is a score for this
+     * reviewer and movie pair, then update it.
+     *
+     * @param reviewer
+     *            The reviewer giving the rating
+     *            (must be a positive integer)
+     * @param movie
+     *            The movie being rated
+     *            (must be a positive integer)
+     * @param score
+     *            The rating score (1-10)
+     * @return True if the review was successfully added.
+     *         False otherwise (for bad input values)
+     */
+    public boolean addReview(int reviewer, int movie, int score) {
+        if (!MovieRaterDB.isValid(reviewer, movie, score)) {
+            return false;
+        }
+        log(WriteAheadLog.ADD, reviewer, movie, score);
+        return db.addReview(reviewer, movie, score);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified reviewer. This will delete all associated ratings.
+     *
+     * @param reviewer
+     *            The reviewer to delete
+     *
+     * @return True if the reviewer was successfully deleted.
+     *         False if no such reviewer in the database.
+     */
+    public boolean deleteReviewer(int reviewer) {
+        if (db.matrix().peekRowHeader(reviewer) == null) {
+            return false;
+        }
+        log(WriteAheadLog.DELETE_REVIEWER, reviewer, 0, 0);
+        return db.deleteReviewer(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified movie. This will delete all associated ratings.
+     *
+     * @param movie
+     *            The movie to delete
+     *
+     * @return True if the movie was successfully deleted.
+     *         False if no such movie in the database.
+     */
+    public boolean deleteMovie(int movie) {
+        if (db.matrix().peekColHeader(movie) == null) {
+            return false;
+        }
+        log(WriteAheadLog.DELETE_MOVIE, movie, 0, 0);
+        return db.deleteMovie(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified score.
+     *
+     * @param reviewer
+     *            The reviewer of the score to delete
+     * @param movie
+     *            The movie of the score to delete
+     *
+     * @return True if the score was successfully deleted.
+     *         False if no such score in the database.
+     */
+    public boolean deleteScore(int reviewer, int movie) {
+        if (!db.matrix().contains(reviewer, movie)) {
+            return false;
+        }
+        log(WriteAheadLog.DELETE_SCORE, reviewer, movie, 0);
+        return db.deleteScore(reviewer, movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Dump out all the ratings. Each reviewer's rating should be in a
+     * separate line (in ascending order by reviewer index), with
+     * movie/score pairs listed in ascending order of movie index.
+     *
+     * @return String representing the listing, empty string if there are none
+     */
+    public String printRatings() {
+        return db.printRatings();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given reviewer, with scores listed in
+     * ascending order of movie index.
+     *
+     * @param reviewer
+     *            The reviewer to list ratings for
+     * @return String representing the listing, null if no such reviewer
+     */
+    public String listReviewer(int reviewer) {
+        return db.listReviewer(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given movie, with scores listed in
+     * ascending order of reviewer index.
+     *
+     * @param movie
+     *            The movie to list ratings for
+     * @return String representing the listing, null if no such movie
+     */
+    public String listMovie(int movie) {
+        return db.listMovie(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the movie most similar to the specified one.
+     *
+     * @param movie
+     *            the movie to find match for.
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    public int similarMovie(int movie) {
+        return db.similarMovie(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the reviewer most similar to the specified one.
+     *
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    public int similarReviewer(int reviewer) {
+        return db.similarReviewer(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k movies most similar to the specified one, best first.
+     *
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this movie does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarMovies(int movie, int k) {
+        return db.similarMovies(movie, k);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k reviewers most similar to the specified one, best first.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this reviewer does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        return db.similarReviewers(reviewer, k);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a movie's ratings.
+     *
+     * @param movie
+     *            the movie to summarize.
+     * @return The stats, null if no such movie.
+     */
+    public RatingStats movieStats(int movie) {
+        return db.movieStats(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a reviewer's ratings.
+     *
+     * @param reviewer
+     *            the reviewer to summarize.
+     * @return The stats, null if no such reviewer.
+     */
+    public RatingStats reviewerStats(int reviewer) {
+        return db.reviewerStats(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Force every change made so far to disk.
+     *
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Save every rating to the checkpoint file and empty the log, so the
+     * next open only replays changes made after this.
+     *
+     * @return the number of ratings saved
+     * @throws IOException
+     *             if the checkpoint or the log cannot be written
+     */
+    public long checkpoint() throws IOException {
+        log.sync(); // fail here, before the checkpoint, if the log failed
+        long ratings = db.checkpoint(checkpointFile);
+        log.truncate();
+        return ratings;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of log records replayed when this database was
+     * opened.
+     *
+     * @return the record count
+     */
+    public long getReplayed() {
+        return log.replayed();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of forced log writes since this database was opened.
+     *
+     * @return the sync count
+     */
+    public long getSyncs() {
+        return log.syncs();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sync and close the log. The database must not be used after this.
+     *
+     * @throws IOException
+     *             if the log cannot be written or closed
+     */
+    public void close() throws IOException {
+        log.close();
+    }
+
+
+    /**
+     * Append a record to the log, before its change is applied.
+     *
+     * @param op
+     *            - the operation
+     * @param a
+     *            - first argument
+     * @param b
+     *            - second argument
+     * @param c
+     *            - third argument
+     */
+    private void log(byte op, int a, int b, int c) {
+        try {
+            log.append(op, a, b, c);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
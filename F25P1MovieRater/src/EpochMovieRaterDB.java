@@ -0,0 +1,483 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// -------------------------------------------------------------------------
+/**
+ * MovieRater with snapshot isolated, lock-free reads. Writes go to a
+ * MovieRaterDB under one writer lock and bump the write epoch. Reads are
+ * served from an immutable Version (a CsrSnapshot tagged with the epoch it
+ * was built at) that is published through a volatile field, so a reader
+ * only ever sees one whole, consistent state of the matrix and can never
+ * be corrupted or stalled by a concurrent removeRow or insert.
+ *
+ * -readers never take the writer lock or build anything: every read uses
+ * the published version, which may be a slightly older but consistent
+ * state
+ * -the writers publish: a write queues a publish task on the common
+ * ForkJoinPool unless one is queued already, so a burst of writes is
+ * batched into one new version, built off the read path
+ * -a new version is built from the last one: the writers note which rows
+ * and columns they touch, and only those are copied out of the matrix
+ * under the writer lock, O(their length). The new version is then put
+ * together from them and the last version's arrays with the lock
+ * released, so writers are never held up by a copy of the whole matrix
+ * -reads are not guaranteed to see the caller's own writes until they are
+ * published; a writer that needs that calls publish() after writing, which
+ * builds the new version right away
+ * -pin() hands out the current version, so several reads (a listing and a
+ * similarity query, say) can be made against the same state
+ *
+ * Old versions are dropped by the garbage collector once no reader has
+ * them pinned.
+ *
+ * @author benblucher, austink23
+ * @version Oct 17, 2026
+ */
+public class EpochMovieRaterDB implements MovieRater {
+
+    private final MovieRaterDB db; // the mutable data, under writeLock
+    private final ReentrantLock writeLock; // one writer at a time
+    private final ReentrantLock publishLock; // one version built at a time
+    private final ThreadLocal<SimilarityAccumulator> scratch; // per thread
+    private volatile long writeEpoch; // bumped by every change
+    private volatile Version published; // latest version readers can pin
+    private final AtomicBoolean publishing; // a publish task is queued
+    private IntIntHashMap dirtyRows; // rows changed since the last build
+    private IntIntHashMap dirtyCols; // cols changed since the last build
+    private boolean cleared; // cleared since the last build
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new, empty EpochMovieRaterDB.
+     */
+    public EpochMovieRaterDB() {
+        db = new MovieRaterDB();
+        writeLock = new ReentrantLock();
+        publishLock = new ReentrantLock();
+        dirtyRows = new IntIntHashMap();
+        dirtyCols = new IntIntHashMap();
+        scratch = ThreadLocal.withInitial(SimilarityAccumulator::new);
+        publishing = new AtomicBoolean();
+        published = new Version(0, new CsrSnapshot(db.matrix()));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * (Re)initialize the database.
+     *
+     * @return true on clear
+     */
+    public boolean clear() {
+        writeLock.lock();
+        try {
+            written();
+            cleared = true; // the next version starts from nothing
+            dirtyRows = new IntIntHashMap();
+            dirtyCols = new IntIntHashMap();
+            return db.clear();
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Add a score to the database. If there already is a score for this
+     * reviewer and movie pair, then update it.
+     *
+     * @param reviewer
+     *            The reviewer giving the rating
+     *            (must be a positive integer)
+     * @param movie
+     *            The movie being rated
+     *            (must be a positive integer)
+     * @param score
+     *            The rating score (1-10)
+     * @return True if the review was successfully added.
+     *         False otherwise (for bad input values)
+     */
+    public boolean addReview(int reviewer, int movie, int score) {
+        if (!MovieRaterDB.isValid(reviewer, movie, score)) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            written();
+            dirtyRows.put(reviewer, 0);
+            dirtyCols.put(movie, 0);
+            return db.addReview(reviewer, movie, score);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified reviewer. This will delete all associated ratings.
+     *
+     * @param reviewer
+     *            The reviewer to delete
+     *
+     * @return True if the reviewer was successfully deleted.
+     *         False if no such reviewer in the database.
+     */
+    public boolean deleteReviewer(int reviewer) {
+        writeLock.lock();
+        try {
+            SparseMatrix.HeaderNode header = db.matrix().peekRowHeader(
+                reviewer);
+            if (header == null) {
+                return false;
+            }
+            for (SparseMatrix.Node n = header.getnNode(); n != null; n = n
+                .getRight()) {
+                dirtyCols.put(n.getCol(), 0);
+            }
+            dirtyRows.put(reviewer, 0);
+            written();
+            return db.deleteReviewer(reviewer);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified movie. This will delete all associated ratings.
+     *
+     * @param movie
+     *            The movie to delete
+     *
+     * @return True if the movie was successfully deleted.
+     *         False if no such movie in the database.
+     */
+    public boolean deleteMovie(int movie) {
+        writeLock.lock();
+        try {
+            SparseMatrix.HeaderNode header = db.matrix().peekColHeader(movie);
+            if (header == null) {
+                return false;
+            }
+            for (SparseMatrix.Node n = header.getnNode(); n != null; n = n
+                .getDown()) {
+                dirtyRows.put(n.getRow(), 0);
+            }
+            dirtyCols.put(movie, 0);
+            written();
+            return db.deleteMovie(movie);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified score.
+     *
+     * @param reviewer
+     *            The reviewer of the score to delete
+     * @param movie
+     *            The movie of the score to delete
+     *
+     * @return True if the score was successfully deleted.
+     *         False if no such score in the database.
+     */
+    public boolean deleteScore(int reviewer, int movie) {
+        writeLock.lock();
+        try {
+            boolean done = db.deleteScore(reviewer, movie);
+            if (done) {
+                written();
+                dirtyRows.put(reviewer, 0);
+                dirtyCols.put(movie, 0);
+            }
+            return done;
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Dump out all the ratings. Each reviewer's rating should be in a
+     * separate line (in ascending order by reviewer index), with
+     * movie/score pairs listed in ascending order of movie index.
+     *
+     * @return String representing the listing, empty string if there are none
+     */
+    public String printRatings() {
+        return pin().getSnapshot().matrixList();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given reviewer, with scores listed in
+     * ascending order of movie index.
+     *
+     * @param reviewer
+     *            The reviewer to list ratings for
+     * @return String representing the listing, null if no such reviewer
+     */
+    public String listReviewer(int reviewer) {
+        return pin().getSnapshot().rowList(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given movie, with scores listed in
+     * ascending order of reviewer index.
+     *
+     * @param movie
+     *            The movie to list ratings for
+     * @return String representing the listing, null if no such movie
+     */
+    public String listMovie(int movie) {
+        return pin().getSnapshot().colList(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the movie most similar to the specified one.
+     *
+     * @param movie
+     *            the movie to find match for.
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    public int similarMovie(int movie) {
+        return pin().getSnapshot().similarMovie(movie, scratch.get());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the reviewer most similar to the specified one.
+     *
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    public int similarReviewer(int reviewer) {
+        return pin().getSnapshot().similarReviewer(reviewer, scratch.get());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k movies most similar to the specified one, best first.
+     *
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this movie does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarMovies(int movie, int k) {
+        return pin().getSnapshot().similarMovies(movie, k, scratch.get());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k reviewers most similar to the specified one, best first.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this reviewer does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        return pin().getSnapshot().similarReviewers(reviewer, k, scratch
+            .get());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a movie's ratings.
+     *
+     * @param movie
+     *            the movie to summarize.
+     * @return The stats, null if no such movie.
+     */
+    public RatingStats movieStats(int movie) {
+        return pin().getSnapshot().colStats(movie);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a reviewer's ratings.
+     *
+     * @param reviewer
+     *            the reviewer to summarize.
+     * @return The stats, null if no such reviewer.
+     */
+    public RatingStats reviewerStats(int reviewer) {
+        return pin().getSnapshot().rowStats(reviewer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the version reads should use: the latest published one. Never
+     * waits and never builds a version.
+     *
+     * @return a version that stays the same for as long as it is held
+     */
+    public Version pin() {
+        return published;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Build and publish a version with every write so far, waiting for the
+     * writer lock if needed. Meant for writers: after it returns, reads
+     * from any thread see every write made before the call.
+     *
+     * @return the published version
+     */
+    public Version publish() {
+        publishLock.lock();
+        try {
+            return publishNext();
+        }
+        finally {
+            publishLock.unlock();
+        }
+    }
+
+
+    /**
+     * Bump the write epoch and make sure a publish task is queued to pick
+     * the change up. The caller must hold the writer lock, so a task that
+     * is queued but has not taken its copy yet will see the change, and
+     * one that has taken it has cleared the flag before this can run.
+     */
+    private void written() {
+        writeEpoch++;
+        if (publishing.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(this::publishQueued);
+        }
+    }
+
+
+    /**
+     * Publish task queued by the writers: build the next version with
+     * every write up to the moment it gets the writer lock.
+     */
+    private void publishQueued() {
+        publishLock.lock();
+        try {
+            publishNext();
+        }
+        finally {
+            publishLock.unlock();
+        }
+    }
+
+
+    /**
+     * Publish a new version if the current one is stale: copy the changed
+     * rows and columns under the writer lock, then build the version from
+     * them and the current one after letting go of it. The caller must
+     * hold the publish lock, so versions are built one at a time, each on
+     * the one before.
+     *
+     * @return the published version
+     */
+    private Version publishNext() {
+        long epoch;
+        boolean fromEmpty;
+        CsrSnapshot.Lists rows;
+        CsrSnapshot.Lists cols;
+        writeLock.lock();
+        try {
+            publishing.set(false); // later writes need another task
+            epoch = writeEpoch;
+            if (published.getEpoch() == epoch) {
+                return published;
+            }
+            rows = CsrSnapshot.copyRows(db.matrix(), dirtyRows.keys());
+            cols = CsrSnapshot.copyCols(db.matrix(), dirtyCols.keys());
+            dirtyRows = new IntIntHashMap();
+            dirtyCols = new IntIntHashMap();
+            fromEmpty = cleared;
+            cleared = false;
+        }
+        finally {
+            writeLock.unlock();
+        }
+        CsrSnapshot base = fromEmpty
+            ? new CsrSnapshot(new SparseMatrix())
+            : published.getSnapshot();
+        published = new Version(epoch, new CsrSnapshot(base, rows, cols));
+        return published;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * One immutable state of the database: a snapshot and the write epoch
+     * it includes every write up to.
+     */
+    public static class Version {
+        private final long epoch; // write epoch the snapshot was built at
+        private final CsrSnapshot snapshot; // the ratings at that epoch
+
+        /**
+         * Create a new Version.
+         *
+         * @param epoch
+         *            - write epoch the snapshot was built at
+         * @param snapshot
+         *            - the ratings at that epoch
+         */
+        Version(long epoch, CsrSnapshot snapshot) {
+            this.epoch = epoch;
+            this.snapshot = snapshot;
+        }
+
+
+        /**
+         * Get the write epoch this version was built at.
+         *
+         * @return the epoch
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+
+        /**
+         * Get the ratings of this version.
+         *
+         * @return the snapshot
+         */
+        public CsrSnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+}
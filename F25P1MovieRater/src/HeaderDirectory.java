@@ -0,0 +1,327 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Directory that sits in front of one of the SparseMatrix header lists so a
+ * header can be found without walking the list from the dummy head.
+ *
+ * -ids in [0, DENSE_LIMIT) live in a growable array indexed by id, with a
+ * bitmap beside it so the closest lower header can be found quickly when a
+ * new header has to be linked in
+ * -the bitmap has two summary levels above it (a bit per non-empty word of
+ * the level below), so finding the closest lower header reads a few words
+ * per level instead of scanning back one word at a time
+ * -every other id (huge or negative) lives in a sorted TreeMap
+ *
+ * The directory only indexes the headers. The sorted HeaderNode chain that
+ * starts at the dummy head is still kept, so ordered traversal through
+ * getN() works exactly as before.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class HeaderDirectory {
+
+    /** ids below this bound are kept in the dense array */
+    static final int DENSE_LIMIT = 1 << 22;
+
+    private static final int INITIAL_SIZE = 64; // starting dense array size
+    private static final int LEVELS = 3; // bitmap plus its two summaries
+
+    private final SparseMatrix.HeaderNode head; // dummy start of the chain
+    private SparseMatrix.HeaderNode[] dense; // headers indexed by id
+    private long[][] present; // [0]: a bit per dense slot holding a
+                              // header, [1], [2]: a bit per non-empty
+                              // word of the level below
+    private final TreeMap<Integer, SparseMatrix.HeaderNode> sparse;
+    private int size; // number of real headers in the directory
+
+    /**
+     * Create a new, empty HeaderDirectory.
+     *
+     * @param head
+     *            - dummy header that starts the chain this directory indexes
+     */
+    HeaderDirectory(SparseMatrix.HeaderNode head) {
+        this.head = head;
+        dense = new SparseMatrix.HeaderNode[INITIAL_SIZE];
+        present = new long[LEVELS][];
+        allocateLevels(INITIAL_SIZE);
+        sparse = new TreeMap<Integer, SparseMatrix.HeaderNode>();
+    }
+
+
+    /**
+     * Get the dummy header this directory is attached to.
+     *
+     * @return the dummy header at the start of the chain
+     */
+    SparseMatrix.HeaderNode head() {
+        return head;
+    }
+
+
+    /**
+     * Get the number of real headers in the directory.
+     *
+     * @return the number of headers (not counting the dummy)
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Look up the header for an id without creating it.
+     *
+     * @param id
+     *            - index of the header you are searching for
+     * @return the header, or null if there is none for that id
+     */
+    SparseMatrix.HeaderNode find(int id) {
+        if (isDense(id)) {
+            return id < dense.length ? dense[id] : null;
+        }
+        return sparse.get(id);
+    }
+
+
+    /**
+     * Find the header for an id, creating it and linking it into the chain
+     * in sorted position if it does not exist yet.
+     *
+     * @param id
+     *            - index of the header you are searching for
+     * @return the header for that id (never null)
+     */
+    SparseMatrix.HeaderNode findOrCreate(int id) {
+        SparseMatrix.HeaderNode found = find(id);
+        if (found != null) {
+            return found;
+        }
+
+        // Header not found. Create it and link it behind its predecessor
+        SparseMatrix.HeaderNode prev = predecessor(id);
+        SparseMatrix.HeaderNode newNode = new SparseMatrix.HeaderNode(id);
+        newNode.setN(prev.getN());
+        prev.setN(newNode);
+
+        if (isDense(id)) {
+            ensureCapacity(id);
+            dense[id] = newNode;
+            mark(id);
+        }
+        else {
+            sparse.put(id, newNode);
+        }
+        size++;
+        return newNode;
+    }
+
+
+    /**
+     * Unlink the header for an id from the chain and drop it from the
+     * directory. Does nothing if there is no header for that id.
+     *
+     * @param id
+     *            - index of the header to remove
+     * @return the removed header, or null if there was none
+     */
+    SparseMatrix.HeaderNode remove(int id) {
+        SparseMatrix.HeaderNode found = find(id);
+        if (found == null) {
+            return null;
+        }
+
+        predecessor(id).setN(found.getN());
+        found.setN(null);
+
+        if (isDense(id)) {
+            dense[id] = null;
+            unmark(id);
+        }
+        else {
+            sparse.remove(id);
+        }
+        size--;
+        return found;
+    }
+
+
+    /**
+     * Find the header that comes right before an id in the sorted chain.
+     *
+     * @param id
+     *            - index whose predecessor you want
+     * @return the closest header with a smaller index, or the dummy head if
+     *         there is none
+     */
+    private SparseMatrix.HeaderNode predecessor(int id) {
+        // Any header in the dense range sits between the negative and the
+        // huge sparse ids, so check the dense side first for ids above it
+        SparseMatrix.HeaderNode best = null;
+        if (id > 0) {
+            best = denseBelow(Math.min(id, DENSE_LIMIT));
+        }
+
+        Map.Entry<Integer, SparseMatrix.HeaderNode> entry = sparse.lowerEntry(
+            id);
+        if (entry != null && (best == null || entry.getKey() > best
+            .getIndex())) {
+            best = entry.getValue();
+        }
+        return best == null ? head : best;
+    }
+
+
+    /**
+     * Find the dense header with the largest index below a bound using the
+     * presence bitmap and its summaries.
+     *
+     * @param bound
+     *            - exclusive upper bound on the index (0 < bound)
+     * @return the header, or null if no dense header is below the bound
+     */
+    private SparseMatrix.HeaderNode denseBelow(int bound) {
+        int slot = highestBelow(0, Math.min(bound, dense.length));
+        return slot < 0 ? null : dense[slot];
+    }
+
+
+    /**
+     * Find the highest set bit below a bound on one bitmap level. A miss in
+     * the bound's own word is answered by the level above, which says which
+     * lower word is the closest non-empty one; only the top level, at most
+     * DENSE_LIMIT / 2^18 = 16 words, is scanned.
+     *
+     * @param level
+     *            - the level to search
+     * @param bound
+     *            - exclusive upper bound on the bit index
+     * @return the bit index, or -1 if no bit below the bound is set
+     */
+    private int highestBelow(int level, int bound) {
+        long[] bits = present[level];
+        int last = Math.min(bound, bits.length << 6) - 1; // highest to check
+        if (last < 0) {
+            return -1;
+        }
+        int word = last >> 6;
+        // mask off the bits above 'last' in the first word
+        long masked = bits[word] & (-1L >>> (63 - (last & 63)));
+        if (masked != 0) {
+            return (word << 6) + 63 - Long.numberOfLeadingZeros(masked);
+        }
+        if (level == LEVELS - 1) {
+            while (--word >= 0) {
+                if (bits[word] != 0) {
+                    return (word << 6) + 63 - Long.numberOfLeadingZeros(
+                        bits[word]);
+                }
+            }
+            return -1;
+        }
+        word = highestBelow(level + 1, word); // closest non-empty word
+        if (word < 0) {
+            return -1;
+        }
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(bits[word]);
+    }
+
+
+    /**
+     * Set a dense slot's bit, and the summary bits of words that were
+     * empty until now.
+     *
+     * @param id
+     *            - the slot
+     */
+    private void mark(int id) {
+        int bit = id;
+        for (int level = 0; level < LEVELS; level++) {
+            long[] bits = present[level];
+            boolean wasEmpty = bits[bit >> 6] == 0;
+            bits[bit >> 6] |= 1L << bit;
+            if (!wasEmpty) {
+                return; // the levels above already know about this word
+            }
+            bit >>= 6;
+        }
+    }
+
+
+    /**
+     * Clear a dense slot's bit, and the summary bits of words left empty.
+     *
+     * @param id
+     *            - the slot
+     */
+    private void unmark(int id) {
+        int bit = id;
+        for (int level = 0; level < LEVELS; level++) {
+            long[] bits = present[level];
+            bits[bit >> 6] &= ~(1L << bit);
+            if (bits[bit >> 6] != 0) {
+                return; // the word still has bits, the summaries stand
+            }
+            bit >>= 6;
+        }
+    }
+
+
+    /**
+     * Make the bitmap levels big enough for a dense array size, keeping
+     * the bits already set.
+     *
+     * @param size
+     *            - dense array size, a power of 2 of at least 64
+     */
+    private void allocateLevels(int size) {
+        int bits = size;
+        for (int level = 0; level < LEVELS; level++) {
+            int words = (bits + 63) >> 6;
+            long[] grown = new long[words];
+            if (present[level] != null) {
+                System.arraycopy(present[level], 0, grown, 0,
+                    present[level].length);
+            }
+            present[level] = grown;
+            bits = words;
+        }
+    }
+
+
+    /**
+     * Grow the dense array (and bitmap) so it can hold the given id.
+     *
+     * @param id
+     *            - id that must fit in the dense array
+     */
+    private void ensureCapacity(int id) {
+        if (id < dense.length) {
+            return;
+        }
+        int newSize = dense.length;
+        while (newSize <= id) {
+            newSize <<= 1;
+        }
+        SparseMatrix.HeaderNode[] grown =
+            new SparseMatrix.HeaderNode[newSize];
+        System.arraycopy(dense, 0, grown, 0, dense.length);
+        dense = grown;
+        allocateLevels(newSize);
+    }
+
+
+    /**
+     * Check if an id is stored in the dense array.
+     *
+     * @param id
+     *            - id to check
+     * @return true if the id is in [0, DENSE_LIMIT)
+     */
+    private static boolean isDense(int id) {
+        return id >= 0 && id < DENSE_LIMIT;
+    }
+}
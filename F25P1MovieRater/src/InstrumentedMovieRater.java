@@ -0,0 +1,481 @@
+import java.util.Locale;
+
+// -------------------------------------------------------------------------
+/**
+ * MovieRater that times every call it passes on to another MovieRater, in
+ * one lock-free LatencyHistogram per operation, and can also report the
+ * MatrixCounters of the database underneath. snapshot() and toJson() give
+ * the numbers as text or JSON.
+ *
+ * Timing costs two System.nanoTime() calls and a histogram record per
+ * call; a MovieRater used without this wrapper pays nothing. Recording is
+ * thread safe, so this can wrap a ConcurrentMovieRaterDB shared by several
+ * threads.
+ *
+ * @author benblucher, austink23
+ * @version Oct 17, 2026
+ */
+public class InstrumentedMovieRater implements MovieRater {
+
+    private static final int CLEAR = 0; // index into OPS
+    private static final int ADD_REVIEW = 1;
+    private static final int DELETE_REVIEWER = 2;
+    private static final int DELETE_MOVIE = 3;
+    private static final int DELETE_SCORE = 4;
+    private static final int PRINT_RATINGS = 5;
+    private static final int LIST_REVIEWER = 6;
+    private static final int LIST_MOVIE = 7;
+    private static final int SIMILAR_MOVIE = 8;
+    private static final int SIMILAR_REVIEWER = 9;
+    private static final int SIMILAR_MOVIES = 10;
+    private static final int SIMILAR_REVIEWERS = 11;
+    private static final int MOVIE_STATS = 12;
+    private static final int REVIEWER_STATS = 13;
+    private static final String[] OPS = {"clear", "addReview",
+        "deleteReviewer", "deleteMovie", "deleteScore", "printRatings",
+        "listReviewer", "listMovie", "similarMovie", "similarReviewer",
+        "similarMovies", "similarReviewers", "movieStats", "reviewerStats"};
+
+    private final MovieRater rater; // the MovieRater being timed
+    private final MatrixCounters counters; // its counters, or null
+    private final LatencyHistogram[] latency; // one per entry of OPS
+
+    // ----------------------------------------------------------
+    /**
+     * Time the calls to a MovieRater.
+     *
+     * @param rater
+     *            the MovieRater to pass the calls on to
+     */
+    public InstrumentedMovieRater(MovieRater rater) {
+        this(rater, null);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Time the calls to a MovieRater and report its matrix counters too,
+     * as returned by MovieRaterDB.enableCounters().
+     *
+     * @param rater
+     *            the MovieRater to pass the calls on to
+     * @param counters
+     *            the counters to report, or null for none
+     */
+    public InstrumentedMovieRater(MovieRater rater, MatrixCounters counters) {
+        this.rater = rater;
+        this.counters = counters;
+        latency = new LatencyHistogram[OPS.length];
+        for (int i = 0; i < OPS.length; i++) {
+            latency[i] = new LatencyHistogram();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * (Re)initialize the database.
+     *
+     * @return true on clear
+     */
+    public boolean clear() {
+        long start = System.nanoTime();
+        try {
+            return rater.clear();
+        }
+        finally {
+            latency[CLEAR].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Add a score to the database. If there already is a score for this
+     * reviewer and movie pair, then update it.
+     *
+     * @param reviewer
+     *            The reviewer giving the rating
+     *            (must be a positive integer)
+     * @param movie
+     *            The movie being rated
+     *            (must be a positive integer)
+     * @param score
+     *            The rating score (1-10)
+     * @return True if the review was successfully added.
+     *         False otherwise (for bad input values)
+     */
+    public boolean addReview(int reviewer, int movie, int score) {
+        long start = System.nanoTime();
+        try {
+            return rater.addReview(reviewer, movie, score);
+        }
+        finally {
+            latency[ADD_REVIEW].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified reviewer. This will delete all associated ratings.
+     *
+     * @param reviewer
+     *            The reviewer to delete
+     *
+     * @return True if the reviewer was successfully deleted.
+     *         False if no such reviewer in the database.
+     */
+    public boolean deleteReviewer(int reviewer) {
+        long start = System.nanoTime();
+        try {
+            return rater.deleteReviewer(reviewer);
+        }
+        finally {
+            latency[DELETE_REVIEWER].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified movie. This will delete all associated ratings.
+     *
+     * @param movie
+     *            The movie to delete
+     *
+     * @return True if the movie was successfully deleted.
+     *         False if no such movie in the database.
+     */
+    public boolean deleteMovie(int movie) {
+        long start = System.nanoTime();
+        try {
+            return rater.deleteMovie(movie);
+        }
+        finally {
+            latency[DELETE_MOVIE].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified score.
+     *
+     * @param reviewer
+     *            The reviewer of the score to delete
+     * @param movie
+     *            The movie of the score to delete
+     *
+     * @return True if the score was successfully deleted.
+     *         False if no such score in the database.
+     */
+    public boolean deleteScore(int reviewer, int movie) {
+        long start = System.nanoTime();
+        try {
+            return rater.deleteScore(reviewer, movie);
+        }
+        finally {
+            latency[DELETE_SCORE].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Dump out all the ratings. Each reviewer's rating should be in a
+     * separate line (in ascending order by reviewer index), with
+     * movie/score pairs listed in ascending order of movie index.
+     *
+     * @return String representing the listing, empty string if there are none
+     */
+    public String printRatings() {
+        long start = System.nanoTime();
+        try {
+            return rater.printRatings();
+        }
+        finally {
+            latency[PRINT_RATINGS].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given reviewer, with scores listed in
+     * ascending order of movie index.
+     *
+     * @param reviewer
+     *            The reviewer to list ratings for
+     * @return String representing the listing, null if no such reviewer
+     */
+    public String listReviewer(int reviewer) {
+        long start = System.nanoTime();
+        try {
+            return rater.listReviewer(reviewer);
+        }
+        finally {
+            latency[LIST_REVIEWER].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given movie, with scores listed in
+     * ascending order of reviewer index.
+     *
+     * @param movie
+     *            The movie to list ratings for
+     * @return String representing the listing, null if no such movie
+     */
+    public String listMovie(int movie) {
+        long start = System.nanoTime();
+        try {
+            return rater.listMovie(movie);
+        }
+        finally {
+            latency[LIST_MOVIE].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the movie most similar to the specified one.
+     *
+     * @param movie
+     *            the movie to find match for.
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    public int similarMovie(int movie) {
+        long start = System.nanoTime();
+        try {
+            return rater.similarMovie(movie);
+        }
+        finally {
+            latency[SIMILAR_MOVIE].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the reviewer most similar to the specified one.
+     *
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    public int similarReviewer(int reviewer) {
+        long start = System.nanoTime();
+        try {
+            return rater.similarReviewer(reviewer);
+        }
+        finally {
+            latency[SIMILAR_REVIEWER].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k movies most similar to the specified one, best first.
+     *
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this movie does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarMovies(int movie, int k) {
+        long start = System.nanoTime();
+        try {
+            return rater.similarMovies(movie, k);
+        }
+        finally {
+            latency[SIMILAR_MOVIES].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k reviewers most similar to the specified one, best first.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this reviewer does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        long start = System.nanoTime();
+        try {
+            return rater.similarReviewers(reviewer, k);
+        }
+        finally {
+            latency[SIMILAR_REVIEWERS].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a movie's ratings.
+     *
+     * @param movie
+     *            the movie to summarize.
+     * @return The stats, null if no such movie.
+     */
+    public RatingStats movieStats(int movie) {
+        long start = System.nanoTime();
+        try {
+            return rater.movieStats(movie);
+        }
+        finally {
+            latency[MOVIE_STATS].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a reviewer's ratings.
+     *
+     * @param reviewer
+     *            the reviewer to summarize.
+     * @return The stats, null if no such reviewer.
+     */
+    public RatingStats reviewerStats(int reviewer) {
+        long start = System.nanoTime();
+        try {
+            return rater.reviewerStats(reviewer);
+        }
+        finally {
+            latency[REVIEWER_STATS].record(System.nanoTime() - start);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the latency histogram of one operation.
+     *
+     * @param op
+     *            the operation's method name, like "addReview"
+     * @return its histogram, or null if there is no such operation
+     */
+    public LatencyHistogram getLatency(String op) {
+        for (int i = 0; i < OPS.length; i++) {
+            if (OPS[i].equals(op)) {
+                return latency[i];
+            }
+        }
+        return null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Forget every recorded latency and zero the counters.
+     */
+    public void reset() {
+        for (LatencyHistogram h : latency) {
+            h.reset();
+        }
+        if (counters != null) {
+            counters.reset();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Describe the numbers so far as a table, one line per operation that
+     * was called (count, mean, p50, p99, p99.9 and max in nanoseconds),
+     * then the counters if there are any.
+     *
+     * @return the text
+     */
+    public String snapshot() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT,
+            "%-17s %10s %10s %10s %10s %10s %10s%n", "op", "count", "mean",
+            "p50", "p99", "p99.9", "max"));
+        for (int i = 0; i < OPS.length; i++) {
+            LatencyHistogram h = latency[i];
+            long count = h.getCount();
+            if (count > 0) {
+                out.append(String.format(Locale.ROOT,
+                    "%-17s %10d %10.0f %10d %10d %10d %10d%n", OPS[i], count,
+                    h.getMean(), h.getPercentile(50), h.getPercentile(99), h
+                        .getPercentile(99.9), h.getMax()));
+            }
+        }
+        if (counters != null) {
+            out.append(String.format(Locale.ROOT,
+                "live nodes %d, rows %d, cols %d%n", counters.getLiveNodes(),
+                counters.getLiveRows(), counters.getLiveCols()));
+            out.append(String.format(Locale.ROOT,
+                "header lookups %d (%d created), row hops %d, col hops %d%n",
+                counters.getHeaderLookups(), counters.getHeadersCreated(),
+                counters.getRowHops(), counters.getColHops()));
+            out.append(String.format(Locale.ROOT,
+                "similarity joins %d (%d nodes), fan-out nodes %d%n", counters
+                    .getJoins(), counters.getJoinNodes(), counters
+                        .getFanOutNodes()));
+        }
+        return out.toString();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Describe the numbers so far as a JSON object: "latency" maps each
+     * operation that was called to its count, mean, p50, p99, p999 and max
+     * in nanoseconds, and "counters" holds the counters if there are any.
+     *
+     * @return the JSON text
+     */
+    public String toJson() {
+        StringBuilder out = new StringBuilder("{\"latency\":{");
+        boolean first = true;
+        for (int i = 0; i < OPS.length; i++) {
+            LatencyHistogram h = latency[i];
+            long count = h.getCount();
+            if (count == 0) {
+                continue;
+            }
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append(String.format(Locale.ROOT,
+                "\"%s\":{\"count\":%d,\"mean\":%.1f,\"p50\":%d,"
+                    + "\"p99\":%d,\"p999\":%d,\"max\":%d}", OPS[i], count,
+                h.getMean(), h.getPercentile(50), h.getPercentile(99), h
+                    .getPercentile(99.9), h.getMax()));
+        }
+        out.append('}');
+        if (counters != null) {
+            out.append(String.format(Locale.ROOT, ",\"counters\":{"
+                + "\"liveNodes\":%d,\"liveRows\":%d,\"liveCols\":%d,"
+                + "\"headerLookups\":%d,\"headersCreated\":%d,"
+                + "\"rowHops\":%d,\"colHops\":%d,\"joins\":%d,"
+                + "\"joinNodes\":%d,\"fanOutNodes\":%d}", counters
+                    .getLiveNodes(), counters.getLiveRows(), counters
+                        .getLiveCols(), counters.getHeaderLookups(), counters
+                            .getHeadersCreated(), counters.getRowHops(),
+                counters.getColHops(), counters.getJoins(), counters
+                    .getJoinNodes(), counters.getFanOutNodes()));
+        }
+        return out.append('}').toString();
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * Small open addressing map from int keys to non-negative int values, kept
+ * in two flat int arrays (linear probing, backward shift on remove) so it
+ * does not box anything.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class IntIntHashMap {
+
+    /** value returned by get() when the key is not in the map */
+    static final int MISSING = -1;
+
+    private static final int INITIAL_CAPACITY = 16; // must be a power of 2
+
+    private int[] keys; // key stored in each slot
+    private int[] values; // value stored in each slot, MISSING if empty
+    private int size; // number of keys in the map
+
+    /**
+     * Create a new, empty IntIntHashMap.
+     */
+    IntIntHashMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * Get the number of keys in the map.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Look up the value for a key.
+     *
+     * @param key
+     *            - key to look up
+     * @return the value, or MISSING if the key is not in the map
+     */
+    int get(int key) {
+        return values[slotFor(key)];
+    }
+
+
+    /**
+     * Set the value for a key, adding the key if needed.
+     *
+     * @param key
+     *            - key to set
+     * @param value
+     *            - the new value (must be >= 0)
+     */
+    void put(int key, int value) {
+        int slot = slotFor(key);
+        if (values[slot] == MISSING) {
+            if ((size + 1) * 2 > keys.length) {
+                grow(); // keep the table at most half full
+                slot = slotFor(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+
+    /**
+     * Remove a key from the map. Later keys in the same probe run are
+     * shifted back so lookups never need tombstones.
+     *
+     * @param key
+     *            - key to remove
+     * @return the value it had, or MISSING if the key was not in the map
+     */
+    int remove(int key) {
+        int mask = keys.length - 1;
+        int hole = slotFor(key);
+        int old = values[hole];
+        if (old == MISSING) {
+            return MISSING;
+        }
+        size--;
+
+        int slot = (hole + 1) & mask;
+        while (values[slot] != MISSING) {
+            int home = home(keys[slot]);
+            // move the entry back if the hole lies between home and slot
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[hole] = MISSING;
+        return old;
+    }
+
+
+    /**
+     * Copy every key into a new array, in no particular order.
+     *
+     * @return the keys
+     */
+    int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != MISSING) {
+                result[n++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Find the slot that holds a key, or the empty slot it should go in.
+     *
+     * @param key
+     *            - key to look for
+     * @return the slot index
+     */
+    private int slotFor(int key) {
+        int mask = keys.length - 1;
+        int slot = home(key);
+        while (values[slot] != MISSING && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    /**
+     * Get the slot a key hashes to before probing.
+     *
+     * @param key
+     *            - key to hash
+     * @return the home slot
+     */
+    private int home(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (keys.length - 1);
+    }
+
+
+    /**
+     * Double the table and re-insert every key.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldValues[slot] != MISSING) {
+                int to = slotFor(oldKeys[slot]);
+                keys[to] = oldKeys[slot];
+                values[to] = oldValues[slot];
+                size++;
+            }
+        }
+    }
+
+
+    /**
+     * Replace the table with empty arrays of the given capacity.
+     *
+     * @param capacity
+     *            - new table size (a power of 2)
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        size = 0;
+    }
+}
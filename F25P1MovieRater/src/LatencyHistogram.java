@@ -0,0 +1,169 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, with log-linear buckets
+ * like HdrHistogram: every power of two range is split into SUB_BUCKETS
+ * equal buckets, so a bucket is never more than 1/SUB_BUCKETS (12.5%) wider
+ * than the values in it, from 1 ns up to Long.MAX_VALUE, in a fixed 488
+ * slots.
+ *
+ * record() is an atomic increment of one slot plus a LongAdder add, so any
+ * number of threads can record at once with no locks. Reads (percentiles,
+ * counts) can run alongside recording and see a value that was correct
+ * at some point while they ran.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3; // log2 of SUB_BUCKETS
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR = 2 * SUB_BUCKETS; // exact below this
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts; // values recorded in each bucket
+    private final LongAdder total; // sum of every value recorded
+    private final AtomicLong max; // largest value recorded
+
+    /**
+     * Create a new, empty LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        total = new LongAdder();
+        max = new AtomicLong();
+    }
+
+
+    /**
+     * Record one latency.
+     *
+     * @param nanos
+     *            - the latency, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+
+    /**
+     * Get the number of latencies recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+
+    /**
+     * Get the mean latency.
+     *
+     * @return the mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double)total.sum() / count;
+    }
+
+
+    /**
+     * Get the largest latency recorded.
+     *
+     * @return the max in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+
+    /**
+     * Get the latency at a percentile: the top of the bucket holding the
+     * value at that rank, so at most 12.5% above the true value.
+     *
+     * @param percentile
+     *            - from 0 to 100
+     * @return the latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        // rank of the wanted value, from 1 to count
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+
+    /**
+     * Forget every recorded latency. Not atomic with concurrent record()
+     * calls, which may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+
+    /**
+     * Find the bucket for a value.
+     *
+     * @param value
+     *            - a value, at least 0
+     * @return its bucket
+     */
+    static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int)value;
+        }
+        // keep the top SUB_BITS + 1 bits; the shift picks the power of two
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int)(value >>> shift);
+    }
+
+
+    /**
+     * Find the largest value that falls in a bucket.
+     *
+     * @param bucket
+     *            - the bucket
+     * @return its largest value
+     */
+    static long highest(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,1025 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// -------------------------------------------------------------------------
+/**
+ * Implementation of the MovieRater that keeps the whole sparse matrix off
+ * the Java heap, in memory-mapped files inside a directory. Reopening the
+ * same directory picks up where the last instance left off.
+ *
+ * The layout is the orthogonal list of SparseMatrix, with slot numbers in
+ * place of references:
+ * -nodes.dat holds a small header and then one 28 byte record per rating
+ * (row, col, value, left, right, up, down), links being slot numbers or NIL
+ * -rows.dat and cols.dat are header directories: open addressing hash
+ * tables of (id, first slot of that row/col plus one) entries, so a header
+ * costs one 8 byte entry whatever its id, and an id like Integer.MAX_VALUE
+ * does not make the file any bigger than id 1 does
+ *
+ * Removed slots are chained into a free list through their right link.
+ * Files are mapped in fixed size chunks on first touch, so only the pages
+ * that are used take up memory.
+ *
+ * @author benblucher, austink23
+ * @version Oct 17, 2026
+ */
+public class MappedMovieRaterDB implements MovieRater, Closeable {
+
+    private static final int MAGIC = 0x4D525342; // "MRSB"
+    private static final int VERSION = 2; // 1 had dense directories
+    private static final int NIL = -1; // "no slot" link value
+
+    // offsets of the fields in the nodes.dat header
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int HIGH_WATER_AT = 8;
+    private static final int FREE_HEAD_AT = 12;
+    private static final int SIZE_AT = 16;
+    private static final int HEADER_BYTES = 64;
+
+    // offsets of the fields inside one node record
+    private static final int ROW = 0;
+    private static final int COL = 4;
+    private static final int VALUE = 8;
+    private static final int LEFT = 12;
+    private static final int RIGHT = 16;
+    private static final int UP = 20;
+    private static final int DOWN = 24;
+    private static final int RECORD_BYTES = 28;
+
+    private final MappedRegion nodes; // node records
+    private final HashedDirectory rowDir; // row id -> first slot
+    private final HashedDirectory colDir; // col id -> first slot
+    private final SimilarityAccumulator scratch; // reused by similarity
+
+    // ----------------------------------------------------------
+    /**
+     * Open (or create) a mapped database in the given directory.
+     *
+     * @param dir
+     *            directory that holds the mapped files
+     * @throws IOException
+     *             if the files cannot be opened or are not a database
+     */
+    public MappedMovieRaterDB(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        nodes = new MappedRegion(dir.resolve("nodes.dat"));
+        rowDir = new HashedDirectory(dir.resolve("rows.dat"));
+        colDir = new HashedDirectory(dir.resolve("cols.dat"));
+        scratch = new SimilarityAccumulator();
+
+        if (nodes.length() == 0) {
+            nodes.putInt(MAGIC_AT, MAGIC);
+            nodes.putInt(VERSION_AT, VERSION);
+            nodes.putInt(FREE_HEAD_AT, NIL);
+        }
+        else if (nodes.getInt(MAGIC_AT) != MAGIC || nodes.getInt(
+            VERSION_AT) != VERSION) {
+            close();
+            throw new IOException(dir + " does not hold a mapped database");
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * (Re)initialize the database. The directories go back to their
+     * starting capacity, the files keep their size.
+     *
+     * @return true on clear
+     */
+    public boolean clear() {
+        rowDir.clear();
+        colDir.clear();
+        nodes.putInt(HIGH_WATER_AT, 0);
+        nodes.putInt(FREE_HEAD_AT, NIL);
+        nodes.putInt(SIZE_AT, 0);
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Add a score to the database. If there already is a score for this
+     * reviewer and movie pair, then update it.
+     *
+     * @param reviewer
+     *            The reviewer giving the rating
+     *            (must be a positive integer)
+     * @param movie
+     *            The movie being rated
+     *            (must be a positive integer)
+     * @param score
+     *            The rating score (1-10)
+     * @return True if the review was successfully added.
+     *         False otherwise (for bad input values)
+     */
+    public boolean addReview(int reviewer, int movie, int score) {
+        // Scores must be in the range 1 to 10.
+        if (reviewer < 1 || movie < 1 || score < 1 || score > 10) {
+            return false;
+        }
+
+        // Traverse the row to find the correct position for the new slot
+        int prevRow = NIL;
+        int currRow = rowDir.head(reviewer);
+        while (currRow != NIL && field(currRow, COL) < movie) {
+            prevRow = currRow;
+            currRow = field(currRow, RIGHT);
+        }
+
+        // If this movie is already rated, just update the score
+        if (currRow != NIL && field(currRow, COL) == movie) {
+            setField(currRow, VALUE, score);
+            return true;
+        }
+
+        int slot = allocate();
+        setField(slot, ROW, reviewer);
+        setField(slot, COL, movie);
+        setField(slot, VALUE, score);
+
+        // Insert the new slot into the row list
+        setField(slot, LEFT, prevRow);
+        setField(slot, RIGHT, currRow);
+        if (prevRow != NIL) {
+            setField(prevRow, RIGHT, slot);
+        }
+        else {
+            rowDir.setHead(reviewer, slot);
+        }
+        if (currRow != NIL) {
+            setField(currRow, LEFT, slot);
+        }
+
+        // Traverse the column to find the correct position for the new slot
+        int prevCol = NIL;
+        int currCol = colDir.head(movie);
+        while (currCol != NIL && field(currCol, ROW) < reviewer) {
+            prevCol = currCol;
+            currCol = field(currCol, DOWN);
+        }
+
+        // Insert the new slot into the column list
+        setField(slot, UP, prevCol);
+        setField(slot, DOWN, currCol);
+        if (prevCol != NIL) {
+            setField(prevCol, DOWN, slot);
+        }
+        else {
+            colDir.setHead(movie, slot);
+        }
+        if (currCol != NIL) {
+            setField(currCol, UP, slot);
+        }
+
+        nodes.putInt(SIZE_AT, header(SIZE_AT) + 1);
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified reviewer. This will delete all associated ratings.
+     *
+     * @param reviewer
+     *            The reviewer to delete
+     *
+     * @return True if the reviewer was successfully deleted.
+     *         False if no such reviewer in the database.
+     */
+    public boolean deleteReviewer(int reviewer) {
+        int slot = rowDir.head(reviewer);
+        if (slot == NIL) {
+            return false;
+        }
+        rowDir.setHead(reviewer, NIL);
+        while (slot != NIL) {
+            int next = field(slot, RIGHT);
+            unlinkFromCol(slot);
+            release(slot);
+            slot = next;
+        }
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified movie. This will delete all associated ratings.
+     *
+     * @param movie
+     *            The movie to delete
+     *
+     * @return True if the movie was successfully deleted.
+     *         False if no such movie in the database.
+     */
+    public boolean deleteMovie(int movie) {
+        int slot = colDir.head(movie);
+        if (slot == NIL) {
+            return false;
+        }
+        colDir.setHead(movie, NIL);
+        while (slot != NIL) {
+            int next = field(slot, DOWN);
+            unlinkFromRow(slot);
+            release(slot);
+            slot = next;
+        }
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delete the specified score.
+     *
+     * @param reviewer
+     *            The reviewer of the score to delete
+     * @param movie
+     *            The movie of the score to delete
+     *
+     * @return True if the score was successfully deleted.
+     *         False if no such score in the database.
+     */
+    public boolean deleteScore(int reviewer, int movie) {
+        int slot = rowDir.head(reviewer);
+        while (slot != NIL && field(slot, COL) < movie) {
+            slot = field(slot, RIGHT);
+        }
+        if (slot == NIL || field(slot, COL) != movie) {
+            return false;
+        }
+        unlinkFromRow(slot);
+        unlinkFromCol(slot);
+        release(slot);
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Dump out all the ratings. Each reviewer's rating should be in a
+     * separate line (in ascending order by reviewer index), with
+     * movie/score pairs listed in ascending order of movie index.
+     *
+     * @return String representing the listing, empty string if there are none
+     */
+    public String printRatings() {
+        StringBuilder out = new StringBuilder();
+        for (int reviewer : rowDir.ids()) {
+            int slot = rowDir.head(reviewer);
+            if (out.length() > 0) {
+                out.append('\n');
+            }
+            out.append(reviewer).append(':');
+            while (slot != NIL) {
+                out.append(" (").append(field(slot, COL)).append(", ").append(
+                    field(slot, VALUE)).append(')');
+                slot = field(slot, RIGHT);
+            }
+        }
+        return out.toString();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given reviewer, with scores listed in
+     * ascending order of movie index.
+     *
+     * @param reviewer
+     *            The reviewer to list ratings for
+     * @return String representing the listing, null if no such reviewer
+     */
+    public String listReviewer(int reviewer) {
+        int slot = rowDir.head(reviewer);
+        if (slot == NIL) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder().append(reviewer).append(':');
+        while (slot != NIL) {
+            out.append(' ').append(field(slot, VALUE));
+            slot = field(slot, RIGHT);
+        }
+        return out.toString();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given movie, with scores listed in
+     * ascending order of reviewer index.
+     *
+     * @param movie
+     *            The movie to list ratings for
+     * @return String representing the listing, null if no such movie
+     */
+    public String listMovie(int movie) {
+        int slot = colDir.head(movie);
+        if (slot == NIL) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder().append(movie).append(':');
+        while (slot != NIL) {
+            out.append(' ').append(field(slot, VALUE));
+            slot = field(slot, DOWN);
+        }
+        return out.toString();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a movie's ratings.
+     * The mapped records have no room for aggregates, so this walks the
+     * column.
+     *
+     * @param movie
+     *            the movie to summarize.
+     * @return The stats, null if no such movie.
+     */
+    public RatingStats movieStats(int movie) {
+        int slot = colDir.head(movie);
+        if (slot == NIL) {
+            return null;
+        }
+        RatingStats stats = new RatingStats();
+        while (slot != NIL) {
+            stats.add(field(slot, VALUE));
+            slot = field(slot, DOWN);
+        }
+        return stats;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a reviewer's ratings.
+     * The mapped records have no room for aggregates, so this walks the
+     * row.
+     *
+     * @param reviewer
+     *            the reviewer to summarize.
+     * @return The stats, null if no such reviewer.
+     */
+    public RatingStats reviewerStats(int reviewer) {
+        int slot = rowDir.head(reviewer);
+        if (slot == NIL) {
+            return null;
+        }
+        RatingStats stats = new RatingStats();
+        while (slot != NIL) {
+            stats.add(field(slot, VALUE));
+            slot = field(slot, RIGHT);
+        }
+        return stats;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the movie most similar to the specified one.
+     * Like MovieRaterDB, only movies that share a reviewer are scored, and
+     * the records are read straight from the mapped pages.
+     *
+     * @param movie
+     *            the movie to find match for.
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    public int similarMovie(int movie) {
+        collectMovies(movie);
+        return scratch.best();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k movies most similar to the specified one, best first.
+     *
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this movie does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarMovies(int movie, int k) {
+        collectMovies(movie);
+        return scratch.best(k);
+    }
+
+
+    /**
+     * Fill the scratch buffer with every movie that shares a reviewer with
+     * the target.
+     *
+     * @param movie
+     *            - the target movie
+     */
+    private void collectMovies(int movie) {
+        scratch.reset();
+        int target = colDir.head(movie);
+        while (target != NIL) {
+            int score = field(target, VALUE);
+            int other = rowDir.head(field(target, ROW));
+            while (other != NIL) {
+                if (other != target) {
+                    scratch.add(field(other, COL), Math.abs(score - field(
+                        other, VALUE)));
+                }
+                other = field(other, RIGHT);
+            }
+            target = field(target, DOWN);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the reviewer most similar to the specified one.
+     * Like MovieRaterDB, only reviewers that share a movie are scored, and
+     * the records are read straight from the mapped pages.
+     *
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    public int similarReviewer(int reviewer) {
+        collectReviewers(reviewer);
+        return scratch.best();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k reviewers most similar to the specified one, best first.
+     *
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this reviewer does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        collectReviewers(reviewer);
+        return scratch.best(k);
+    }
+
+
+    /**
+     * Fill the scratch buffer with every reviewer that shares a movie with
+     * the target.
+     *
+     * @param reviewer
+     *            - the target reviewer
+     */
+    private void collectReviewers(int reviewer) {
+        scratch.reset();
+        int target = rowDir.head(reviewer);
+        while (target != NIL) {
+            int score = field(target, VALUE);
+            int other = colDir.head(field(target, COL));
+            while (other != NIL) {
+                if (other != target) {
+                    scratch.add(field(other, ROW), Math.abs(score - field(
+                        other, VALUE)));
+                }
+                other = field(other, DOWN);
+            }
+            target = field(target, RIGHT);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the number of ratings stored.
+     *
+     * @return the number of ratings
+     */
+    public int size() {
+        return header(SIZE_AT);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Write every dirty mapped page back to its file.
+     */
+    public void flush() {
+        nodes.force();
+        rowDir.force();
+        colDir.force();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Flush and close the mapped files. The database must not be used
+     * after this.
+     *
+     * @throws IOException
+     *             if a file cannot be closed
+     */
+    public void close() throws IOException {
+        flush();
+        nodes.close();
+        rowDir.close();
+        colDir.close();
+    }
+
+
+    /**
+     * Unlink a slot from its row list.
+     *
+     * @param slot
+     *            - slot to unlink
+     */
+    private void unlinkFromRow(int slot) {
+        int prev = field(slot, LEFT);
+        int next = field(slot, RIGHT);
+        if (prev != NIL) {
+            setField(prev, RIGHT, next);
+        }
+        else {
+            rowDir.setHead(field(slot, ROW), next); // new first slot
+        }
+        if (next != NIL) {
+            setField(next, LEFT, prev);
+        }
+    }
+
+
+    /**
+     * Unlink a slot from its col list.
+     *
+     * @param slot
+     *            - slot to unlink
+     */
+    private void unlinkFromCol(int slot) {
+        int prev = field(slot, UP);
+        int next = field(slot, DOWN);
+        if (prev != NIL) {
+            setField(prev, DOWN, next);
+        }
+        else {
+            colDir.setHead(field(slot, COL), next); // new first slot
+        }
+        if (next != NIL) {
+            setField(next, UP, prev);
+        }
+    }
+
+
+    /**
+     * Take a slot off the free list, or the next never used one.
+     *
+     * @return the slot number
+     */
+    private int allocate() {
+        int slot = header(FREE_HEAD_AT);
+        if (slot != NIL) {
+            nodes.putInt(FREE_HEAD_AT, field(slot, RIGHT));
+            return slot;
+        }
+        slot = header(HIGH_WATER_AT);
+        nodes.putInt(HIGH_WATER_AT, slot + 1);
+        return slot;
+    }
+
+
+    /**
+     * Put an unlinked slot on the free list.
+     *
+     * @param slot
+     *            - slot to release
+     */
+    private void release(int slot) {
+        setField(slot, RIGHT, header(FREE_HEAD_AT));
+        nodes.putInt(FREE_HEAD_AT, slot);
+        nodes.putInt(SIZE_AT, header(SIZE_AT) - 1);
+    }
+
+
+    /**
+     * Read a field from the nodes.dat header.
+     *
+     * @param at
+     *            - offset of the field
+     * @return the field value
+     */
+    private int header(int at) {
+        return nodes.getInt(at);
+    }
+
+
+    /**
+     * Read one field of a node record.
+     *
+     * @param slot
+     *            - slot of the record
+     * @param offset
+     *            - offset of the field in the record
+     * @return the field value
+     */
+    private int field(int slot, int offset) {
+        return nodes.getInt(HEADER_BYTES + (long)slot * RECORD_BYTES + offset);
+    }
+
+
+    /**
+     * Write one field of a node record.
+     *
+     * @param slot
+     *            - slot of the record
+     * @param offset
+     *            - offset of the field in the record
+     * @param value
+     *            - the new field value
+     */
+    private void setField(int slot, int offset, int value) {
+        nodes.putInt(HEADER_BYTES + (long)slot * RECORD_BYTES + offset,
+            value);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * A header directory kept in a MappedRegion: an open addressing hash
+     * table with linear probing, mapping a row or col id to the first slot
+     * of its list. The file starts with the table capacity (a power of 2)
+     * and entry count, then the entries, each an id and its first slot plus
+     * one, 0 marking an empty entry. The table doubles when it gets half
+     * full, and removes shift the rest of their probe run back instead of
+     * leaving tombstones, so lookups stay short under any mix of writes.
+     */
+    private static class HashedDirectory {
+        private static final int CAPACITY_AT = 0;
+        private static final int COUNT_AT = 4;
+        private static final int TABLE_AT = 8;
+        private static final int ENTRY_BYTES = 8;
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final MappedRegion region; // the backing file
+
+        /**
+         * Open (or create) the directory file.
+         *
+         * @param file
+         *            - path of the file
+         * @throws IOException
+         *             if the file cannot be opened
+         */
+        HashedDirectory(Path file) throws IOException {
+            region = new MappedRegion(file);
+            if (capacity() == 0) {
+                reset(INITIAL_CAPACITY); // a new file
+            }
+        }
+
+
+        /**
+         * Get the first slot of a row or col.
+         *
+         * @param id
+         *            - row or col id
+         * @return the first slot, or NIL if there is no header
+         */
+        int head(int id) {
+            int mask = capacity() - 1;
+            for (int i = hash(id) & mask;; i = (i + 1) & mask) {
+                int first = region.getInt(entry(i) + 4);
+                if (first == 0) {
+                    return NIL;
+                }
+                if (region.getInt(entry(i)) == id) {
+                    return first - 1;
+                }
+            }
+        }
+
+
+        /**
+         * Set the first slot of a row or col.
+         *
+         * @param id
+         *            - row or col id
+         * @param slot
+         *            - the first slot, or NIL to drop the header
+         */
+        void setHead(int id, int slot) {
+            if (slot == NIL) {
+                remove(id);
+                return;
+            }
+            int mask = capacity() - 1;
+            int i = hash(id) & mask;
+            while (region.getInt(entry(i) + 4) != 0) {
+                if (region.getInt(entry(i)) == id) {
+                    region.putInt(entry(i) + 4, slot + 1); // new first slot
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            region.putInt(entry(i), id);
+            region.putInt(entry(i) + 4, slot + 1);
+            int count = region.getInt(COUNT_AT) + 1;
+            region.putInt(COUNT_AT, count);
+            if (count > capacity() / 2) {
+                grow();
+            }
+        }
+
+
+        /**
+         * Get every id that has a header.
+         *
+         * @return the ids, in ascending order
+         */
+        int[] ids() {
+            int[] ids = new int[region.getInt(COUNT_AT)];
+            int found = 0;
+            for (int i = 0; i < capacity(); i++) {
+                if (region.getInt(entry(i) + 4) != 0) {
+                    ids[found++] = region.getInt(entry(i));
+                }
+            }
+            Arrays.sort(ids);
+            return ids;
+        }
+
+
+        /**
+         * Drop every header and go back to the starting capacity.
+         */
+        void clear() {
+            reset(INITIAL_CAPACITY);
+        }
+
+
+        /**
+         * Write every dirty mapped page back to the file.
+         */
+        void force() {
+            region.force();
+        }
+
+
+        /**
+         * Close the backing file.
+         *
+         * @throws IOException
+         *             if it cannot be closed
+         */
+        void close() throws IOException {
+            region.close();
+        }
+
+
+        /**
+         * Drop the header of an id, if it has one, and shift the entries
+         * after it in its probe run back so none of them is cut off from
+         * its home position.
+         *
+         * @param id
+         *            - row or col id
+         */
+        private void remove(int id) {
+            int mask = capacity() - 1;
+            int hole = hash(id) & mask;
+            while (true) {
+                if (region.getInt(entry(hole) + 4) == 0) {
+                    return; // not in the table
+                }
+                if (region.getInt(entry(hole)) == id) {
+                    break;
+                }
+                hole = (hole + 1) & mask;
+            }
+            for (int i = (hole + 1) & mask; region.getInt(entry(i)
+                + 4) != 0; i = (i + 1) & mask) {
+                int moved = region.getInt(entry(i));
+                int home = hash(moved) & mask;
+                // entry i can fill the hole if the hole is between its
+                // home and i, going around the end of the table
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    region.putInt(entry(hole), moved);
+                    region.putInt(entry(hole) + 4, region.getInt(entry(i)
+                        + 4));
+                    hole = i;
+                }
+            }
+            region.putInt(entry(hole) + 4, 0);
+            region.putInt(COUNT_AT, region.getInt(COUNT_AT) - 1);
+        }
+
+
+        /**
+         * Double the table, putting every entry back in.
+         */
+        private void grow() {
+            int[] ids = new int[region.getInt(COUNT_AT)];
+            int[] firsts = new int[ids.length];
+            int found = 0;
+            for (int i = 0; i < capacity(); i++) {
+                if (region.getInt(entry(i) + 4) != 0) {
+                    ids[found] = region.getInt(entry(i));
+                    firsts[found++] = region.getInt(entry(i) + 4);
+                }
+            }
+            reset(capacity() * 2);
+            for (int i = 0; i < found; i++) {
+                setHead(ids[i], firsts[i] - 1);
+            }
+        }
+
+
+        /**
+         * Empty the table and set its capacity. Entries past the old
+         * capacity may hold stale data from a bigger table, so every entry
+         * of the new one is zeroed.
+         *
+         * @param capacity
+         *            - the new capacity, a power of 2
+         */
+        private void reset(int capacity) {
+            region.putInt(CAPACITY_AT, capacity);
+            region.putInt(COUNT_AT, 0);
+            for (int i = 0; i < capacity; i++) {
+                region.putInt(entry(i) + 4, 0);
+            }
+        }
+
+
+        /**
+         * Get the capacity of the table.
+         *
+         * @return the number of entries, 0 in a new file
+         */
+        private int capacity() {
+            return region.getInt(CAPACITY_AT);
+        }
+
+
+        /**
+         * Get the byte offset of an entry.
+         *
+         * @param i
+         *            - the entry
+         * @return its offset in the file
+         */
+        private static long entry(int i) {
+            return TABLE_AT + (long)i * ENTRY_BYTES;
+        }
+
+
+        /**
+         * Spread the bits of an id, so ids that differ only in their high
+         * bits (or are consecutive) do not pile up in one probe run.
+         *
+         * @param id
+         *            - row or col id
+         * @return the hash
+         */
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * A file that is read and written through MappedByteBuffers, one per
+     * fixed size chunk. Chunks are mapped (growing the file) the first time
+     * they are written. Reads past the end of the file see zeros and do not
+     * grow it.
+     */
+    private static class MappedRegion {
+        private static final int CHUNK_SHIFT = 26; // 64MB chunks
+        private static final int CHUNK_BYTES = 1 << CHUNK_SHIFT;
+
+        private final FileChannel channel; // the backing file
+        private MappedByteBuffer[] chunks; // mapped chunks, null if not yet
+        private long length; // file length the last time we looked
+
+        /**
+         * Open (or create) the backing file.
+         *
+         * @param file
+         *            - path of the file
+         * @throws IOException
+         *             if the file cannot be opened
+         */
+        MappedRegion(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            length = channel.size();
+            chunks = new MappedByteBuffer[8];
+        }
+
+
+        /**
+         * Get the length the file had when opened or last grown.
+         *
+         * @return the file length in bytes
+         */
+        long length() {
+            return length;
+        }
+
+
+        /**
+         * Read an int.
+         *
+         * @param offset
+         *            - byte offset (a multiple of 4)
+         * @return the int there, 0 if past the end of the file
+         */
+        int getInt(long offset) {
+            if (offset >= length) {
+                return 0;
+            }
+            return chunk(offset).getInt((int)(offset & (CHUNK_BYTES - 1)));
+        }
+
+
+        /**
+         * Write an int, growing the file if needed.
+         *
+         * @param offset
+         *            - byte offset (a multiple of 4)
+         * @param value
+         *            - the int to write
+         */
+        void putInt(long offset, int value) {
+            chunk(offset).putInt((int)(offset & (CHUNK_BYTES - 1)), value);
+        }
+
+
+        /**
+         * Write every mapped chunk back to the file.
+         */
+        void force() {
+            for (MappedByteBuffer chunk : chunks) {
+                if (chunk != null) {
+                    chunk.force();
+                }
+            }
+        }
+
+
+        /**
+         * Close the backing file.
+         *
+         * @throws IOException
+         *             if it cannot be closed
+         */
+        void close() throws IOException {
+            channel.close();
+        }
+
+
+        /**
+         * Get the mapped chunk that holds an offset, mapping it if needed.
+         *
+         * @param offset
+         *            - byte offset
+         * @return the chunk buffer
+         */
+        private MappedByteBuffer chunk(long offset) {
+            int index = (int)(offset >>> CHUNK_SHIFT);
+            if (index >= chunks.length) {
+                MappedByteBuffer[] grown = new MappedByteBuffer[Math.max(
+                    index + 1, chunks.length * 2)];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                chunks = grown;
+            }
+            if (chunks[index] == null) {
+                long start = (long)index << CHUNK_SHIFT;
+                try {
+                    chunks[index] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        start, CHUNK_BYTES);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                length = Math.max(length, start + CHUNK_BYTES);
+            }
+            return chunks[index];
+        }
+    }
+}
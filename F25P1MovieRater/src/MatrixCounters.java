@@ -0,0 +1,231 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Event counters for the work done inside a SparseMatrix and the
+ * similarity searches over it. A matrix only counts while a MatrixCounters
+ * is attached (MovieRaterDB.enableCounters()); with none attached each
+ * counting point is a single null check.
+ *
+ * -header lookups: findRowHeader/findColHeader calls, and how many of them
+ * had to create and link a new header
+ * -row and col hops: nodes stepped over walking a row or col to the
+ * position of an insert or lookup
+ * -similarity joins: pairs merge-joined by the scan searches, and the
+ * nodes visited doing it
+ * -similarity fan-out: nodes visited gathering co-rated candidates
+ *
+ * The counters are LongAdders, so several reader threads can count at
+ * once without contending. They keep counting across clear() and
+ * restore(); reset() zeroes them. The live node and header counts are
+ * read from the attached matrix when asked for.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class MatrixCounters {
+
+    private final LongAdder headerLookups = new LongAdder();
+    private final LongAdder headersCreated = new LongAdder();
+    private final LongAdder rowHops = new LongAdder();
+    private final LongAdder colHops = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder joinNodes = new LongAdder();
+    private final LongAdder fanOutNodes = new LongAdder();
+    private volatile SparseMatrix matrix; // matrix counting into this
+
+    /**
+     * Create a new MatrixCounters, all zero and attached to no matrix.
+     */
+    MatrixCounters() {
+        // counters start at zero
+    }
+
+
+    /**
+     * Remember the matrix these counters are attached to, for the live
+     * counts.
+     *
+     * @param attached
+     *            - the matrix
+     */
+    void attach(SparseMatrix attached) {
+        matrix = attached;
+    }
+
+
+    /**
+     * Count a header lookup.
+     *
+     * @param created
+     *            - true if the header had to be created
+     */
+    void headerLookup(boolean created) {
+        headerLookups.increment();
+        if (created) {
+            headersCreated.increment();
+        }
+    }
+
+
+    /**
+     * Count nodes stepped over walking a row.
+     *
+     * @param hops
+     *            - the node count
+     */
+    void rowHops(int hops) {
+        rowHops.add(hops);
+    }
+
+
+    /**
+     * Count nodes stepped over walking a col.
+     *
+     * @param hops
+     *            - the node count
+     */
+    void colHops(int hops) {
+        colHops.add(hops);
+    }
+
+
+    /**
+     * Count one merge-join of two rows or cols.
+     *
+     * @param visited
+     *            - nodes visited on both sides
+     */
+    void join(long visited) {
+        joins.increment();
+        joinNodes.add(visited);
+    }
+
+
+    /**
+     * Count nodes visited gathering co-rated candidates.
+     *
+     * @param visited
+     *            - the node count
+     */
+    void fanOut(long visited) {
+        fanOutNodes.add(visited);
+    }
+
+
+    /**
+     * Zero every counter.
+     */
+    public void reset() {
+        headerLookups.reset();
+        headersCreated.reset();
+        rowHops.reset();
+        colHops.reset();
+        joins.reset();
+        joinNodes.reset();
+        fanOutNodes.reset();
+    }
+
+
+    /**
+     * Get the number of header lookups.
+     *
+     * @return the count
+     */
+    public long getHeaderLookups() {
+        return headerLookups.sum();
+    }
+
+
+    /**
+     * Get the number of header lookups that created a header.
+     *
+     * @return the count
+     */
+    public long getHeadersCreated() {
+        return headersCreated.sum();
+    }
+
+
+    /**
+     * Get the number of nodes stepped over in row walks.
+     *
+     * @return the count
+     */
+    public long getRowHops() {
+        return rowHops.sum();
+    }
+
+
+    /**
+     * Get the number of nodes stepped over in col walks.
+     *
+     * @return the count
+     */
+    public long getColHops() {
+        return colHops.sum();
+    }
+
+
+    /**
+     * Get the number of similarity merge-joins.
+     *
+     * @return the count
+     */
+    public long getJoins() {
+        return joins.sum();
+    }
+
+
+    /**
+     * Get the number of nodes visited by similarity merge-joins.
+     *
+     * @return the count
+     */
+    public long getJoinNodes() {
+        return joinNodes.sum();
+    }
+
+
+    /**
+     * Get the number of nodes visited gathering co-rated candidates.
+     *
+     * @return the count
+     */
+    public long getFanOutNodes() {
+        return fanOutNodes.sum();
+    }
+
+
+    /**
+     * Get the number of nodes in the attached matrix.
+     *
+     * @return the count, 0 if not attached
+     */
+    public long getLiveNodes() {
+        SparseMatrix current = matrix;
+        return current == null ? 0 : current.getNodeCount();
+    }
+
+
+    /**
+     * Get the number of row headers in the attached matrix.
+     *
+     * @return the count, 0 if not attached
+     */
+    public int getLiveRows() {
+        SparseMatrix current = matrix;
+        return current == null ? 0 : current.getRowCount();
+    }
+
+
+    /**
+     * Get the number of col headers in the attached matrix.
+     *
+     * @return the count, 0 if not attached
+     */
+    public int getLiveCols() {
+        SparseMatrix current = matrix;
+        return current == null ? 0 : current.getColCount();
+    }
+}
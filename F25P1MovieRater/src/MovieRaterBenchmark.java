@@ -0,0 +1,637 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Micro benchmarks for the SparseMatrix and MovieRaterDB hot paths, run
+ * over synthetic Zipf distributed ratings at several sizes and two
+ * shapes:
+ *
+ * -dense: few movies (1000) that each have many reviewers
+ * -sparse: many reviewers and movies with only a few ratings each
+ *
+ * Every case is run at least WARMUP times and for WARMUP_NANOS to let the
+ * JIT settle, then MEASURED times; the mean and best time per operation
+ * are printed. Setup (like filling a matrix before timing removes) is not
+ * timed. Results are folded into a checksum that is printed at the end so
+ * the JIT cannot drop the work.
+ *
+ * Usage: java MovieRaterBenchmark [ratings ...], e.g.
+ * java -Xmx4g MovieRaterBenchmark 10000 100000 1000000
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class MovieRaterBenchmark {
+
+    private static final int WARMUP = 3; // untimed runs of each case
+    private static final long WARMUP_NANOS = 500_000_000L; // and at least
+                                                           // this long
+    private static final int MEASURED = 5; // timed runs of each case
+    private static final int QUERIES = 1000; // lookups per query case
+    private static final double SKEW = 1.0; // Zipf exponent of the ids
+
+    private static long checksum; // keeps results alive
+
+    /**
+     * Run every case at every size and shape.
+     *
+     * @param args
+     *            rating counts to run, default 10000 and 100000
+     */
+    public static void main(String[] args) {
+        int[] sizes = {10000, 100000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("%-18s %-7s %10s %12s %12s%n", "case", "shape",
+            "ratings", "mean ns/op", "best ns/op");
+        for (int size : sizes) {
+            run(new Data(size, size / 50 + 1, 1000, 1), "dense");
+            run(new Data(size, size / 5 + 1, size / 10 + 1, 2), "sparse");
+        }
+        System.out.println("checksum " + checksum);
+    }
+
+
+    /**
+     * Run every case on one data set.
+     *
+     * @param data
+     *            - the ratings
+     * @param shape
+     *            - name of the data set's shape
+     */
+    private static void run(Data data, String shape) {
+        Case[] cases = {new InsertCase("insert-sequential", data, true),
+            new InsertCase("insert-random", data, false), new UpdateCase(
+                data), new RemoveCase(data, RemoveCase.SINGLE), new RemoveCase(
+                    data, RemoveCase.ROWS), new RemoveCase(data,
+                        RemoveCase.COLS), new ListCase("rowList", data, true),
+            new ListCase("colList", data, false), new MatrixListCase(data),
+            new SimilarCase("similarMovie", data, true), new SimilarCase(
+                "similarReviewer", data, false), new PairCase("pair-linked",
+                    data, PairCase.LINKED), new PairCase("pair-merge", data,
+                        PairCase.MERGE), new PairCase("pair-gallop", data,
+                            PairCase.GALLOP)};
+        for (Case c : cases) {
+            // warm up until the short cases have had time to be compiled
+            long warm = 0;
+            for (int i = 0; i < WARMUP || warm < WARMUP_NANOS; i++) {
+                c.prepare();
+                long start = System.nanoTime();
+                checksum += c.run();
+                warm += System.nanoTime() - start;
+            }
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            for (int i = 0; i < MEASURED; i++) {
+                c.prepare();
+                long start = System.nanoTime();
+                checksum += c.run();
+                long elapsed = System.nanoTime() - start;
+                total += elapsed;
+                best = Math.min(best, elapsed);
+            }
+            System.out.printf("%-18s %-7s %10d %12.1f %12.1f%n", c.name,
+                shape, data.size, (double)total / MEASURED / c.ops(),
+                (double)best / c.ops());
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * A synthetic data set: reviewers and movies drawn from Zipf
+     * distributions, scores uniform from 1 to 10.
+     */
+    static class Data {
+        private final int size; // number of ratings
+        private final int[] rows; // reviewer of each rating
+        private final int[] cols; // movie of each rating
+        private final int[] values; // score of each rating
+        private final int[] queryRows; // Zipf drawn reviewers to look up
+        private final int[] queryCols; // Zipf drawn movies to look up
+        private final int[] tailCols; // uniformly drawn movies, mostly rare
+
+        /**
+         * Generate a data set.
+         *
+         * @param size
+         *            - number of ratings
+         * @param reviewers
+         *            - number of distinct reviewer ids
+         * @param movies
+         *            - number of distinct movie ids
+         * @param seed
+         *            - random seed
+         */
+        Data(int size, int reviewers, int movies, long seed) {
+            this.size = size;
+            ZipfGenerator rowIds = new ZipfGenerator(reviewers, SKEW, seed);
+            ZipfGenerator colIds = new ZipfGenerator(movies, SKEW, seed + 1);
+            Random scores = new Random(seed + 2);
+            rows = new int[size];
+            cols = new int[size];
+            values = new int[size];
+            for (int i = 0; i < size; i++) {
+                rows[i] = rowIds.next();
+                cols[i] = colIds.next();
+                values[i] = scores.nextInt(10) + 1;
+            }
+            queryRows = new int[QUERIES];
+            queryCols = new int[QUERIES];
+            tailCols = new int[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                queryRows[i] = rowIds.next();
+                queryCols[i] = colIds.next();
+                tailCols[i] = scores.nextInt(movies) + 1;
+            }
+        }
+
+
+        /**
+         * Build a matrix holding every rating, with insertAll.
+         *
+         * @return the matrix
+         */
+        SparseMatrix matrix() {
+            SparseMatrix matrix = new SparseMatrix();
+            matrix.insertAll(batch());
+            return matrix;
+        }
+
+
+        /**
+         * Put every rating in a batch.
+         *
+         * @return the batch
+         */
+        RatingBatch batch() {
+            RatingBatch batch = new RatingBatch();
+            for (int i = 0; i < size; i++) {
+                batch.add(rows[i], cols[i], values[i]);
+            }
+            return batch;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * One benchmark: prepare() sets up untimed state, run() is timed.
+     */
+    abstract static class Case {
+        private final String name; // name printed in the results
+        protected final Data data; // ratings the case works on
+
+        /**
+         * Create a new Case.
+         *
+         * @param name
+         *            - name printed in the results
+         * @param data
+         *            - ratings the case works on
+         */
+        Case(String name, Data data) {
+            this.name = name;
+            this.data = data;
+        }
+
+
+        /**
+         * Set up the state run() needs. Not timed.
+         */
+        abstract void prepare();
+
+
+        /**
+         * Do the timed work.
+         *
+         * @return a value that depends on the work, for the checksum
+         */
+        abstract long run();
+
+
+        /**
+         * Get the number of operations one run() does.
+         *
+         * @return the operation count
+         */
+        int ops() {
+            return data.size;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * SparseMatrix.insert of every rating into an empty matrix, either
+     * sorted by (row, col) or in the order they were drawn.
+     */
+    static class InsertCase extends Case {
+        private final int[] order; // positions in insertion order
+        private SparseMatrix matrix; // matrix being filled
+
+        /**
+         * Create a new InsertCase.
+         *
+         * @param name
+         *            - name printed in the results
+         * @param data
+         *            - ratings to insert
+         * @param sequential
+         *            - true to insert in (row, col) order
+         */
+        InsertCase(String name, Data data, boolean sequential) {
+            super(name, data);
+            if (sequential) {
+                order = RatingBatch.sortedOrder(data.rows, data.cols,
+                    data.size);
+            }
+            else {
+                order = new int[data.size];
+                for (int i = 0; i < data.size; i++) {
+                    order[i] = i;
+                }
+            }
+        }
+
+
+        @Override
+        void prepare() {
+            matrix = new SparseMatrix();
+        }
+
+
+        @Override
+        long run() {
+            for (int i : order) {
+                matrix.insert(data.rows[i], data.cols[i], data.values[i]);
+            }
+            return matrix.peekRowHeader(data.rows[0]).getCount();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * SparseMatrix.insert of every rating into a matrix that already holds
+     * them all, so every insert updates a value in place.
+     */
+    static class UpdateCase extends Case {
+        private SparseMatrix matrix; // full matrix
+
+        /**
+         * Create a new UpdateCase.
+         *
+         * @param data
+         *            - ratings to update
+         */
+        UpdateCase(Data data) {
+            super("insert-update", data);
+        }
+
+
+        @Override
+        void prepare() {
+            if (matrix == null) {
+                matrix = data.matrix(); // updates leave it full
+            }
+        }
+
+
+        @Override
+        long run() {
+            for (int i = 0; i < data.size; i++) {
+                matrix.insert(data.rows[i], data.cols[i], 11 - data.values[i]);
+            }
+            return matrix.peekColHeader(data.cols[0]).getSum();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Emptying a full matrix with remove, removeRow or removeCol.
+     */
+    static class RemoveCase extends Case {
+        static final int SINGLE = 0; // remove each rating
+        static final int ROWS = 1; // removeRow each reviewer
+        static final int COLS = 2; // removeCol each movie
+
+        private final int kind; // SINGLE, ROWS or COLS
+        private SparseMatrix matrix; // matrix being emptied
+
+        /**
+         * Create a new RemoveCase.
+         *
+         * @param data
+         *            - ratings to remove
+         * @param kind
+         *            - SINGLE, ROWS or COLS
+         */
+        RemoveCase(Data data, int kind) {
+            super(kind == SINGLE ? "remove" : kind == ROWS ? "removeRow"
+                : "removeCol", data);
+            this.kind = kind;
+        }
+
+
+        @Override
+        void prepare() {
+            matrix = data.matrix();
+        }
+
+
+        @Override
+        long run() {
+            long removed = 0;
+            for (int i = 0; i < data.size; i++) {
+                boolean done;
+                if (kind == SINGLE) {
+                    done = matrix.remove(data.rows[i], data.cols[i]);
+                }
+                else if (kind == ROWS) {
+                    done = matrix.removeRow(data.rows[i]);
+                }
+                else {
+                    done = matrix.removeCol(data.cols[i]);
+                }
+                removed += done ? 1 : 0;
+            }
+            return removed;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * rowList or colList of Zipf drawn ids, so hot ids come up most.
+     */
+    static class ListCase extends Case {
+        private final boolean rows; // rowList if true, colList if not
+        private SparseMatrix matrix; // full matrix
+
+        /**
+         * Create a new ListCase.
+         *
+         * @param name
+         *            - name printed in the results
+         * @param data
+         *            - ratings to list
+         * @param rows
+         *            - true for rowList, false for colList
+         */
+        ListCase(String name, Data data, boolean rows) {
+            super(name, data);
+            this.rows = rows;
+        }
+
+
+        @Override
+        void prepare() {
+            if (matrix == null) {
+                matrix = data.matrix();
+            }
+        }
+
+
+        @Override
+        long run() {
+            long length = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                String list = rows
+                    ? matrix.rowList(data.queryRows[i])
+                    : matrix.colList(data.queryCols[i]);
+                length += list == null ? 0 : list.length();
+            }
+            return length;
+        }
+
+
+        @Override
+        int ops() {
+            return QUERIES;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * matrixList of the whole matrix, written to a discarding Writer; one
+     * operation per rating.
+     */
+    static class MatrixListCase extends Case {
+        private SparseMatrix matrix; // full matrix
+
+        /**
+         * Create a new MatrixListCase.
+         *
+         * @param data
+         *            - ratings to list
+         */
+        MatrixListCase(Data data) {
+            super("matrixList", data);
+        }
+
+
+        @Override
+        void prepare() {
+            if (matrix == null) {
+                matrix = data.matrix();
+            }
+        }
+
+
+        @Override
+        long run() {
+            CountingWriter out = new CountingWriter();
+            try {
+                matrix.matrixList(out);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e); // CountingWriter never
+                                                    // throws
+            }
+            return out.count;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * MovieRaterDB.similarMovie or similarReviewer of Zipf drawn ids.
+     */
+    static class SimilarCase extends Case {
+        private final boolean movies; // similarMovie if true
+        private MovieRaterDB db; // full database
+
+        /**
+         * Create a new SimilarCase.
+         *
+         * @param name
+         *            - name printed in the results
+         * @param data
+         *            - ratings to search
+         * @param movies
+         *            - true for similarMovie, false for similarReviewer
+         */
+        SimilarCase(String name, Data data, boolean movies) {
+            super(name, data);
+            this.movies = movies;
+        }
+
+
+        @Override
+        void prepare() {
+            if (db == null) {
+                db = new MovieRaterDB();
+                db.addBatch(data.batch());
+            }
+        }
+
+
+        @Override
+        long run() {
+            long sum = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                sum += movies
+                    ? db.similarMovie(data.queryCols[i])
+                    : db.similarReviewer(data.queryRows[i]);
+            }
+            return sum;
+        }
+
+
+        @Override
+        int ops() {
+            return QUERIES;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Scoring the most rated movie (id 1, the head of the Zipf curve)
+     * against uniformly drawn movies, most of which are in the tail with
+     * only a few ratings: the lopsided pairs where galloping pays. Done
+     * three ways: the linked merge-join, the array merge, and the array
+     * kernel that gallops.
+     */
+    static class PairCase extends Case {
+        static final int LINKED = 0; // MovieRaterDB merge-join over nodes
+        static final int MERGE = 1; // SimilarityKernel.merge over arrays
+        static final int GALLOP = 2; // SimilarityKernel.meanDifference
+
+        private final int kind; // LINKED, MERGE or GALLOP
+        private MovieRaterDB db; // full database
+        private CsrSnapshot snapshot; // the same ratings as arrays
+
+        /**
+         * Create a new PairCase.
+         *
+         * @param name
+         *            - name printed in the results
+         * @param data
+         *            - ratings to score
+         * @param kind
+         *            - LINKED, MERGE or GALLOP
+         */
+        PairCase(String name, Data data, int kind) {
+            super(name, data);
+            this.kind = kind;
+        }
+
+
+        @Override
+        void prepare() {
+            if (db == null) {
+                db = new MovieRaterDB();
+                db.addBatch(data.batch());
+                snapshot = db.publishSnapshot();
+            }
+        }
+
+
+        @Override
+        long run() {
+            SparseMatrix matrix = db.matrix();
+            SparseMatrix.Node hot = first(matrix.peekColHeader(1));
+            double sum = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                int movie = data.tailCols[i];
+                if (kind == LINKED) {
+                    sum += db.calculateMovieSimilarity(hot, first(matrix
+                        .peekColHeader(movie)));
+                }
+                else {
+                    sum += snapshot.movieSimilarity(1, movie, kind == GALLOP);
+                }
+            }
+            return (long)(sum * 1000);
+        }
+
+
+        /**
+         * Get the first node of a col, if it has one.
+         *
+         * @param header
+         *            - the col's header, or null
+         * @return its first node, or null
+         */
+        private static SparseMatrix.Node first(SparseMatrix.HeaderNode header) {
+            return header == null ? null : header.getnNode();
+        }
+
+
+        @Override
+        int ops() {
+            return QUERIES;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writer that only counts the characters written to it.
+     */
+    static class CountingWriter extends Writer {
+        private long count; // characters written
+
+        @Override
+        public Writer append(char c) {
+            count++;
+            return this;
+        }
+
+
+        @Override
+        public Writer append(CharSequence csq) {
+            count += csq.length();
+            return this;
+        }
+
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+
+        @Override
+        public void flush() {
+            // nothing is buffered
+        }
+
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
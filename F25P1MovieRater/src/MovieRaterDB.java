@@ -1,3 +1,9 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 // -------------------------------------------------------------------------
 /**
  * Implementation for the MovieRater. This is a thin shell over
@@ -8,7 +14,14 @@
  *
  */
 public class MovieRaterDB implements MovieRater {
+    /** most headers one parallel scan task scores without splitting */
+    static final int SCAN_GRAIN = 64;
+
     private SparseMatrix matrix;
+    private SimilarityAccumulator scratch; // reused by the similarity queries
+    private volatile CsrSnapshot snapshot; // last published, null if none
+    private MovieSimilarityCache cache; // pairwise movie aggregates, or null
+    private MatrixCounters counters; // counts work done, or null
 
     // ----------------------------------------------------------
     /**
@@ -16,6 +29,7 @@ public class MovieRaterDB implements MovieRater {
      */
     MovieRaterDB() {
         matrix = new SparseMatrix();
+        scratch = new SimilarityAccumulator();
     }
 
 
@@ -27,10 +41,82 @@ public class MovieRaterDB implements MovieRater {
      */
     public boolean clear() {
         matrix = new SparseMatrix();
+        snapshot = null;
+        if (cache != null) {
+            enableSimilarityCache(); // start over on the new, empty matrix
+        }
+        matrix.setCounters(counters); // keep counting on the new matrix
         return true;
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Keep pairwise movie similarity aggregates up to date on every write,
+     * so similarMovie(int) becomes a lookup. Each write then also updates
+     * the pairs of the movies its reviewer rated. Calling this again
+     * rebuilds the cache from the ratings.
+     */
+    public void enableSimilarityCache() {
+        cache = new MovieSimilarityCache(matrix);
+        matrix.setListener(cache);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Start counting header lookups, list walks and similarity work, and
+     * return the counters. They stay attached through clear() and
+     * restore(). Calling this again returns the same counters.
+     * 
+     * @return the counters
+     */
+    public MatrixCounters enableCounters() {
+        if (counters == null) {
+            counters = new MatrixCounters();
+            matrix.setCounters(counters);
+        }
+        return counters;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Build a compressed snapshot of the current ratings and make it the
+     * latest snapshot. Reads and similarity queries can then be served from
+     * it while writes keep going to the linked matrix; the snapshot does
+     * not see those writes until the next publish.
+     *
+     * The queries of this class always read the linked matrix, never the
+     * snapshot. A caller that wants reads served from the snapshot has to
+     * send them there itself: get it from latestSnapshot() and call its
+     * rowList, similarMovie and other queries. Call this from the thread
+     * doing the writes (it reads the linked matrix); the snapshot is
+     * published through a volatile field, so other threads that get it
+     * from latestSnapshot() see it fully built.
+     * 
+     * @return the snapshot that was published
+     */
+    public CsrSnapshot publishSnapshot() {
+        snapshot = new CsrSnapshot(matrix);
+        return snapshot;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the snapshot made by the last publishSnapshot() call. Safe to
+     * call from any thread, and so is every query on the snapshot it
+     * returns, which never changes.
+     * 
+     * @return the latest snapshot, or null if none was published since the
+     *         database was created or cleared
+     */
+    public CsrSnapshot latestSnapshot() {
+        return snapshot;
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Add a score to the database. If there already is a score for this
@@ -48,14 +134,148 @@ public class MovieRaterDB implements MovieRater {
      *         False otherwise (for bad input values)
      */
     public boolean addReview(int reviewer, int movie, int score) {
-        // Scores must be in the range 1 to 10.
-        if (reviewer < 1 || movie < 1 || score < 1 || score > 10)
+        if (!isValid(reviewer, movie, score))
             return false;
         matrix.insert(reviewer, movie, score);
         return true;
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Add a micro-batch of scores, entry i being (reviewers[i], movies[i],
+     * scores[i]). Each entry is checked like addReview; the valid ones are
+     * sorted and merged into each row, then each column, in one sweep with
+     * a cursor that carries on from the previous entry instead of walking
+     * from the header again. The result is the same as calling addReview
+     * for every entry in order, so for a repeated pair the last score wins.
+     * 
+     * @param reviewers
+     *            The reviewer of each entry
+     * @param movies
+     *            The movie of each entry
+     * @param scores
+     *            The score of each entry
+     * @return a bitmap with bit i set if entry i was added, clear if it was
+     *         refused for bad input values
+     * @throws IllegalArgumentException
+     *             if the arrays are not all the same length
+     */
+    public BitSet addReviews(int[] reviewers, int[] movies, int[] scores) {
+        int n = reviewers.length;
+        if (movies.length != n || scores.length != n) {
+            throw new IllegalArgumentException("batch arrays differ in length: "
+                + n + ", " + movies.length + ", " + scores.length);
+        }
+        BitSet added = new BitSet(n);
+        RatingBatch batch = new RatingBatch();
+        for (int i = 0; i < n; i++) {
+            if (isValid(reviewers[i], movies[i], scores[i])) {
+                batch.add(reviewers[i], movies[i], scores[i]);
+                added.set(i);
+            }
+        }
+        addBatch(batch);
+        return added;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Bulk load a 'reviewer movie score' file (spaces, tabs or commas
+     * between the numbers, one rating per line). Invalid ratings are
+     * skipped the same way addReview refuses them.
+     * 
+     * @param file
+     *            The file to load
+     * @return counts and throughput (ratings/second) for the load
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public RatingLoader.Stats loadRatings(Path file) throws IOException {
+        return new RatingLoader().load(file, this);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Save every rating to a compact checkpoint file (see Checkpoint),
+     * replacing the file if it exists.
+     * 
+     * @param file
+     *            The checkpoint file
+     * @return the number of ratings saved
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public long checkpoint(Path file) throws IOException {
+        return Checkpoint.write(matrix, file);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replace every rating with the ones in a checkpoint file. The file is
+     * read into a new matrix first, so if it cannot be read the database
+     * is left as it was.
+     * 
+     * @param file
+     *            The checkpoint file
+     * @throws IOException
+     *             if the file cannot be read or is not a whole checkpoint
+     */
+    public void restore(Path file) throws IOException {
+        matrix = Checkpoint.read(file);
+        snapshot = null;
+        if (cache != null) {
+            enableSimilarityCache(); // rebuild from the restored ratings
+        }
+        matrix.setCounters(counters);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Insert a batch of already validated ratings in one sorted pass per
+     * dimension.
+     * 
+     * @param batch
+     *            The ratings to add
+     */
+    void addBatch(RatingBatch batch) {
+        matrix.insertAll(batch);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the matrix behind the database. It is replaced by clear().
+     * 
+     * @return the current matrix
+     */
+    SparseMatrix matrix() {
+        return matrix;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Check a rating against the addReview rules.
+     * 
+     * @param reviewer
+     *            The reviewer (must be a positive integer)
+     * @param movie
+     *            The movie (must be a positive integer)
+     * @param score
+     *            The rating score (1-10)
+     * @return True if the rating can be added
+     */
+    static boolean isValid(int reviewer, int movie, int score) {
+        // Scores must be in the range 1 to 10.
+        return reviewer >= 1 && movie >= 1 && score >= 1 && score <= 10;
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Delete the specified reviewer. This will delete all associated ratings.
@@ -116,6 +336,21 @@ public class MovieRaterDB implements MovieRater {
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Dump out all the ratings in the same format as printRatings(), but
+     * write them straight to the given output instead of building a String.
+     * 
+     * @param out
+     *            where the ratings are written
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public void printRatings(Appendable out) throws IOException {
+        matrix.matrixList(out);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * List all ratings for a given reviewer, with scores listed in
@@ -130,6 +365,25 @@ public class MovieRaterDB implements MovieRater {
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given reviewer in the same format as
+     * listReviewer(int), written straight to the given output.
+     * 
+     * @param reviewer
+     *            The reviewer to list ratings for
+     * @param out
+     *            where the listing is written
+     * @return true if the listing was written, false if no such reviewer
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean listReviewer(int reviewer, Appendable out)
+        throws IOException {
+        return matrix.rowList(reviewer, out);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * List all ratings for a given movie, with scores listed in
@@ -144,10 +398,35 @@ public class MovieRaterDB implements MovieRater {
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * List all ratings for a given movie in the same format as
+     * listMovie(int), written straight to the given output.
+     * 
+     * @param movie
+     *            The movie to list ratings for
+     * @param out
+     *            where the listing is written
+     * @return true if the listing was written, false if no such movie
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean listMovie(int movie, Appendable out) throws IOException {
+        return matrix.colList(movie, out);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Return the index for the movie most similar to the specified one.
      * 
+     * Only movies that share a reviewer with the target can have a score, so
+     * instead of comparing against every movie this walks the target's
+     * column, and for each of its reviewers walks that reviewer's row, adding
+     * the score difference for every other movie found there to the scratch
+     * accumulator. The result is the same as similarMovieScan(int).
+     * With enableSimilarityCache() on, the answer is looked up instead.
+     * 
      * @param movie
      *            the movie to find match for.
      * @return The best matching index.
@@ -155,8 +434,129 @@ public class MovieRaterDB implements MovieRater {
      *         suitable match
      */
     public int similarMovie(int movie) {
+        if (cache != null) {
+            return cache.best(movie);
+        }
+        return similarMovie(movie, scratch);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Same as similarMovie(int), accumulating into the given scratch buffer
+     * so callers on several threads can each bring their own.
+     * 
+     * @param movie
+     *            the movie to find match for.
+     * @param buffer
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The best matching index, or -1
+     */
+    int similarMovie(int movie, SimilarityAccumulator buffer) {
+        collectMovies(movie, buffer);
+        return buffer.best(); // Will be -1 if no movie shares a reviewer
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k movies most similar to the specified one, best first.
+     * The candidates are gathered like similarMovie(int) and the top k are
+     * picked with a bounded heap.
+     * 
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this movie does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarMovies(int movie, int k) {
+        return similarMovies(movie, k, scratch);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Same as similarMovies(int, int), accumulating into the given scratch
+     * buffer.
+     * 
+     * @param movie
+     *            the movie to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @param buffer
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The matching indexes, best first
+     */
+    int[] similarMovies(int movie, int k, SimilarityAccumulator buffer) {
+        collectMovies(movie, buffer);
+        return buffer.best(k);
+    }
+
+
+    /**
+     * Fill the buffer with every movie that shares a reviewer with the
+     * target, and its score differences. Leaves it empty if the movie does
+     * not exist.
+     * 
+     * @param movie
+     *            the target movie
+     * @param buffer
+     *            buffer to accumulate the candidates in (it is reset first)
+     */
+    private void collectMovies(int movie, SimilarityAccumulator buffer) {
+        buffer.reset();
+        SparseMatrix.HeaderNode targetHeader = matrix.peekColHeader(movie);
+        if (targetHeader == null) {
+            return; // movie does not exist
+        }
+
+        long visited = 0; // nodes looked at, for the counters
+        SparseMatrix.Node target = targetHeader.getnNode();
+        while (target != null) {
+            int score = target.getValue();
+            // every other movie this reviewer rated, on both sides of target
+            SparseMatrix.Node other = target.getLeft();
+            while (other != null) {
+                buffer.add(other.getCol(), Math.abs(score - other
+                    .getValue()));
+                other = other.getLeft();
+                visited++;
+            }
+            other = target.getRight();
+            while (other != null) {
+                buffer.add(other.getCol(), Math.abs(score - other
+                    .getValue()));
+                other = other.getRight();
+                visited++;
+            }
+            target = target.getDown(); // Move to the next reviewer
+            visited++;
+        }
+        if (counters != null) {
+            counters.fanOut(visited);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the movie most similar to the specified one by
+     * comparing the target against every movie in the database.
+     * 
+     * @param movie
+     *            the movie to find match for.
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    int similarMovieScan(int movie) {
         // 1. Get the target movie's column data
-        SparseMatrix.HeaderNode targetHeader = matrix.findColHeader(movie);
+        SparseMatrix.HeaderNode targetHeader = matrix.peekColHeader(movie);
+        if (targetHeader == null) {
+            return -1; // movie does not exist
+        }
 
         // stores the first matrix node
         SparseMatrix.Node targetColNodes = targetHeader.getnNode();
@@ -200,6 +600,11 @@ public class MovieRaterDB implements MovieRater {
     /**
      * Return the index for the reviewer most similar to the specified one.
      * 
+     * Works like similarMovie(int) with rows and columns swapped: for every
+     * movie the target rated, follow that movie's column up and down from
+     * the target's node to reach only the reviewers who share it. The result
+     * is the same as similarReviewerScan(int).
+     * 
      * @param reviewer
      *            the reviewer to find match for.
      * @return The best matching index.
@@ -207,8 +612,126 @@ public class MovieRaterDB implements MovieRater {
      *         suitable match
      */
     public int similarReviewer(int reviewer) {
+        return similarReviewer(reviewer, scratch);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Same as similarReviewer(int), accumulating into the given scratch
+     * buffer so callers on several threads can each bring their own.
+     * 
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @param buffer
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The best matching index, or -1
+     */
+    int similarReviewer(int reviewer, SimilarityAccumulator buffer) {
+        collectReviewers(reviewer, buffer);
+        return buffer.best(); // Will be -1 if no reviewer shares a movie
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the k reviewers most similar to the specified one, best first.
+     * The candidates are gathered like similarReviewer(int) and the top k
+     * are picked with a bounded heap.
+     * 
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @return The matching indexes, best first. Empty if this reviewer does
+     *         not exist, there is no suitable match, or k is not positive.
+     */
+    public int[] similarReviewers(int reviewer, int k) {
+        return similarReviewers(reviewer, k, scratch);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Same as similarReviewers(int, int), accumulating into the given
+     * scratch buffer.
+     * 
+     * @param reviewer
+     *            the reviewer to find matches for.
+     * @param k
+     *            the most matches to return.
+     * @param buffer
+     *            buffer to accumulate the candidates in (it is reset first)
+     * @return The matching indexes, best first
+     */
+    int[] similarReviewers(int reviewer, int k, SimilarityAccumulator buffer) {
+        collectReviewers(reviewer, buffer);
+        return buffer.best(k);
+    }
+
+
+    /**
+     * Fill the buffer with every reviewer that shares a movie with the
+     * target, and its score differences. Leaves it empty if the reviewer
+     * does not exist.
+     * 
+     * @param reviewer
+     *            the target reviewer
+     * @param buffer
+     *            buffer to accumulate the candidates in (it is reset first)
+     */
+    private void collectReviewers(int reviewer, SimilarityAccumulator buffer) {
+        buffer.reset();
+        SparseMatrix.HeaderNode targetHeader = matrix.peekRowHeader(reviewer);
+        if (targetHeader == null) {
+            return; // reviewer does not exist
+        }
+
+        long visited = 0; // nodes looked at, for the counters
+        SparseMatrix.Node target = targetHeader.getnNode();
+        while (target != null) {
+            int score = target.getValue();
+            // every other reviewer of this movie, above and below target
+            SparseMatrix.Node other = target.getUp();
+            while (other != null) {
+                buffer.add(other.getRow(), Math.abs(score - other
+                    .getValue()));
+                other = other.getUp();
+                visited++;
+            }
+            other = target.getDown();
+            while (other != null) {
+                buffer.add(other.getRow(), Math.abs(score - other
+                    .getValue()));
+                other = other.getDown();
+                visited++;
+            }
+            target = target.getRight(); // Move to the next movie
+            visited++;
+        }
+        if (counters != null) {
+            counters.fanOut(visited);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Return the index for the reviewer most similar to the specified one by
+     * comparing the target against every reviewer in the database.
+     * 
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    int similarReviewerScan(int reviewer) {
         // 1. Get the target reviewer's row data
-        SparseMatrix.HeaderNode targetHeader = matrix.findRowHeader(reviewer);
+        SparseMatrix.HeaderNode targetHeader = matrix.peekRowHeader(reviewer);
+        if (targetHeader == null) {
+            return -1; // reviewer does not exist
+        }
 
         // stores the first matrix node
         SparseMatrix.Node targetRowNodes = targetHeader.getnNode();
@@ -248,6 +771,177 @@ public class MovieRaterDB implements MovieRater {
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Same answer as similarMovieScan(int), but the movies are split into
+     * ranges that are scored on the given pool, so one cold query can use
+     * every core. The database must not be changed while this runs.
+     * 
+     * @param movie
+     *            the movie to find match for.
+     * @param pool
+     *            the pool to score the ranges on
+     * @return The best matching index.
+     *         Return -1 if this movie does not exist or if there is no
+     *         suitable match
+     */
+    public int similarMovieParallel(int movie, ForkJoinPool pool) {
+        SparseMatrix.HeaderNode targetHeader = matrix.peekColHeader(movie);
+        if (targetHeader == null) {
+            return -1; // movie does not exist
+        }
+        SparseMatrix.HeaderNode[] headers = headerArray(matrix
+            .getColHeaderList());
+        ScanTask task = new ScanTask(targetHeader, headers, 0, headers.length,
+            false);
+        pool.invoke(task);
+        return task.bestId;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Same answer as similarReviewerScan(int), but the reviewers are split
+     * into ranges that are scored on the given pool. The database must not
+     * be changed while this runs.
+     * 
+     * @param reviewer
+     *            the reviewer to find match for.
+     * @param pool
+     *            the pool to score the ranges on
+     * @return The best matching index.
+     *         Return -1 if this reviewer does not exist or if there is no
+     *         suitable match
+     */
+    public int similarReviewerParallel(int reviewer, ForkJoinPool pool) {
+        SparseMatrix.HeaderNode targetHeader = matrix.peekRowHeader(reviewer);
+        if (targetHeader == null) {
+            return -1; // reviewer does not exist
+        }
+        SparseMatrix.HeaderNode[] headers = headerArray(matrix
+            .getRowHeaderList());
+        ScanTask task = new ScanTask(targetHeader, headers, 0, headers.length,
+            true);
+        pool.invoke(task);
+        return task.bestId;
+    }
+
+
+    /**
+     * Copy a header list into an array so it can be split by index.
+     * 
+     * @param first
+     *            first header of the list
+     * @return the headers, in list (ascending index) order
+     */
+    private static SparseMatrix.HeaderNode[] headerArray(
+        SparseMatrix.HeaderNode first) {
+        int count = 0;
+        for (SparseMatrix.HeaderNode h = first; h != null; h = h.getN()) {
+            count++;
+        }
+        SparseMatrix.HeaderNode[] headers = new SparseMatrix.HeaderNode[count];
+        int i = 0;
+        for (SparseMatrix.HeaderNode h = first; h != null; h = h.getN()) {
+            headers[i++] = h;
+        }
+        return headers;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Scores headers[lo .. hi) against the target, splitting in half until a
+     * range is at most SCAN_GRAIN long. Each task keeps its best score and
+     * id in fields, and a parent merges its halves with the same rule as the
+     * scans: the lowest score wins, then the lowest index.
+     */
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SparseMatrix.HeaderNode target; // header to match
+        private final SparseMatrix.HeaderNode[] headers; // all candidates
+        private final int lo; // first header of this range
+        private final int hi; // one past the last header of this range
+        private final boolean rows; // true for reviewers, false for movies
+
+        private double bestScore = Double.MAX_VALUE; // best in the range
+        private int bestId = -1; // its index, -1 if none
+
+        /**
+         * Create a new ScanTask.
+         * 
+         * @param target
+         *            - header to match
+         * @param headers
+         *            - all candidate headers
+         * @param lo
+         *            - first header of the range
+         * @param hi
+         *            - one past the last header of the range
+         * @param rows
+         *            - true to compare reviewers, false for movies
+         */
+        ScanTask(
+            SparseMatrix.HeaderNode target,
+            SparseMatrix.HeaderNode[] headers,
+            int lo,
+            int hi,
+            boolean rows) {
+            this.target = target;
+            this.headers = headers;
+            this.lo = lo;
+            this.hi = hi;
+            this.rows = rows;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (hi - lo > SCAN_GRAIN) {
+                int mid = (lo + hi) >>> 1;
+                ScanTask left = new ScanTask(target, headers, lo, mid, rows);
+                ScanTask right = new ScanTask(target, headers, mid, hi, rows);
+                invokeAll(left, right);
+                offer(left.bestScore, left.bestId);
+                offer(right.bestScore, right.bestId);
+                return;
+            }
+            for (int i = lo; i < hi; i++) {
+                SparseMatrix.HeaderNode other = headers[i];
+                if (other == target) {
+                    continue;
+                }
+                double score = rows
+                    ? calculateReviewerSimilarity(target.getnNode(), other
+                        .getnNode())
+                    : calculateMovieSimilarity(target.getnNode(), other
+                        .getnNode());
+                if (score != -1.0) { // Score of -1 means nothing shared
+                    offer(score, other.getIndex());
+                }
+            }
+        }
+
+
+        /**
+         * Keep a candidate if it beats the best so far.
+         * 
+         * @param score
+         *            - the candidate's score
+         * @param id
+         *            - the candidate's index, -1 for none
+         */
+        private void offer(double score, int id) {
+            if (id != -1 && (bestId == -1 || score < bestScore
+                || (score == bestScore && id < bestId))) {
+                bestScore = score;
+                bestId = id;
+            }
+        }
+    }
+
+
     /**
      * Private helper to calculate similarity score between two reviewers.
      * Iterates both row lists simultaneously to find matching movies.
@@ -276,13 +970,18 @@ public class MovieRaterDB implements MovieRater {
         // first node for row y stored
         SparseMatrix.Node currY = rowY;
 
+        // nodes stepped past on both sides, for the counters
+        long visited = 0;
+
         // enter loop while each node is not null
         while (currX != null && currY != null) {
             if (currX.getCol() < currY.getCol()) {
                 currX = currX.getRight(); // entry rated by X, not Y
+                visited++;
             }
             else if (currY.getCol() < currX.getCol()) {
                 currY = currY.getRight(); // entry rated by Y, not X
+                visited++;
             }
             else {
                 // Shared movie found!
@@ -290,8 +989,12 @@ public class MovieRaterDB implements MovieRater {
                 sharedCount++;
                 currX = currX.getRight();
                 currY = currY.getRight();
+                visited += 2;
             }
         }
+        if (counters != null) {
+            counters.join(visited);
+        }
 
         if (sharedCount == 0) {
             return -1.0; // Per spec, score is -1 if no entries are shared
@@ -312,7 +1015,7 @@ public class MovieRaterDB implements MovieRater {
      *            Node list for Movie B
      * @return The similarity score, or -1.0 if no reviewers are shared.
      */
-    private double calculateMovieSimilarity(
+    double calculateMovieSimilarity(
         SparseMatrix.Node colA,
         SparseMatrix.Node colB) {
 
@@ -327,13 +1030,18 @@ public class MovieRaterDB implements MovieRater {
         SparseMatrix.Node currA = colA;
         SparseMatrix.Node currB = colB;
 
+        // nodes stepped past on both sides, for the counters
+        long visited = 0;
+
         //enter loop while neither node is null
         while (currA != null && currB != null) {
             if (currA.getRow() < currB.getRow()) {
                 currA = currA.getDown(); // Reviewer rated A, not B
+                visited++;
             }
             else if (currB.getRow() < currA.getRow()) {
                 currB = currB.getDown(); // Reviewer rated B, not A
+                visited++;
             }
             else {
                 // Shared reviewer found!
@@ -341,8 +1049,12 @@ public class MovieRaterDB implements MovieRater {
                 sharedCount++;
                 currA = currA.getDown();
                 currB = currB.getDown();
+                visited += 2;
             }
         }
+        if (counters != null) {
+            counters.join(visited);
+        }
 
         if (sharedCount == 0) {
             return -1.0; // Per spec, score is -1 if no reviewers are shared
@@ -350,4 +1062,35 @@ public class MovieRaterDB implements MovieRater {
 
         return totalDiff / sharedCount;
     }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a movie's ratings.
+     * They are kept on the column header, so this does not walk the
+     * column.
+     * 
+     * @param movie
+     *            the movie to summarize.
+     * @return The stats, null if no such movie.
+     */
+    public RatingStats movieStats(int movie) {
+        SparseMatrix.HeaderNode header = matrix.peekColHeader(movie);
+        return header == null ? null : new RatingStats(header);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Get the count, sum and score histogram of a reviewer's ratings.
+     * They are kept on the row header, so this does not walk the row.
+     * 
+     * @param reviewer
+     *            the reviewer to summarize.
+     * @return The stats, null if no such reviewer.
+     */
+    public RatingStats reviewerStats(int reviewer) {
+        SparseMatrix.HeaderNode header = matrix.peekRowHeader(reviewer);
+        return header == null ? null : new RatingStats(header);
+    }
 }
@@ -3,7 +3,12 @@
  * on their interests.
  */
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /**
  * The class containing the main method.
@@ -40,17 +45,42 @@ import java.io.IOException;
 
 
 public class MovieRaterProj {
+    private static final int IO_BUFFER = 1 << 16; // reader/writer buffer size
+
     /**
-     * This is nothing but a placeholder for test cases that call the interface
-     * methods.
+     * Run a command file against a new database. Input is read line by line
+     * through a large buffer and output is written through one too, so it
+     * goes out in big chunks (see CommandProcessor for the commands).
+     * With no parameters there is nothing to do, as test cases call the
+     * interface methods directly.
      *
      * @param args
-     *     Command line parameters: There are none
+     *     Command line parameters: the command file, and optionally the
+     *     file to write the output to (standard output if not given)
      * @throws IOException
      */
     public static void main(String[] args)
         throws IOException
     {
-        // There is nothing that we need to do here
+        if (args.length == 0) {
+            return; // There is nothing that we need to do here
+        }
+
+        try (BufferedReader in = new BufferedReader(Files.newBufferedReader(
+            Paths.get(args[0])), IO_BUFFER)) {
+            if (args.length > 1) {
+                try (BufferedWriter out = new BufferedWriter(Files
+                    .newBufferedWriter(Paths.get(args[1])), IO_BUFFER)) {
+                    new CommandProcessor(new MovieRaterDB()).process(in, out);
+                }
+            }
+            else {
+                // flushed, not closed: closing would close System.out too
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                    System.out), IO_BUFFER);
+                new CommandProcessor(new MovieRaterDB()).process(in, out);
+                out.flush();
+            }
+        }
     }
 }
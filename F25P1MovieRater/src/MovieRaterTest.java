@@ -1,4 +1,14 @@
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import student.TestCase;
 
 /**
@@ -881,4 +891,1685 @@ public class MovieRaterTest extends TestCase {
         // This results in a tie. The mutant will pick 20 (lower index).
         // Test: assertEquals(30, 20) -> FAILS. Mutant KILLED.
     }
+
+
+    /**
+     * Tests that reviewers and movies inserted out of order, including ids
+     * too big for the dense part of the header directory, still come out in
+     * ascending order.
+     */
+    public void testHeaderDirectoryOrder() {
+        int huge = Integer.MAX_VALUE;
+        assertTrue(it.addReview(huge, 3, 1));
+        assertTrue(it.addReview(70, 5000000, 2));
+        assertTrue(it.addReview(5000000, 70, 3));
+        assertTrue(it.addReview(1, huge, 4));
+        assertTrue(it.addReview(64, 3, 5));
+        assertTrue(it.addReview(63, 3, 6));
+        assertFuzzyEquals(multiline("1: (" + huge + ", 4)", "63: (3, 6)",
+            "64: (3, 5)", "70: (5000000, 2)", "5000000: (70, 3)", huge
+                + ": (3, 1)"), it.printRatings());
+        assertFuzzyEquals("3: 6 5 1", it.listMovie(3));
+        assertFuzzyEquals(huge + ": 4", it.listMovie(huge));
+        assertFuzzyEquals("5000000: 3", it.listReviewer(5000000));
+    }
+
+
+    /**
+     * Tests that reads and deletes of unknown ids do not create headers, and
+     * that headers left empty by a delete are unlinked.
+     */
+    public void testPeekAndCompactHeaders() {
+        SparseMatrix matrix = new SparseMatrix();
+        assertNull(matrix.rowList(5));
+        assertNull(matrix.colList(5));
+        assertFalse(matrix.remove(5, 5));
+        assertFalse(matrix.removeRow(5));
+        assertFalse(matrix.removeCol(5));
+        assertNull(matrix.getRowHeaderList().getN());
+        assertNull(matrix.getColHeaderList().getN());
+
+        matrix.insert(1, 1, 5);
+        matrix.insert(1, 2, 6);
+        matrix.insert(2, 2, 7);
+        assertTrue(matrix.remove(2, 2)); // row 2 is now empty
+        assertNull(matrix.peekRowHeader(2));
+        assertEquals(1, matrix.getRowHeaderList().getN().getIndex());
+        assertNull(matrix.getRowHeaderList().getN().getN());
+
+        assertTrue(matrix.removeRow(1)); // every column is now empty
+        assertNull(matrix.peekRowHeader(1));
+        assertNull(matrix.getRowHeaderList().getN());
+        assertNull(matrix.getColHeaderList().getN());
+
+        matrix.insert(3, 4, 5);
+        matrix.insert(6, 4, 5);
+        matrix.insert(6, 7, 5);
+        assertTrue(matrix.removeCol(4)); // row 3 is now empty
+        assertNull(matrix.peekColHeader(4));
+        assertNull(matrix.peekRowHeader(3));
+        assertEquals("6: (7, 5)", matrix.matrixList());
+    }
+
+
+    /**
+     * Tests that the Appendable versions of the listings write exactly what
+     * the String versions return.
+     * 
+     * @throws IOException
+     */
+    public void testStreamingListings() throws IOException {
+        assertTrue(it.addReview(7, 3, 10));
+        assertTrue(it.addReview(2, 3, 7));
+        assertTrue(it.addReview(1000000000, 5, 8));
+        assertTrue(it.addReview(7, 1234567, 1));
+
+        StringWriter out = new StringWriter();
+        it.printRatings(out);
+        assertEquals(it.printRatings(), out.toString());
+        assertEquals("2: (3, 7)\n7: (3, 10) (1234567, 1)\n"
+            + "1000000000: (5, 8)", out.toString());
+
+        out = new StringWriter();
+        assertTrue(it.listReviewer(7, out));
+        assertEquals("7: 10 1", out.toString());
+        out = new StringWriter();
+        assertTrue(it.listMovie(3, out));
+        assertEquals(it.listMovie(3), out.toString());
+
+        out = new StringWriter();
+        assertFalse(it.listReviewer(8, out));
+        assertFalse(it.listMovie(8, out));
+        assertEquals("", out.toString());
+
+        it.clear();
+        out = new StringWriter();
+        it.printRatings(out);
+        assertEquals("", out.toString());
+    }
+
+
+    /**
+     * Tests that the candidate based similarMovie gives the same answer as
+     * comparing against every movie, on random data with lots of ties.
+     */
+    public void testSimilarMovieMatchesScan() {
+        Random random = new Random(3114);
+        for (int i = 0; i < 2000; i++) {
+            it.addReview(random.nextInt(60) + 1, random.nextInt(40) + 1,
+                random.nextInt(10) + 1);
+            if (i % 7 == 0) {
+                it.deleteScore(random.nextInt(60) + 1, random.nextInt(40)
+                    + 1);
+            }
+        }
+        it.deleteMovie(5);
+        for (int movie = 0; movie <= 42; movie++) {
+            assertEquals(it.similarMovieScan(movie), it.similarMovie(movie));
+        }
+    }
+
+
+    /**
+     * Tests that the candidate based similarReviewer gives the same answer
+     * as comparing against every reviewer, on random data with lots of ties.
+     */
+    public void testSimilarReviewerMatchesScan() {
+        Random random = new Random(5040);
+        for (int i = 0; i < 2000; i++) {
+            it.addReview(random.nextInt(40) + 1, random.nextInt(60) + 1,
+                random.nextInt(10) + 1);
+            if (i % 7 == 0) {
+                it.deleteScore(random.nextInt(40) + 1, random.nextInt(60)
+                    + 1);
+            }
+        }
+        it.deleteReviewer(5);
+        for (int reviewer = 0; reviewer <= 42; reviewer++) {
+            assertEquals(it.similarReviewerScan(reviewer), it
+                .similarReviewer(reviewer));
+        }
+    }
+
+
+    /**
+     * Tests that a published snapshot answers every query the same way as
+     * the database did at publish time, and does not see later writes.
+     */
+    public void testSnapshotMatchesDatabase() {
+        assertNull(it.latestSnapshot());
+        assertFuzzyEquals("", it.publishSnapshot().matrixList());
+
+        Random random = new Random(1114);
+        for (int i = 0; i < 1500; i++) {
+            it.addReview(random.nextInt(50) + 1, random.nextInt(50) + 1,
+                random.nextInt(10) + 1);
+        }
+        it.deleteReviewer(7);
+        it.deleteMovie(9);
+        CsrSnapshot snap = it.publishSnapshot();
+        assertSame(snap, it.latestSnapshot());
+
+        String ratings = it.printRatings();
+        assertEquals(ratings, snap.matrixList());
+        for (int id = 0; id <= 52; id++) {
+            assertEquals(it.listReviewer(id), snap.rowList(id));
+            assertEquals(it.listMovie(id), snap.colList(id));
+            assertEquals(it.similarReviewer(id), snap.similarReviewer(id));
+            assertEquals(it.similarMovie(id), snap.similarMovie(id));
+        }
+
+        it.addReview(7, 9, 3);
+        assertNull(snap.rowList(7));
+        assertEquals(ratings, snap.matrixList());
+        it.clear();
+        assertNull(it.latestSnapshot());
+    }
+
+
+    /**
+     * Tests that the packed matrix behaves exactly like the linked one
+     * through a random mix of inserts, updates and every kind of remove.
+     */
+    public void testPackedMatrixMatchesLinked() {
+        SparseMatrix linked = new SparseMatrix();
+        PackedSparseMatrix packed = new PackedSparseMatrix();
+        Random random = new Random(2114);
+        for (int i = 0; i < 5000; i++) {
+            int row = random.nextInt(30);
+            int col = random.nextInt(30);
+            int op = random.nextInt(20);
+            if (op == 0) {
+                assertEquals(linked.removeRow(row), packed.removeRow(row));
+            }
+            else if (op == 1) {
+                assertEquals(linked.removeCol(col), packed.removeCol(col));
+            }
+            else if (op < 6) {
+                assertEquals(linked.remove(row, col), packed.remove(row,
+                    col));
+            }
+            else {
+                int val = random.nextInt(10) + 1;
+                linked.insert(row, col, val);
+                packed.insert(row, col, val);
+            }
+        }
+        assertEquals(linked.matrixList(), packed.matrixList());
+        for (int id = 0; id < 30; id++) {
+            assertEquals(linked.rowList(id), packed.rowList(id));
+            assertEquals(linked.colList(id), packed.colList(id));
+        }
+        assertEquals(new CsrSnapshot(linked).size(), packed.size());
+
+        Exception thrown = null;
+        try {
+            packed.insert(1, 1, 300);
+        }
+        catch (IllegalArgumentException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+    }
+
+
+    /**
+     * Tests that the memory-mapped database gives the same answers as the
+     * in-memory one, and still has every rating after being reopened.
+     * 
+     * @throws IOException
+     */
+    public void testMappedDatabase() throws IOException {
+        Path dir = Files.createTempDirectory("mapped");
+        try {
+            MappedMovieRaterDB mapped = new MappedMovieRaterDB(dir);
+            Random random = new Random(4114);
+            for (int i = 0; i < 3000; i++) {
+                int reviewer = random.nextInt(40);
+                int movie = random.nextInt(40);
+                int op = random.nextInt(30);
+                if (op == 0) {
+                    assertEquals(it.deleteReviewer(reviewer), mapped
+                        .deleteReviewer(reviewer));
+                }
+                else if (op == 1) {
+                    assertEquals(it.deleteMovie(movie), mapped.deleteMovie(
+                        movie));
+                }
+                else if (op < 6) {
+                    assertEquals(it.deleteScore(reviewer, movie), mapped
+                        .deleteScore(reviewer, movie));
+                }
+                else {
+                    int score = random.nextInt(12);
+                    assertEquals(it.addReview(reviewer, movie, score), mapped
+                        .addReview(reviewer, movie, score));
+                }
+            }
+            String ratings = it.printRatings();
+            assertEquals(ratings, mapped.printRatings());
+            mapped.close();
+
+            mapped = new MappedMovieRaterDB(dir);
+            assertEquals(ratings, mapped.printRatings());
+            for (int id = -1; id <= 41; id++) {
+                assertEquals(it.listReviewer(id), mapped.listReviewer(id));
+                assertEquals(it.listMovie(id), mapped.listMovie(id));
+                assertEquals(it.similarReviewer(id), mapped.similarReviewer(
+                    id));
+                assertEquals(it.similarMovie(id), mapped.similarMovie(id));
+            }
+
+            assertTrue(mapped.clear());
+            assertEquals("", mapped.printRatings());
+            assertEquals(0, mapped.size());
+            assertTrue(mapped.addReview(3, 4, 5));
+            assertEquals("3: (4, 5)", mapped.printRatings());
+            mapped.close();
+        }
+        finally {
+            for (String name : new String[] { "nodes.dat", "rows.dat",
+                "cols.dat" }) {
+                Files.deleteIfExists(dir.resolve(name));
+            }
+            Files.delete(dir);
+        }
+    }
+
+
+    /**
+     * Tests that the memory-mapped database handles ids up to
+     * Integer.MAX_VALUE and spread over the whole int range: printRatings
+     * returns, the directory files stay small, and enough reviewers and
+     * movies come and go to grow the directories and shift their entries.
+     * 
+     * @throws IOException
+     */
+    public void testMappedLargeIds() throws IOException {
+        Path dir = Files.createTempDirectory("mapped");
+        try {
+            MappedMovieRaterDB mapped = new MappedMovieRaterDB(dir);
+            int huge = Integer.MAX_VALUE;
+            assertTrue(mapped.addReview(huge, 1, 5));
+            assertTrue(mapped.addReview(1, huge, 3));
+            assertFalse(mapped.addReview(-4, 1, 3));
+            assertEquals("1: (" + huge + ", 3)\n" + huge + ": (1, 5)", mapped
+                .printRatings());
+            assertEquals(huge + ": 3", mapped.listMovie(huge));
+            assertNull(mapped.listReviewer(-4));
+            assertTrue(mapped.deleteReviewer(huge));
+            assertEquals("1: (" + huge + ", 3)", mapped.printRatings());
+            assertTrue(mapped.clear());
+
+            Random random = new Random(2147);
+            int[] ids = new int[3000];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = 1 + random.nextInt(huge);
+            }
+            ids[0] = huge;
+            for (int i = 0; i < 12000; i++) {
+                int reviewer = ids[random.nextInt(ids.length)];
+                int movie = ids[random.nextInt(ids.length)];
+                int op = random.nextInt(10);
+                if (op == 0) {
+                    assertEquals(it.deleteReviewer(reviewer), mapped
+                        .deleteReviewer(reviewer));
+                }
+                else if (op == 1) {
+                    assertEquals(it.deleteMovie(movie), mapped.deleteMovie(
+                        movie));
+                }
+                else {
+                    assertTrue(it.addReview(reviewer, movie, 1 + i % 10));
+                    assertTrue(mapped.addReview(reviewer, movie, 1 + i % 10));
+                }
+            }
+            String ratings = it.printRatings();
+            assertEquals(ratings, mapped.printRatings());
+            mapped.close();
+            // one 64MB chunk each, instead of 8GB for a dense directory
+            assertTrue(Files.size(dir.resolve("rows.dat")) <= 1 << 26);
+            assertTrue(Files.size(dir.resolve("cols.dat")) <= 1 << 26);
+
+            mapped = new MappedMovieRaterDB(dir);
+            assertEquals(ratings, mapped.printRatings());
+            for (int id : ids) {
+                assertEquals(it.listReviewer(id), mapped.listReviewer(id));
+                assertEquals(it.listMovie(id), mapped.listMovie(id));
+            }
+            assertTrue(mapped.clear());
+            assertEquals("", mapped.printRatings());
+            assertNull(mapped.listReviewer(huge));
+            mapped.close();
+        }
+        finally {
+            for (String name : new String[] { "nodes.dat", "rows.dat",
+                "cols.dat" }) {
+                Files.deleteIfExists(dir.resolve(name));
+            }
+            Files.delete(dir);
+        }
+    }
+
+
+    /**
+     * Tests that a batch insert gives the same matrix as inserting the
+     * entries one at a time, including updates and repeats in the batch.
+     */
+    public void testInsertAllMatchesInsert() {
+        SparseMatrix single = new SparseMatrix();
+        SparseMatrix batched = new SparseMatrix();
+        Random random = new Random(6114);
+        for (int round = 0; round < 5; round++) {
+            RatingBatch batch = new RatingBatch();
+            for (int i = 0; i < 400; i++) {
+                int row = random.nextInt(40) - 5;
+                int col = random.nextInt(1000) == 0 ? Integer.MIN_VALUE
+                    : random.nextInt(40) * 100000;
+                int val = random.nextInt(10) + 1;
+                single.insert(row, col, val);
+                batch.add(row, col, val);
+            }
+            batched.insertAll(batch);
+            assertEquals(single.matrixList(), batched.matrixList());
+            for (int col = 0; col < 40; col++) {
+                assertEquals(single.colList(col * 100000), batched.colList(
+                    col * 100000));
+            }
+        }
+    }
+
+
+    /**
+     * Tests loading a rating file with a header, bad lines and bad values.
+     * 
+     * @throws IOException
+     */
+    public void testLoadRatings() throws IOException {
+        Path file = Files.createTempFile("ratings", ".csv");
+        try {
+            Files.write(file, ("reviewer,movie,score\n" + "2,3,7\n"
+                + "2 5 5\r\n" + "7\t3\t10\n" + "\n" + "3,5,11\n" + "3,x,1\n"
+                + "3,5\n" + "2,3,8").getBytes("US-ASCII"));
+            RatingLoader.Stats stats = it.loadRatings(file);
+            assertEquals(7, stats.getLines());
+            assertEquals(4, stats.getLoaded());
+            assertEquals(1, stats.getRejected());
+            assertEquals(2, stats.getMalformed());
+            assertTrue(stats.ratingsPerSecond() > 0);
+            assertFuzzyEquals(multiline("2: (3, 8) (5, 5)", "7: (3, 10)"), it
+                .printRatings());
+            assertFuzzyEquals("3: 8 10", it.listMovie(3));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+
+    /**
+     * Tests running every command through the command file driver, with
+     * batched adds seen by the commands that follow them.
+     * 
+     * @throws IOException
+     */
+    public void testCommandFile() throws IOException {
+        Path commands = Files.createTempFile("commands", ".txt");
+        Path output = Files.createTempFile("output", ".txt");
+        try {
+            Files.write(commands, ("add 2 3 7\n" + "add 2 5 5\n"
+                + "add 7 3 10\n" + "add 2 3 6\n" + "add 2 4 11\n"
+                + "list reviewer 2\n" + "list movie 3\n" + "list movie 9\n"
+                + "\n" + "similar movie 3\n" + "similar reviewer 2\n"
+                + "add 7 5 5\n" + "similar movie 3\n" + "delete 2 5\n"
+                + "delete 2 5\n" + "print\n" + "delete reviewer 7\n"
+                + "delete movie 3\n" + "delete movie 3\n" + "print\n"
+                + "add 1 1 1\n" + "clear\n" + "print\n" + "add 1 x 1\n"
+                + "list everyone\n" + "frobnicate").getBytes("US-ASCII"));
+            MovieRaterProj.main(new String[] { commands.toString(), output
+                .toString() });
+            assertEquals(multiline("Bad rating: add 2 4 11", "2: 6 5",
+                "3: 6 10", "Not found: movie 9", "Similar to movie 3: 5",
+                "Similar to reviewer 2: 7", "Similar to movie 3: 5",
+                "Deleted score 2 5", "Not found: score 2 5",
+                "2: (3, 6)\n7: (3, 10) (5, 5)", "Deleted reviewer 7",
+                "Deleted movie 3", "Not found: movie 3", "",
+                "Database cleared", "", "Unknown command: add 1 x 1",
+                "Unknown command: list everyone",
+                "Unknown command: frobnicate"), new String(Files.readAllBytes(
+                    output), "US-ASCII"));
+
+            // with no output file the results go to System.out, which must
+            // still work afterwards
+            Files.write(commands, "add 1 2 3\nprint".getBytes("US-ASCII"));
+            systemOut().clearHistory();
+            MovieRaterProj.main(new String[] { commands.toString() });
+            System.out.println("still open");
+            assertFalse(System.out.checkError());
+            assertFuzzyEquals(multiline("1: (2, 3)", "still open"),
+                systemOut().getHistory());
+        }
+        finally {
+            Files.delete(commands);
+            Files.delete(output);
+        }
+    }
+
+
+    /**
+     * Tests the concurrent database with writer threads that each own a set
+     * of reviewers while reader threads keep querying. Changes to different
+     * reviewers do not depend on each other, so the end result must match
+     * running every writer's calls one after another.
+     * 
+     * @throws InterruptedException
+     */
+    public void testConcurrentDatabase() throws InterruptedException {
+        final ConcurrentMovieRaterDB shared = new ConcurrentMovieRaterDB();
+        final int writers = 4;
+        Thread[] threads = new Thread[writers + 2];
+        final Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        if (id < writers) {
+                            runWriter(shared, id, writers);
+                        }
+                        else {
+                            Random random = new Random(id);
+                            for (int i = 0; i < 300; i++) {
+                                shared.similarMovie(random.nextInt(30));
+                                shared.similarReviewer(random.nextInt(40));
+                                shared.listMovie(random.nextInt(30));
+                                shared.listReviewer(random.nextInt(40));
+                                shared.printRatings();
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure[0]);
+
+        ConcurrentMovieRaterDB expected = new ConcurrentMovieRaterDB();
+        for (int t = 0; t < writers; t++) {
+            runWriter(expected, t, writers);
+        }
+        assertEquals(expected.printRatings(), shared.printRatings());
+        for (int id = 0; id < 40; id++) {
+            assertEquals(expected.similarReviewer(id), shared.similarReviewer(
+                id));
+            assertEquals(expected.similarMovie(id), shared.similarMovie(id));
+        }
+
+        assertTrue(shared.deleteMovie(3));
+        assertFalse(shared.deleteMovie(3));
+        assertNull(shared.listMovie(3));
+        assertTrue(shared.clear());
+        assertEquals("", shared.printRatings());
+    }
+
+
+    /**
+     * One writer for testConcurrentDatabase: adds, updates and deletes
+     * ratings for the reviewers that are equal to id modulo writers.
+     * 
+     * @param db
+     *            the database to write to
+     * @param id
+     *            which writer this is
+     * @param writers
+     *            how many writers there are
+     */
+    private static void runWriter(MovieRater db, int id, int writers) {
+        Random random = new Random(id);
+        for (int i = 0; i < 2000; i++) {
+            int reviewer = random.nextInt(10) * writers + id + 1;
+            int movie = random.nextInt(30) + 1;
+            int op = random.nextInt(20);
+            if (op == 0) {
+                db.deleteReviewer(reviewer);
+            }
+            else if (op < 4) {
+                db.deleteScore(reviewer, movie);
+            }
+            else {
+                db.addReview(reviewer, movie, random.nextInt(10) + 1);
+            }
+        }
+    }
+
+
+    /**
+     * Check that EpochMovieRaterDB answers like MovieRaterDB, that a
+     * pinned version does not change under later writes, that writes get
+     * published without a reader asking, and that readers running next to
+     * writers always get a whole listing.
+     *
+     * @throws InterruptedException
+     */
+    public void testEpochSnapshots() throws InterruptedException {
+        EpochMovieRaterDB epoch = new EpochMovieRaterDB();
+        MovieRaterDB plain = new MovieRaterDB();
+        runWriter(epoch, 0, 1);
+        runWriter(plain, 0, 1);
+        epoch.publish();
+        assertEquals(plain.printRatings(), epoch.printRatings());
+        for (int id = 0; id < 40; id++) {
+            assertEquals(plain.listReviewer(id), epoch.listReviewer(id));
+            assertEquals(plain.listMovie(id), epoch.listMovie(id));
+            assertEquals(plain.similarReviewer(id), epoch.similarReviewer(id));
+            assertEquals(plain.similarMovie(id), epoch.similarMovie(id));
+        }
+
+        EpochMovieRaterDB.Version pinned = epoch.pin();
+        String before = pinned.getSnapshot().matrixList();
+        assertSame(pinned, epoch.pin()); // nothing changed, no rebuild
+        assertTrue(epoch.addReview(500, 1, 7));
+        assertFalse(epoch.addReview(500, 1, 11));
+        assertEquals(before, pinned.getSnapshot().matrixList());
+        // the write queued a publish; the reader just has to wait for it
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (epoch.pin() == pinned && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(epoch.pin().getEpoch() > pinned.getEpoch());
+        assertEquals("500: 7", epoch.listReviewer(500));
+        assertTrue(epoch.clear());
+        assertEquals("", epoch.publish().getSnapshot().matrixList());
+        assertEquals("", epoch.printRatings());
+        assertEquals(before, pinned.getSnapshot().matrixList());
+
+        // the writer adds reviewer 1's two ratings one at a time, then
+        // deletes the reviewer; a version may be published between any two
+        // of those calls, but never hold the second rating without the
+        // first, or part of a delete
+        EpochMovieRaterDB shared = new EpochMovieRaterDB();
+        Throwable[] failure = new Throwable[1];
+        Thread writer = new Thread() {
+            public void run() {
+                for (int i = 0; i < 3000; i++) {
+                    shared.addReview(1, 1, 5);
+                    shared.addReview(1, 2, 6);
+                    shared.publish();
+                    shared.deleteReviewer(1);
+                }
+            }
+        };
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 3000; i++) {
+                        String all = shared.printRatings();
+                        if (!all.isEmpty() && !all.equals("1: (1, 5)") && !all
+                            .equals("1: (1, 5) (2, 6)")) {
+                            failure[0] = new AssertionError(all);
+                        }
+                    }
+                }
+                catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertNull(failure[0]);
+        assertEquals("", shared.publish().getSnapshot().matrixList());
+    }
+
+
+    /**
+     * Check that versions built from the last version plus the changed rows
+     * and columns match the database after every kind of write, including
+     * a clear between two versions.
+     */
+    public void testEpochIncrementalVersions() {
+        EpochMovieRaterDB epoch = new EpochMovieRaterDB();
+        Random random = new Random(12);
+        for (int round = 0; round < 60; round++) {
+            for (int i = 0; i < 50; i++) {
+                int reviewer = random.nextInt(40) + 1;
+                int movie = random.nextInt(40) + 1;
+                int op = random.nextInt(40);
+                if (op == 0) {
+                    assertEquals(it.deleteReviewer(reviewer), epoch
+                        .deleteReviewer(reviewer));
+                }
+                else if (op == 1) {
+                    assertEquals(it.deleteMovie(movie), epoch.deleteMovie(
+                        movie));
+                }
+                else if (op < 10) {
+                    assertEquals(it.deleteScore(reviewer, movie), epoch
+                        .deleteScore(reviewer, movie));
+                }
+                else {
+                    it.addReview(reviewer, movie, op % 10 + 1);
+                    epoch.addReview(reviewer, movie, op % 10 + 1);
+                }
+            }
+            if (round == 30) {
+                it.clear();
+                epoch.clear();
+                it.addReview(3, 4, 5);
+                epoch.addReview(3, 4, 5);
+            }
+            CsrSnapshot snapshot = epoch.publish().getSnapshot();
+            assertEquals(it.printRatings(), snapshot.matrixList());
+            for (int id = 1; id <= 40; id++) {
+                assertEquals(it.listMovie(id), snapshot.colList(id));
+                assertEquals(String.valueOf(it.reviewerStats(id)), String
+                    .valueOf(snapshot.rowStats(id)));
+            }
+        }
+    }
+
+
+    /**
+     * Tests that the ForkJoin scans give the same answers as the serial
+     * scans, with enough movies and reviewers that the ranges get split.
+     */
+    public void testParallelScan() {
+        Random random = new Random(64);
+        for (int i = 0; i < 6000; i++) {
+            it.addReview(random.nextInt(300) + 1, random.nextInt(300) + 1,
+                random.nextInt(10) + 1);
+        }
+        it.deleteReviewer(7);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int id = 0; id <= 302; id += 3) {
+                assertEquals(it.similarMovieScan(id), it.similarMovieParallel(
+                    id, pool));
+                assertEquals(it.similarReviewerScan(id), it
+                    .similarReviewerParallel(id, pool));
+            }
+            assertEquals(-1, it.similarReviewerParallel(7, pool));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Tests the top-k queries: the list must come out in the order that
+     * repeatedly taking similarMovie and deleting the winner gives, and the
+     * other implementations must agree.
+     */
+    public void testTopKSimilar() {
+        Random random = new Random(14);
+        ConcurrentMovieRaterDB shared = new ConcurrentMovieRaterDB();
+        for (int i = 0; i < 1500; i++) {
+            int reviewer = random.nextInt(40) + 1;
+            int movie = random.nextInt(40) + 1;
+            int score = random.nextInt(10) + 1;
+            it.addReview(reviewer, movie, score);
+            shared.addReview(reviewer, movie, score);
+        }
+        CsrSnapshot snap = it.publishSnapshot();
+        for (int id = 0; id <= 41; id++) {
+            int[] movies = it.similarMovies(id, 6);
+            int[] reviewers = it.similarReviewers(id, 6);
+            assertTrue(Arrays.equals(movies, snap.similarMovies(id, 6)));
+            assertTrue(Arrays.equals(reviewers, shared.similarReviewers(id,
+                6)));
+            if (movies.length > 0) {
+                assertEquals(it.similarMovie(id), movies[0]);
+                assertEquals(it.similarReviewer(id), reviewers[0]);
+            }
+        }
+        assertEquals(0, it.similarMovies(99, 3).length);
+        assertEquals(0, it.similarMovies(1, 0).length);
+        assertEquals(0, it.similarMovies(1, -2).length);
+        assertEquals(40, it.similarMovies(1, 100).length + 1);
+
+        // a movie's score against the target does not depend on any other
+        // movie, so deleting each winner must reveal the next one in order
+        int[] top = it.similarMovies(3, 10);
+        for (int movie : top) {
+            assertEquals(movie, it.similarMovie(3));
+            assertTrue(it.deleteMovie(movie));
+        }
+    }
+
+
+    /**
+     * Tests that the similarity cache keeps giving the same answers as the
+     * full scan through adds, score changes, single deletes, whole row and
+     * column deletes, batches and clear.
+     */
+    public void testSimilarityCache() {
+        Random random = new Random(15);
+        for (int i = 0; i < 300; i++) {
+            it.addReview(random.nextInt(30) + 1, random.nextInt(30) + 1,
+                random.nextInt(10) + 1);
+        }
+        it.enableSimilarityCache(); // built from the existing ratings
+        for (int round = 0; round < 40; round++) {
+            for (int i = 0; i < 25; i++) {
+                int reviewer = random.nextInt(30) + 1;
+                int movie = random.nextInt(30) + 1;
+                int op = random.nextInt(30);
+                if (op == 0) {
+                    it.deleteReviewer(reviewer);
+                }
+                else if (op == 1) {
+                    it.deleteMovie(movie);
+                }
+                else if (op < 8) {
+                    it.deleteScore(reviewer, movie);
+                }
+                else {
+                    it.addReview(reviewer, movie, random.nextInt(10) + 1);
+                }
+            }
+            for (int movie = 0; movie <= 31; movie++) {
+                assertEquals(it.similarMovieScan(movie), it.similarMovie(
+                    movie));
+            }
+        }
+
+        RatingBatch batch = new RatingBatch();
+        batch.add(1, 1, 4);
+        batch.add(1, 2, 4);
+        batch.add(1, 1, 9);
+        it.addBatch(batch);
+        for (int movie = 0; movie <= 31; movie++) {
+            assertEquals(it.similarMovieScan(movie), it.similarMovie(movie));
+        }
+
+        it.clear();
+        assertEquals(-1, it.similarMovie(1));
+        it.addReview(1, 1, 5);
+        it.addReview(1, 2, 6);
+        assertEquals(2, it.similarMovie(1));
+    }
+
+
+    /**
+     * Tests that CachedMovieRater always answers like the database behind
+     * it while writes invalidate its entries, and that the counters add up.
+     */
+    public void testCachedMovieRater() {
+        MovieRaterDB plain = new MovieRaterDB();
+        CachedMovieRater cached = new CachedMovieRater(new MovieRaterDB(), 20);
+        Random random = new Random(16);
+        for (int i = 0; i < 4000; i++) {
+            int reviewer = random.nextInt(15) + 1;
+            int movie = random.nextInt(15) + 1;
+            int op = random.nextInt(40);
+            if (op == 0) {
+                assertEquals(plain.deleteReviewer(reviewer), cached
+                    .deleteReviewer(reviewer));
+            }
+            else if (op == 1) {
+                assertEquals(plain.deleteMovie(movie), cached.deleteMovie(
+                    movie));
+            }
+            else if (op < 5) {
+                assertEquals(plain.deleteScore(reviewer, movie), cached
+                    .deleteScore(reviewer, movie));
+            }
+            else if (op < 12) {
+                int score = random.nextInt(10) + 1;
+                assertEquals(plain.addReview(reviewer, movie, score), cached
+                    .addReview(reviewer, movie, score));
+            }
+            else {
+                assertEquals(plain.listReviewer(reviewer), cached
+                    .listReviewer(reviewer));
+                assertEquals(plain.listMovie(movie), cached.listMovie(movie));
+                assertEquals(plain.similarReviewer(reviewer), cached
+                    .similarReviewer(reviewer));
+                assertEquals(plain.similarMovie(movie), cached.similarMovie(
+                    movie));
+            }
+        }
+        assertEquals(plain.printRatings(), cached.printRatings());
+        assertTrue(cached.getHits() > 0);
+        assertTrue(cached.getEvictions() > 0);
+        assertTrue(cached.getInvalidations() > 0);
+        assertTrue(cached.size() <= 20);
+
+        long misses = cached.getMisses();
+        cached.clear();
+        assertEquals(0, cached.size());
+        assertNull(cached.listMovie(3));
+        assertNull(cached.listMovie(3));
+        assertEquals(misses + 1, cached.getMisses());
+        assertFalse(cached.deleteScore(1, 1));
+        assertNull(cached.listMovie(3)); // still cached
+        assertEquals(misses + 1, cached.getMisses());
+
+        // only answers indexed under the changed reviewer or movie go
+        cached.addReview(1, 1, 5);
+        cached.addReview(2, 1, 6);
+        cached.addReview(2, 2, 7);
+        cached.addReview(3, 4, 7);
+        cached.similarMovie(1); // indexed under movie 1, reviewers 1, 2
+        cached.similarMovie(2); // indexed under movie 2, reviewer 2
+        long invalidations = cached.getInvalidations();
+        assertTrue(cached.addReview(3, 5, 2)); // shares nothing with them
+        assertTrue(cached.deleteMovie(4));
+        assertEquals(invalidations, cached.getInvalidations());
+        assertFalse(cached.deleteScore(3, 1));
+        assertEquals(invalidations, cached.getInvalidations());
+        misses = cached.getMisses();
+        cached.similarMovie(1);
+        assertEquals(misses, cached.getMisses());
+        assertTrue(cached.deleteReviewer(2)); // drops both
+        assertEquals(invalidations + 2, cached.getInvalidations());
+
+        Exception thrown = null;
+        try {
+            new CachedMovieRater(new MovieRaterDB(), 0);
+        }
+        catch (IllegalArgumentException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+    }
+
+
+    /**
+     * Tests that the aggregates kept on the headers match a walk of the
+     * ratings after adds, updates, batches and every kind of delete.
+     */
+    public void testRatingStats() {
+        it.addReview(1, 3, 4);
+        it.addReview(2, 3, 10);
+        it.addReview(2, 3, 8); // update
+        it.addReview(2, 5, 8);
+        RatingStats movie = it.movieStats(3);
+        assertEquals(2, movie.getCount());
+        assertEquals(12, movie.getSum());
+        assertEquals(6.0, movie.getAverage(), 0.0);
+        assertEquals(1, movie.getHistogram(8));
+        assertEquals(0, movie.getHistogram(10));
+        assertEquals(0, movie.getHistogram(11));
+        assertEquals(2, it.reviewerStats(2).getHistogram(8));
+        assertNull(it.movieStats(4));
+        assertNull(it.reviewerStats(3));
+
+        Random random = new Random(17);
+        for (int round = 0; round < 20; round++) {
+            RatingBatch batch = new RatingBatch();
+            for (int i = 0; i < 80; i++) {
+                batch.add(random.nextInt(20) + 1, random.nextInt(20) + 1,
+                    random.nextInt(10) + 1);
+            }
+            it.addBatch(batch);
+            for (int i = 0; i < 40; i++) {
+                int reviewer = random.nextInt(20) + 1;
+                int movieId = random.nextInt(20) + 1;
+                int op = random.nextInt(20);
+                if (op == 0) {
+                    it.deleteReviewer(reviewer);
+                }
+                else if (op == 1) {
+                    it.deleteMovie(movieId);
+                }
+                else if (op < 8) {
+                    it.deleteScore(reviewer, movieId);
+                }
+                else {
+                    it.addReview(reviewer, movieId, random.nextInt(10) + 1);
+                }
+            }
+            CsrSnapshot snap = it.publishSnapshot();
+            for (int id = 0; id <= 21; id++) {
+                assertEquals(String.valueOf(snap.colStats(id)), String
+                    .valueOf(it.movieStats(id)));
+                assertEquals(String.valueOf(snap.rowStats(id)), String
+                    .valueOf(it.reviewerStats(id)));
+            }
+        }
+    }
+
+
+    /**
+     * Tests that DurableMovieRaterDB rebuilds the same ratings from its log
+     * after being reopened, including after clear and with a torn last
+     * record, that a failed log refuses further changes, and that a group
+     * that never fills is forced after the delay.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testWriteAheadLog() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("ratings", ".wal");
+        try {
+            MovieRaterDB plain = new MovieRaterDB();
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                16)) {
+                runWriter(durable, 0, 1);
+                runWriter(plain, 0, 1);
+                assertFalse(durable.addReview(1, 1, 11)); // not logged
+                assertTrue(durable.deleteMovie(4));
+                assertTrue(plain.deleteMovie(4));
+                assertTrue(durable.getSyncs() > 0);
+            }
+
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                16)) {
+                assertTrue(durable.getReplayed() > 0);
+                assertEquals(plain.printRatings(), durable.printRatings());
+                durable.clear();
+                durable.addReview(5, 6, 7);
+                durable.addReview(5, 8, 2);
+                durable.sync();
+            }
+            long size = Files.size(file);
+
+            // a crash halfway through writing one more record
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                1)) {
+                durable.addReview(9, 9, 9);
+            }
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                1)) {
+                assertEquals(3, durable.getReplayed()); // clear and 2 adds
+                assertEquals("5: (6, 7) (8, 2)", durable.printRatings());
+                assertEquals(size, Files.size(file)); // torn tail cut off
+                durable.addReview(9, 9, 9);
+            }
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                1)) {
+                assertEquals("9: 9", durable.listReviewer(9));
+            }
+
+            // an interrupt makes the channel close under the write; the
+            // log must refuse to go on rather than reuse its buffer
+            WriteAheadLog log = new WriteAheadLog(file, 4, 60000,
+                new MovieRaterDB());
+            log.append(WriteAheadLog.ADD, 9, 10, 1);
+            IOException failed = null;
+            Thread.currentThread().interrupt();
+            try {
+                log.sync();
+            }
+            catch (IOException e) {
+                failed = e;
+            }
+            assertTrue(Thread.interrupted());
+            assertNotNull(failed);
+            for (int i = 0; i < 2; i++) {
+                failed = null;
+                try {
+                    log.append(WriteAheadLog.ADD, 9, 11, 1);
+                }
+                catch (IOException e) {
+                    failed = e;
+                }
+                assertNotNull(failed);
+            }
+            log.close();
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                1)) {
+                assertNull(durable.listMovie(11));
+                assertEquals("9: 9", durable.listMovie(9));
+                // a change the log did not take is not applied either
+                RuntimeException unlogged = null;
+                Thread.currentThread().interrupt();
+                try {
+                    durable.deleteReviewer(9);
+                }
+                catch (UncheckedIOException e) {
+                    unlogged = e;
+                }
+                assertTrue(Thread.interrupted());
+                assertNotNull(unlogged);
+                assertEquals("9: 9", durable.listReviewer(9));
+            }
+
+            // a group that never fills is still forced after the delay
+            long before = Files.size(file);
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                1000, 20)) {
+                assertTrue(durable.addReview(9, 12, 4));
+                long deadline = System.nanoTime() + 10_000_000_000L;
+                while (durable.getSyncs() == 0 && System.nanoTime()
+                    < deadline) {
+                    Thread.sleep(1);
+                }
+                assertEquals(1, durable.getSyncs());
+                assertEquals(before + WriteAheadLog.RECORD_BYTES, Files.size(
+                    file));
+            }
+
+            Files.write(file, "not a log".getBytes());
+            IOException thrown = null;
+            try {
+                new DurableMovieRaterDB(file, 1).close();
+            }
+            catch (IOException e) {
+                thrown = e;
+            }
+            assertNotNull(thrown);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+
+    /**
+     * Tests that a durable database checkpoint empties the log, and that
+     * reopening restores the checkpoint and replays only the changes made
+     * after it, including after a crash between the two steps.
+     *
+     * @throws IOException
+     */
+    public void testDurableCheckpoint() throws IOException {
+        Path file = Files.createTempFile("ratings", ".wal");
+        Path checkpoint = Paths.get(file
+            + DurableMovieRaterDB.CHECKPOINT_SUFFIX);
+        try {
+            MovieRaterDB plain = new MovieRaterDB();
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                16)) {
+                runWriter(durable, 0, 1);
+                runWriter(plain, 0, 1);
+                long logged = Files.size(file);
+                assertEquals(plain.matrix().getNodeCount(), durable
+                    .checkpoint());
+                assertTrue(Files.size(file) < logged);
+                assertTrue(durable.addReview(500, 1, 7));
+                assertTrue(plain.addReview(500, 1, 7));
+                assertTrue(durable.addReview(500, 2, 3));
+                assertTrue(plain.addReview(500, 2, 3));
+                assertTrue(durable.deleteScore(500, 1));
+                assertTrue(plain.deleteScore(500, 1));
+            }
+            byte[] tail = Files.readAllBytes(file);
+
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                16)) {
+                assertEquals(3, durable.getReplayed()); // only the tail
+                assertEquals(plain.printRatings(), durable.printRatings());
+                // checkpoint, then put the old log back as if the truncate
+                // never happened: replaying it again changes nothing
+                durable.checkpoint();
+            }
+            Files.write(file, tail);
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                16)) {
+                assertEquals(3, durable.getReplayed());
+                assertEquals(plain.printRatings(), durable.printRatings());
+                durable.clear(); // the CLEAR record hides the checkpoint
+            }
+            try (DurableMovieRaterDB durable = new DurableMovieRaterDB(file,
+                16)) {
+                assertEquals("", durable.printRatings());
+            }
+        }
+        finally {
+            Files.deleteIfExists(checkpoint);
+            Files.delete(file);
+        }
+    }
+
+
+    /**
+     * Tests that a checkpoint restores the same ratings, that the restored
+     * matrix is fully linked for later writes, and that a damaged file is
+     * refused without touching the database.
+     *
+     * @throws IOException
+     */
+    public void testCheckpointRestore() throws IOException {
+        Random random = new Random(19);
+        for (int i = 0; i < 3000; i++) {
+            it.addReview(random.nextInt(200) + 1, random.nextInt(300) + 1,
+                random.nextInt(10) + 1);
+        }
+        it.addReview(Integer.MAX_VALUE, 1, 3); // far apart ids
+        it.addReview(1, Integer.MAX_VALUE, 10);
+        Path file = Files.createTempFile("ratings", ".ckpt");
+        try {
+            long stored = it.movieStats(Integer.MAX_VALUE).getCount();
+            for (int movie = 1; movie <= 300; movie++) {
+                RatingStats stats = it.movieStats(movie);
+                stored += stats == null ? 0 : stats.getCount();
+            }
+            assertEquals(stored, it.checkpoint(file));
+            assertTrue(Files.size(file) < 2 * stored); // under 2 bytes each
+
+            MovieRaterDB restored = new MovieRaterDB();
+            restored.addReview(7, 7, 7); // replaced by the restore
+            restored.restore(file);
+            assertEquals(it.printRatings(), restored.printRatings());
+            for (int id = 1; id <= 300; id += 7) {
+                assertEquals(it.listMovie(id), restored.listMovie(id));
+                assertEquals(String.valueOf(it.movieStats(id)), String
+                    .valueOf(restored.movieStats(id)));
+                assertEquals(it.similarMovie(id), restored.similarMovie(id));
+            }
+
+            // the restored links must hold up under more writes
+            for (int i = 0; i < 500; i++) {
+                int reviewer = random.nextInt(200) + 1;
+                int movie = random.nextInt(300) + 1;
+                if (i % 3 == 0) {
+                    it.deleteScore(reviewer, movie);
+                    restored.deleteScore(reviewer, movie);
+                }
+                else {
+                    it.addReview(reviewer, movie, 4);
+                    restored.addReview(reviewer, movie, 4);
+                }
+            }
+            it.deleteMovie(5);
+            restored.deleteMovie(5);
+            it.deleteReviewer(6);
+            restored.deleteReviewer(6);
+            assertEquals(it.printRatings(), restored.printRatings());
+
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+            String before = restored.printRatings();
+            IOException thrown = null;
+            try {
+                restored.restore(file);
+            }
+            catch (IOException e) {
+                thrown = e;
+            }
+            assertNotNull(thrown);
+            assertEquals(before, restored.printRatings());
+
+            // reviewer 1 rated movies 2 and 3: after the 20 byte header come
+            // the row delta, the count, then the col deltas 2 and 1; make
+            // the second one -1 so the cols go backwards
+            MovieRaterDB small = new MovieRaterDB();
+            small.addReview(1, 2, 5);
+            small.addReview(1, 3, 6);
+            assertEquals(2, small.checkpoint(file));
+            bytes = Files.readAllBytes(file);
+            assertEquals(4, bytes[22]); // zigzag of +2
+            assertEquals(2, bytes[23]); // zigzag of +1
+            bytes[23] = 1; // zigzag of -1
+            Files.write(file, bytes);
+            thrown = null;
+            try {
+                restored.restore(file);
+            }
+            catch (IOException e) {
+                thrown = e;
+            }
+            assertNotNull(thrown);
+            assertEquals(before, restored.printRatings());
+
+            // one rating (row, 2, 5) with a bad row, col or count: row 0,
+            // row -3, col 0, and a count of 2^32
+            int[][] bodies = { { 0, 1, 4, 5 }, { 5, 1, 4, 5 }, { 2, 1, 0,
+                5 }, { 2, 0x80, 0x80, 0x80, 0x80, 0x10, 4, 5 } };
+            long[] counts = { 1, 1, 1, 1L << 32 };
+            for (int i = 0; i < bodies.length; i++) {
+                writeCheckpoint(file, counts[i], bodies[i]);
+                thrown = null;
+                try {
+                    restored.restore(file);
+                }
+                catch (IOException e) {
+                    thrown = e;
+                }
+                assertNotNull(thrown);
+                assertEquals(before, restored.printRatings());
+            }
+            writeCheckpoint(file, 1, 2, 1, 4, 5); // the same, but good
+            restored.restore(file);
+            assertEquals("1: (2, 5)", restored.printRatings());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+
+    /**
+     * Write a one row checkpoint file by hand.
+     *
+     * @param file
+     *            the file
+     * @param ratings
+     *            the rating count in the header
+     * @param body
+     *            the bytes after the header
+     * @throws IOException
+     */
+    private static void writeCheckpoint(Path file, long ratings, int... body)
+        throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(20 + body.length);
+        bytes.putInt(0x4D52434B).putInt(1).putInt(1).putLong(ratings);
+        for (int b : body) {
+            bytes.put((byte)b);
+        }
+        Files.write(file, bytes.array());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * ZipfGenerator stays in range, favors low ids, and repeats for a
+     * seed.
+     */
+    public void testZipfGenerator() {
+        ZipfGenerator zipf = new ZipfGenerator(100, 1.0, 42);
+        ZipfGenerator again = new ZipfGenerator(100, 1.0, 42);
+        int[] counts = new int[101];
+        for (int i = 0; i < 10000; i++) {
+            int id = zipf.next();
+            assertTrue(id >= 1 && id <= 100);
+            assertEquals(id, again.next());
+            counts[id]++;
+        }
+        assertTrue(counts[1] > counts[2]);
+        assertTrue(counts[2] > counts[50]);
+
+        ZipfGenerator one = new ZipfGenerator(1, 1.0, 7);
+        assertEquals(1, one.next());
+
+        Exception thrown = null;
+        try {
+            new ZipfGenerator(0, 1.0, 7);
+        }
+        catch (IllegalArgumentException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Tests that the latency histogram buckets stay within 12.5%, and that
+     * InstrumentedMovieRater passes calls through while timing them and
+     * reporting the matrix counters.
+     */
+    public void testInstrumentedMovieRater() {
+        for (long v = 0; v < 1L << 40; v = v * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucket(v);
+            assertTrue(LatencyHistogram.highest(bucket) >= v);
+            assertTrue(bucket == 0 || LatencyHistogram.highest(bucket
+                - 1) < v);
+            assertTrue(LatencyHistogram.highest(bucket) - v <= v / 8);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(LatencyHistogram
+            .bucket(Long.MAX_VALUE)));
+
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(500.5, h.getMean(), 0.001);
+        assertEquals(1000, h.getMax());
+        assertTrue(Math.abs(h.getPercentile(50) - 500) <= 500 / 8);
+        assertTrue(Math.abs(h.getPercentile(99) - 990) <= 990 / 8);
+
+        MovieRaterDB db = new MovieRaterDB();
+        MatrixCounters counters = db.enableCounters();
+        assertSame(counters, db.enableCounters());
+        InstrumentedMovieRater inst = new InstrumentedMovieRater(db,
+            counters);
+        inst.addReview(1, 2, 5);
+        inst.addReview(1, 4, 6);
+        inst.addReview(2, 2, 7);
+        inst.addReview(2, 4, 8);
+        inst.addReview(3, 4, 1);
+        assertFalse(inst.addReview(3, 4, 11));
+        assertEquals("1: 5 6", inst.listReviewer(1));
+        assertEquals(2, inst.similarReviewer(1));
+        assertEquals(1, db.similarReviewerScan(3));
+        assertTrue(inst.deleteScore(3, 4));
+
+        assertEquals(6, inst.getLatency("addReview").getCount());
+        assertEquals(1, inst.getLatency("similarReviewer").getCount());
+        assertNull(inst.getLatency("nothing"));
+        assertEquals(4, counters.getLiveNodes());
+        assertEquals(2, counters.getLiveRows());
+        assertEquals(2, counters.getLiveCols());
+        assertEquals(10, counters.getHeaderLookups());
+        assertEquals(5, counters.getHeadersCreated());
+        assertEquals(0, counters.getRowHops()); // fingers skip the walks
+        assertEquals(3, counters.getJoins()); // rows 0 (empty), 1 and 2
+        assertTrue(counters.getFanOutNodes() > 0);
+
+        String text = inst.snapshot();
+        assertTrue(text.contains("addReview"));
+        assertFalse(text.contains("printRatings"));
+        assertTrue(text.contains("live nodes 4, rows 2, cols 2"));
+        String json = inst.toJson();
+        assertTrue(json.startsWith("{\"latency\":{\"addReview\":{\"count\":6"));
+        assertTrue(json.contains("\"liveNodes\":4"));
+
+        inst.clear();
+        inst.addReview(9, 9, 9);
+        assertEquals(1, counters.getLiveNodes());
+        inst.reset();
+        assertEquals(0, inst.getLatency("addReview").getCount());
+        assertEquals(0, counters.getHeaderLookups());
+        assertEquals("{\"latency\":{}}", new InstrumentedMovieRater(db)
+            .toJson());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Tests that addReviews refuses the same entries addReview does and
+     * leaves the same ratings as adding them one at a time.
+     */
+    public void testAddReviews() {
+        Random random = new Random(22);
+        MovieRaterDB batched = new MovieRaterDB();
+        MovieRaterDB single = new MovieRaterDB();
+        for (int i = 0; i < 300; i++) {
+            int reviewer = random.nextInt(40) + 1;
+            int movie = random.nextInt(60) + 1;
+            batched.addReview(reviewer, movie, 3);
+            single.addReview(reviewer, movie, 3);
+        }
+
+        int n = 2000;
+        int[] reviewers = new int[n];
+        int[] movies = new int[n];
+        int[] scores = new int[n];
+        for (int i = 0; i < n; i++) {
+            reviewers[i] = random.nextInt(50) - 2; // some are not positive
+            movies[i] = random.nextInt(70) - 2;
+            scores[i] = random.nextInt(12); // some are out of range
+        }
+        BitSet added = batched.addReviews(reviewers, movies, scores);
+        for (int i = 0; i < n; i++) {
+            assertEquals(single.addReview(reviewers[i], movies[i], scores[i]),
+                added.get(i));
+        }
+        assertEquals(single.printRatings(), batched.printRatings());
+        for (int id = 1; id <= 70; id++) {
+            assertEquals(single.listMovie(id), batched.listMovie(id));
+            assertEquals(String.valueOf(single.movieStats(id)), String
+                .valueOf(batched.movieStats(id)));
+        }
+
+        assertTrue(batched.addReviews(new int[0], new int[0], new int[0])
+            .isEmpty());
+        Exception thrown = null;
+        try {
+            batched.addReviews(new int[2], new int[1], new int[2]);
+        }
+        catch (IllegalArgumentException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Tests that inserts and removes starting from the row and col fingers
+     * keep every list in order under ascending, descending and random
+     * writes mixed with removals, and that appending in order does not
+     * walk.
+     */
+    public void testFingerSearch() {
+        SparseMatrix matrix = new SparseMatrix();
+        MatrixCounters counters = new MatrixCounters();
+        matrix.setCounters(counters);
+        for (int col = 1; col <= 500; col++) {
+            matrix.insert(1, col, col % 10 + 1);
+            matrix.insert(col, 1, col % 10 + 1);
+        }
+        assertEquals(0, counters.getRowHops());
+        assertEquals(0, counters.getColHops());
+
+        Random random = new Random(23);
+        int[][] model = new int[41][41]; // 0 where there is no value
+        SparseMatrix fresh = new SparseMatrix();
+        for (int i = 0; i < 6000; i++) {
+            int row = random.nextInt(40) + 1;
+            int col = random.nextInt(40) + 1;
+            int kind = random.nextInt(20);
+            if (kind < 6) {
+                // a short run up or down the row, like a reviewer's session
+                int step = kind < 3 ? 1 : -1;
+                for (int c = col; c >= 1 && c <= 40 && c < col + 5
+                    && c > col - 5; c += step) {
+                    fresh.insert(row, c, c % 10 + 1);
+                    model[row][c] = c % 10 + 1;
+                }
+            }
+            else if (kind < 14) {
+                fresh.insert(row, col, kind - 4);
+                model[row][col] = kind - 4;
+            }
+            else if (kind < 18) {
+                assertEquals(model[row][col] != 0, fresh.remove(row, col));
+                model[row][col] = 0;
+            }
+            else if (kind == 18) {
+                fresh.removeRow(row);
+                Arrays.fill(model[row], 0);
+            }
+            else {
+                fresh.removeCol(col);
+                for (int r = 0; r <= 40; r++) {
+                    model[r][col] = 0;
+                }
+            }
+        }
+        for (int id = 1; id <= 40; id++) {
+            StringBuilder rowList = new StringBuilder(id + ":");
+            StringBuilder colList = new StringBuilder(id + ":");
+            for (int other = 1; other <= 40; other++) {
+                if (model[id][other] != 0) {
+                    rowList.append(" " + model[id][other]);
+                }
+                if (model[other][id] != 0) {
+                    colList.append(" " + model[other][id]);
+                }
+            }
+            String row = fresh.rowList(id);
+            assertEquals(rowList.indexOf(" ") < 0 ? null : rowList
+                .toString(), row);
+            String col = fresh.colList(id);
+            assertEquals(colList.indexOf(" ") < 0 ? null : colList
+                .toString(), col);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Tests that rows and cols long enough for skip levels stay correct
+     * under random inserts, batches and removals, and that a write into a
+     * long col only walks a few nodes.
+     */
+    public void testSkipIndex() {
+        SparseMatrix matrix = new SparseMatrix();
+        MatrixCounters counters = new MatrixCounters();
+        matrix.setCounters(counters);
+        Random random = new Random(24);
+        int size = 4000;
+        int[] model = new int[size + 1]; // col 1's value for each row
+        for (int i = 0; i < 20000; i++) {
+            int row = random.nextInt(size) + 1;
+            if (random.nextInt(4) == 0) {
+                assertEquals(model[row] != 0, matrix.remove(row, 1));
+                model[row] = 0;
+            }
+            else {
+                model[row] = random.nextInt(10) + 1;
+                matrix.insert(row, 1, model[row]);
+            }
+        }
+        RatingBatch batch = new RatingBatch();
+        for (int i = 0; i < 500; i++) {
+            int row = random.nextInt(size) + 1;
+            model[row] = random.nextInt(10) + 1;
+            batch.add(row, 1, model[row]);
+        }
+        matrix.insertAll(batch);
+
+        counters.reset();
+        for (int i = 0; i < 1000; i++) {
+            int row = random.nextInt(size) + 1;
+            model[row] = random.nextInt(10) + 1;
+            matrix.insert(row, 1, model[row]);
+        }
+        assertTrue(counters.getColHops() < 50 * 1000);
+
+        // a long row crossing the long col, then both removed
+        for (int col = 2; col <= size; col++) {
+            matrix.insert(7, col, col % 10 + 1);
+        }
+        model[7] = 3;
+        matrix.insert(7, 1, 3);
+        for (int col = size; col >= 2; col -= 3) {
+            assertTrue(matrix.remove(7, col));
+        }
+        StringBuilder expected = new StringBuilder("1:");
+        for (int row = 1; row <= size; row++) {
+            if (model[row] != 0) {
+                expected.append(" " + model[row]);
+            }
+        }
+        assertEquals(expected.toString(), matrix.colList(1));
+        assertEquals("7", matrix.rowList(7).substring(0, 1));
+        assertEquals(3, matrix.peekRowHeader(7).getnNode().getValue());
+
+        assertTrue(matrix.removeRow(7));
+        for (int row = 1; row < size; row += 2) {
+            matrix.remove(row, 1);
+        }
+        assertTrue(matrix.removeCol(1));
+        assertEquals("", matrix.matrixList());
+        for (int row = size; row >= 1; row--) {
+            matrix.insert(row, 1, 5); // rebuilds from an empty col
+        }
+        assertEquals(size, matrix.peekColHeader(1).getCount());
+        assertEquals(size, matrix.getNodeCount());
+
+        // a bulk loaded row is indexed as it is appended, so lookups in it
+        // (which must not build anything) are quick from the start
+        SparseMatrix loaded = new SparseMatrix();
+        SparseMatrix.Appender appender = loaded.appender();
+        for (int col = 2; col <= 2 * size; col += 2) {
+            appender.append(1, col, 4);
+        }
+        loaded.setCounters(counters);
+        counters.reset();
+        for (int col = 1; col <= 2 * size; col += 37) {
+            assertEquals(col % 2 == 0, loaded.contains(1, col));
+        }
+        assertTrue(counters.getRowHops() < 50 * 110);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Tests that the galloping similarity kernel gives the same scores as
+     * the plain merge, on lopsided and even pairs, and that the snapshot's
+     * pairwise scores match the ratings.
+     */
+    public void testSimilarityKernel() {
+        Random random = new Random(25);
+        int[] ids = new int[6000];
+        byte[] values = new byte[6000];
+        for (int trial = 0; trial < 200; trial++) {
+            int shortLength = random.nextInt(8);
+            int longLength = random.nextInt(5000);
+            int gap = random.nextInt(5) + 1; // ids in the long list
+            int id = 0;
+            for (int i = 0; i < longLength; i++) {
+                id += random.nextInt(gap) + 1;
+                ids[shortLength + i] = id;
+                values[shortLength + i] = (byte)(random.nextInt(10) + 1);
+            }
+            id = 0;
+            for (int i = 0; i < shortLength; i++) {
+                id += random.nextInt(longLength * gap / 4 + 2) + 1;
+                ids[i] = id;
+                values[i] = (byte)(random.nextInt(10) + 1);
+            }
+            int end = shortLength + longLength;
+            double expected = SimilarityKernel.merge(ids, values, 0,
+                shortLength, shortLength, end);
+            assertEquals(expected, SimilarityKernel.gallop(ids, values, 0,
+                shortLength, shortLength, end), 0.0);
+            assertEquals(expected, SimilarityKernel.meanDifference(ids,
+                values, shortLength, end, 0, shortLength), 0.0);
+        }
+
+        // movie 1 is rated by every reviewer, movie 2 by a few
+        for (int reviewer = 1; reviewer <= 3000; reviewer++) {
+            it.addReview(reviewer, 1, reviewer % 10 + 1);
+        }
+        it.addReview(10, 2, 1); // 10 rated movie 1 a 1
+        it.addReview(25, 2, 9); // 25 rated it a 6
+        it.addReview(3001, 2, 4); // did not rate movie 1
+        it.addReview(10, 3, 5);
+        CsrSnapshot snap = it.publishSnapshot();
+        assertEquals(1.5, snap.movieSimilarity(1, 2), 0.0);
+        assertEquals(1.5, snap.movieSimilarity(2, 1), 0.0);
+        assertEquals(1.5, snap.movieSimilarity(1, 2, false), 0.0);
+        assertEquals(-1.0, snap.movieSimilarity(1, 4), 0.0);
+        assertEquals(-1.0, snap.movieSimilarity(3, 3001), 0.0);
+        assertEquals(6.5, snap.reviewerSimilarity(10, 25), 0.0);
+        assertEquals(-1.0, snap.reviewerSimilarity(11, 3001), 0.0);
+        assertEquals(-1.0, snap.reviewerSimilarity(10, 9999), 0.0);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Tests that the header directory links new headers behind the right
+     * predecessor when the dense ids are far apart, so the search has to go
+     * through the bitmap summaries, and when headers are removed again.
+     */
+    public void testHeaderDirectorySummaries() {
+        HeaderDirectory directory =
+            new HeaderDirectory(new SparseMatrix.HeaderNode(0));
+        BitSet expected = new BitSet();
+        Random random = new Random(25);
+        for (int i = 0; i < 4000; i++) {
+            // mostly spread out, sometimes close to an id already there
+            int id = i % 4 == 0 && !expected.isEmpty()
+                ? Math.max(1, expected.previousSetBit(random.nextInt(
+                    HeaderDirectory.DENSE_LIMIT)) + random.nextInt(130) - 65)
+                : 1 + random.nextInt(HeaderDirectory.DENSE_LIMIT - 1);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.get(id), directory.remove(id) != null);
+                expected.clear(id);
+            }
+            else {
+                assertEquals(id, directory.findOrCreate(id).getIndex());
+                expected.set(id);
+            }
+        }
+        assertEquals(expected.cardinality(), directory.size());
+        SparseMatrix.HeaderNode node = directory.head().getN();
+        for (int id = expected.nextSetBit(0); id >= 0; id =
+            expected.nextSetBit(id + 1)) {
+            assertEquals(id, node.getIndex());
+            node = node.getN();
+        }
+        assertNull(node);
+    }
 }
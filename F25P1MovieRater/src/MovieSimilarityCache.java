@@ -0,0 +1,417 @@
+import java.util.Arrays;
+
+/**
+ * Keeps, for every pair of movies that share a reviewer, the running sum of
+ * absolute score differences and the number of shared reviewers, so that
+ * similarMovie is a lookup instead of a walk. It listens to a SparseMatrix
+ * and only touches the pairs a change affects:
+ *
+ * -a new or removed rating (r, m) changes the pair (m, m') for every other
+ * movie m' that reviewer r rated, an O(row length) update
+ * -a changed score changes the diffs of those same pairs, not the counts
+ *
+ * Each movie has a PairTable with its partners, so every pair is stored
+ * twice, once from each side. The best match of a movie is cached too. A
+ * pair change that makes a partner better than the cached best replaces
+ * it, and one that leaves a worse partner worse changes nothing, so only a
+ * change that worsens or removes the best match marks the movie stale.
+ * Stale movies are recomputed from their table on the next lookup.
+ *
+ * The pair tables hold one entry per co-rated movie pair, which can be far
+ * more than the number of ratings, so the cache is opt-in
+ * (MovieRaterDB.enableSimilarityCache()).
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class MovieSimilarityCache implements SparseMatrix.MatrixListener {
+
+    private static final int NONE = Integer.MIN_VALUE; // stands for no score
+
+    private final IntIntHashMap slots; // movie id -> index into tables
+    private PairTable[] tables; // pair table of each movie, by slot
+    private int[] freeSlots; // slots of movies that lost all partners
+    private int freeCount; // number of entries in freeSlots
+    private int highWater; // slots ever handed out
+
+    /**
+     * Create a cache for the current contents of a matrix. The caller must
+     * still attach it with matrix.setListener(cache).
+     *
+     * @param matrix
+     *            - the matrix to read the existing ratings from
+     */
+    MovieSimilarityCache(SparseMatrix matrix) {
+        slots = new IntIntHashMap();
+        tables = new PairTable[16];
+        freeSlots = new int[16];
+        SparseMatrix.HeaderNode row = matrix.getRowHeaderList();
+        while (row != null) {
+            // every pair in this row, each counted once from each side
+            for (SparseMatrix.Node a = row.getnNode(); a != null; a = a
+                .getRight()) {
+                for (SparseMatrix.Node b = a.getRight(); b != null; b = b
+                    .getRight()) {
+                    update(a.getCol(), b.getCol(), Math.abs(a.getValue() - b
+                        .getValue()), 1);
+                }
+            }
+            row = row.getN();
+        }
+    }
+
+
+    /**
+     * Return the index for the movie most similar to the specified one,
+     * with the same rules as MovieRaterDB.similarMovie.
+     *
+     * @param movie
+     *            - the movie to find match for
+     * @return The best matching index, -1 if this movie does not exist or
+     *         there is no suitable match
+     */
+    int best(int movie) {
+        int slot = slots.get(movie);
+        if (slot == IntIntHashMap.MISSING) {
+            return -1; // no movie shares a reviewer with it
+        }
+        PairTable table = tables[slot];
+        if (table.stale) {
+            table.recompute();
+        }
+        return table.bestId;
+    }
+
+
+    /**
+     * Get the number of movies that share a reviewer with some other movie.
+     *
+     * @return the number of movies with a pair table
+     */
+    int size() {
+        return slots.size();
+    }
+
+
+    @Override
+    public void inserted(SparseMatrix.Node node) {
+        forEachPartner(node, NONE, node.getValue());
+    }
+
+
+    @Override
+    public void changed(SparseMatrix.Node node, int oldValue) {
+        forEachPartner(node, oldValue, node.getValue());
+    }
+
+
+    @Override
+    public void removing(SparseMatrix.Node node) {
+        forEachPartner(node, node.getValue(), NONE);
+    }
+
+
+    /**
+     * Move the pair between a node's movie and every other movie in the
+     * node's row from the old score to the new one.
+     *
+     * @param node
+     *            - the node whose row is walked
+     * @param oldValue
+     *            - score the pairs hold for the node now, NONE if none
+     * @param newValue
+     *            - score they should hold, NONE to take it out
+     */
+    private void forEachPartner(
+        SparseMatrix.Node node,
+        int oldValue,
+        int newValue) {
+        int countDelta = (newValue == NONE ? 0 : 1) - (oldValue == NONE
+            ? 0
+            : 1);
+        for (SparseMatrix.Node other = node.getLeft(); other != null;
+            other = other.getLeft()) {
+            update(node.getCol(), other.getCol(), diff(newValue, other)
+                - diff(oldValue, other), countDelta);
+        }
+        for (SparseMatrix.Node other = node.getRight(); other != null;
+            other = other.getRight()) {
+            update(node.getCol(), other.getCol(), diff(newValue, other)
+                - diff(oldValue, other), countDelta);
+        }
+    }
+
+
+    /**
+     * Get the absolute score difference a score adds to a pair.
+     *
+     * @param value
+     *            - a score, or NONE
+     * @param other
+     *            - the partner's node
+     * @return |value - other's score|, or 0 for NONE
+     */
+    private static int diff(int value, SparseMatrix.Node other) {
+        return value == NONE ? 0 : Math.abs(value - other.getValue());
+    }
+
+
+    /**
+     * Apply a change to one pair, from both sides.
+     *
+     * @param a
+     *            - one movie
+     * @param b
+     *            - the other movie
+     * @param diffDelta
+     *            - change to the diff sum
+     * @param countDelta
+     *            - change to the shared count
+     */
+    private void update(int a, int b, int diffDelta, int countDelta) {
+        table(a).update(b, diffDelta, countDelta);
+        table(b).update(a, diffDelta, countDelta);
+        release(a);
+        release(b);
+    }
+
+
+    /**
+     * Get the pair table of a movie, creating it if needed.
+     *
+     * @param movie
+     *            - the movie
+     * @return its pair table
+     */
+    private PairTable table(int movie) {
+        int slot = slots.get(movie);
+        if (slot != IntIntHashMap.MISSING) {
+            return tables[slot];
+        }
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        }
+        else {
+            if (highWater == tables.length) {
+                tables = Arrays.copyOf(tables, highWater * 2);
+            }
+            slot = highWater++;
+        }
+        if (tables[slot] == null) {
+            tables[slot] = new PairTable();
+        }
+        slots.put(movie, slot);
+        return tables[slot];
+    }
+
+
+    /**
+     * Drop a movie's pair table if it has no partners left. The table is
+     * kept in its slot to be reused by the next new movie.
+     *
+     * @param movie
+     *            - the movie
+     */
+    private void release(int movie) {
+        int slot = slots.get(movie);
+        PairTable table = tables[slot];
+        if (table.size == 0) {
+            table.bestId = -1; // clean for the next movie to use the slot
+            table.stale = false;
+            slots.remove(movie);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Partners of one movie: open addressing table (linear probing, backward
+     * shift on remove) from partner id to diff sum and shared count, plus
+     * the cached best partner.
+     */
+    private static class PairTable {
+        private int[] keys; // partner id stored in each slot
+        private long[] diffs; // sum of |score difference| for each slot
+        private int[] counts; // shared reviewers, 0 if the slot is empty
+        private int size; // number of partners
+
+        private int bestId = -1; // best partner, -1 if none
+        private long bestDiff; // its diff sum
+        private int bestCount; // its shared count
+        private boolean stale; // bestId must be recomputed
+
+        /**
+         * Create a new, empty PairTable.
+         */
+        PairTable() {
+            keys = new int[8];
+            diffs = new long[8];
+            counts = new int[8];
+        }
+
+
+        /**
+         * Change the aggregates of one partner, adding or dropping it as
+         * needed, and keep the cached best up to date.
+         *
+         * @param partner
+         *            - the other movie
+         * @param diffDelta
+         *            - change to the diff sum
+         * @param countDelta
+         *            - change to the shared count
+         */
+        void update(int partner, int diffDelta, int countDelta) {
+            int slot = slotFor(partner);
+            if (counts[slot] == 0) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow(); // keep the table at most half full
+                    slot = slotFor(partner);
+                }
+                keys[slot] = partner;
+                size++;
+            }
+            diffs[slot] += diffDelta;
+            counts[slot] += countDelta;
+
+            if (counts[slot] == 0) {
+                delete(slot);
+                stale |= partner == bestId;
+            }
+            else if (stale) {
+                return; // recompute() will look at everything anyway
+            }
+            else if (bestId == -1 || better(diffs[slot], counts[slot],
+                partner, bestDiff, bestCount, bestId)) {
+                bestId = partner; // new or improved partner takes the lead
+                bestDiff = diffs[slot];
+                bestCount = counts[slot];
+            }
+            else if (partner == bestId) {
+                stale = true; // the best got worse, someone may pass it
+            }
+        }
+
+
+        /**
+         * Find the best partner by looking at every slot.
+         */
+        void recompute() {
+            bestId = -1;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (counts[slot] != 0 && (bestId == -1 || better(diffs[slot],
+                    counts[slot], keys[slot], bestDiff, bestCount, bestId))) {
+                    bestId = keys[slot];
+                    bestDiff = diffs[slot];
+                    bestCount = counts[slot];
+                }
+            }
+            stale = false;
+        }
+
+
+        /**
+         * Compare two partners the way SimilarityAccumulator.best() does:
+         * the lower mean difference wins, then the lower id.
+         *
+         * @param diffA
+         *            - diff sum of the first partner
+         * @param countA
+         *            - shared count of the first partner
+         * @param idA
+         *            - id of the first partner
+         * @param diffB
+         *            - diff sum of the second partner
+         * @param countB
+         *            - shared count of the second partner
+         * @param idB
+         *            - id of the second partner
+         * @return true if the first partner ranks ahead of the second
+         */
+        private static boolean better(
+            long diffA,
+            int countA,
+            int idA,
+            long diffB,
+            int countB,
+            int idB) {
+            double scoreA = (double)diffA / countA;
+            double scoreB = (double)diffB / countB;
+            return scoreA < scoreB || (scoreA == scoreB && idA < idB);
+        }
+
+
+        /**
+         * Find the slot that holds a partner, or the empty slot it should
+         * go in.
+         *
+         * @param partner
+         *            - id to look for
+         * @return the slot index
+         */
+        private int slotFor(int partner) {
+            int mask = keys.length - 1;
+            int hash = partner * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (counts[slot] != 0 && keys[slot] != partner) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+
+        /**
+         * Empty a slot, shifting later entries of the probe run back so
+         * lookups never need tombstones.
+         *
+         * @param slot
+         *            - the slot to empty
+         */
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (counts[next] != 0) {
+                int hash = keys[next] * 0x9E3779B9;
+                int home = (hash ^ (hash >>> 16)) & mask;
+                // move next into the hole if its home is not in (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    diffs[hole] = diffs[next];
+                    counts[hole] = counts[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            counts[hole] = 0;
+            diffs[hole] = 0;
+            size--;
+        }
+
+
+        /**
+         * Double the table and move every partner over.
+         */
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldDiffs = diffs;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            diffs = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = slotFor(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    diffs[slot] = oldDiffs[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,451 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sparse matrix with the same behavior as SparseMatrix, but without a Node
+ * object per rating. Every rating lives in a numbered slot, and the slot's
+ * row, col, value and its four links are kept in parallel primitive arrays
+ * (struct-of-arrays).
+ *
+ * -a link holds the slot number of the neighbor, or NIL
+ * -slots freed by remove/removeRow/removeCol go on a free list (chained
+ * through the right array) and are handed out again before the arrays grow
+ * -the row and col headers are IntIntHashMaps from id to first slot, and
+ * only ids that have ratings have a header
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class PackedSparseMatrix {
+
+    private static final int NIL = -1; // "no slot" link value
+    private static final int INITIAL_CAPACITY = 16; // starting slot count
+
+    private int[] rows; // row (reviewer) of each slot
+    private int[] cols; // col (movie) of each slot
+    private byte[] values; // value (rating) of each slot
+    private int[] left; // slot to the left
+    private int[] right; // slot to the right, next free slot if free
+    private int[] up; // slot above
+    private int[] down; // slot below
+
+    private int highWater; // slots at or above this were never used
+    private int freeHead; // first slot on the free list, NIL if empty
+    private int size; // number of ratings stored
+
+    private IntIntHashMap rowHeads; // row id -> first slot of the row
+    private IntIntHashMap colHeads; // col id -> first slot of the col
+
+    /**
+     * PackedSparseMatrix constructor. Starts with no ratings.
+     */
+    public PackedSparseMatrix() {
+        rows = new int[INITIAL_CAPACITY];
+        cols = new int[INITIAL_CAPACITY];
+        values = new byte[INITIAL_CAPACITY];
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        up = new int[INITIAL_CAPACITY];
+        down = new int[INITIAL_CAPACITY];
+        freeHead = NIL;
+        rowHeads = new IntIntHashMap();
+        colHeads = new IntIntHashMap();
+    }
+
+
+    /**
+     * Get the number of ratings stored.
+     *
+     * @return the number of ratings
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Inserts a value at the specified row and column. If a value already
+     * exists at this position, it is updated.
+     *
+     * @param row
+     *            - row value (reviewer)
+     * @param col
+     *            - column value (movie)
+     * @param val
+     *            - review value (score), must fit in a byte
+     * @throws IllegalArgumentException
+     *             if the value does not fit in a byte
+     */
+    public void insert(int row, int col, int val) {
+        if (val < Byte.MIN_VALUE || val > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("value " + val
+                + " does not fit in a packed slot");
+        }
+
+        // Traverse the row to find the correct position for the new slot
+        int prevRow = NIL;
+        int currRow = rowHeads.get(row);
+        while (currRow != NIL && cols[currRow] < col) {
+            prevRow = currRow;
+            currRow = right[currRow];
+        }
+
+        // If this movie is already rated, just update the score
+        if (currRow != NIL && cols[currRow] == col) {
+            values[currRow] = (byte)val;
+            return;
+        }
+
+        int slot = allocate();
+        rows[slot] = row;
+        cols[slot] = col;
+        values[slot] = (byte)val;
+
+        // Insert the new slot into the row list
+        left[slot] = prevRow;
+        right[slot] = currRow;
+        if (prevRow != NIL) {
+            right[prevRow] = slot;
+        }
+        else {
+            rowHeads.put(row, slot); // New first slot for this row
+        }
+        if (currRow != NIL) {
+            left[currRow] = slot;
+        }
+
+        // Traverse the column to find the correct position for the new slot
+        int prevCol = NIL;
+        int currCol = colHeads.get(col);
+        while (currCol != NIL && rows[currCol] < row) {
+            prevCol = currCol;
+            currCol = down[currCol];
+        }
+
+        // Insert the new slot into the column list
+        up[slot] = prevCol;
+        down[slot] = currCol;
+        if (prevCol != NIL) {
+            down[prevCol] = slot;
+        }
+        else {
+            colHeads.put(col, slot); // New first slot for this column
+        }
+        if (currCol != NIL) {
+            up[currCol] = slot;
+        }
+        size++;
+    }
+
+
+    /**
+     * Removes a single value from the matrix at (row, col).
+     *
+     * @param row
+     *            The row (reviewer) index
+     * @param col
+     *            The column (movie) index
+     * @return True if a value was found and removed, false otherwise.
+     */
+    public boolean remove(int row, int col) {
+        int slot = rowHeads.get(row);
+        while (slot != NIL && cols[slot] < col) {
+            slot = right[slot];
+        }
+        if (slot == NIL || cols[slot] != col) {
+            return false;
+        }
+
+        unlinkFromRow(slot);
+        unlinkFromCol(slot);
+        release(slot);
+        return true;
+    }
+
+
+    /**
+     * Removes an entire row (all ratings for a reviewer).
+     *
+     * @param row
+     *            The row (reviewer) to remove.
+     * @return True if the row had ratings and was removed, false otherwise.
+     */
+    public boolean removeRow(int row) {
+        int slot = rowHeads.remove(row);
+        if (slot == NIL) {
+            return false;
+        }
+        while (slot != NIL) {
+            int next = right[slot];
+            unlinkFromCol(slot);
+            release(slot);
+            slot = next;
+        }
+        return true;
+    }
+
+
+    /**
+     * Removes an entire column (all ratings for a movie).
+     *
+     * @param col
+     *            The column (movie) to remove.
+     * @return True if the column had ratings and was removed, false
+     *         otherwise.
+     */
+    public boolean removeCol(int col) {
+        int slot = colHeads.remove(col);
+        if (slot == NIL) {
+            return false;
+        }
+        while (slot != NIL) {
+            int next = down[slot];
+            unlinkFromRow(slot);
+            release(slot);
+            slot = next;
+        }
+        return true;
+    }
+
+
+    /**
+     * print row from left to right
+     *
+     * @param row
+     *            you want to list
+     * @return String of values in row, null if the row has no values
+     */
+    public String rowList(int row) {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            if (!rowList(row, fString)) {
+                return null;
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString();
+    }
+
+
+    /**
+     * print row from left to right, writing straight to the output
+     *
+     * @param row
+     *            you want to list
+     * @param out
+     *            where the 'X: X X...' line is written
+     * @return true if the row was written, false if it has no values
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean rowList(int row, Appendable out) throws IOException {
+        int slot = rowHeads.get(row);
+        if (slot == NIL) {
+            return false;
+        }
+        SparseMatrix.appendInt(out, row);
+        out.append(':');
+        while (slot != NIL) {
+            out.append(' ');
+            SparseMatrix.appendInt(out, values[slot]);
+            slot = right[slot];
+        }
+        return true;
+    }
+
+
+    /**
+     * print col from top to bottom
+     *
+     * @param col
+     *            column you want to list
+     * @return String of values in column, null if the column has no values
+     */
+    public String colList(int col) {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            if (!colList(col, fString)) {
+                return null;
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString();
+    }
+
+
+    /**
+     * print col from top to bottom, writing straight to the output
+     *
+     * @param col
+     *            column you want to list
+     * @param out
+     *            where the 'X: X X...' line is written
+     * @return true if the column was written, false if it has no values
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean colList(int col, Appendable out) throws IOException {
+        int slot = colHeads.get(col);
+        if (slot == NIL) {
+            return false;
+        }
+        SparseMatrix.appendInt(out, col);
+        out.append(':');
+        while (slot != NIL) {
+            out.append(' ');
+            SparseMatrix.appendInt(out, values[slot]);
+            slot = down[slot];
+        }
+        return true;
+    }
+
+
+    /**
+     * list whole matrix using 'X: (X,X) (X,X)...' format
+     *
+     * @return String of all values in matrix, "" if empty
+     */
+    public String matrixList() {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            matrixList(fString);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString();
+    }
+
+
+    /**
+     * list whole matrix using 'X: (X,X) (X,X)...' format, writing straight
+     * to the output. The row ids are sorted first since the header map has
+     * no order.
+     *
+     * @param out
+     *            where the listing is written
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public void matrixList(Appendable out) throws IOException {
+        int[] rowIds = rowHeads.keys();
+        Arrays.sort(rowIds);
+        for (int i = 0; i < rowIds.length; i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            SparseMatrix.appendInt(out, rowIds[i]);
+            out.append(':');
+            int slot = rowHeads.get(rowIds[i]);
+            while (slot != NIL) {
+                out.append(" (");
+                SparseMatrix.appendInt(out, cols[slot]);
+                out.append(", ");
+                SparseMatrix.appendInt(out, values[slot]);
+                out.append(')');
+                slot = right[slot];
+            }
+        }
+    }
+
+
+    /**
+     * Unlink a slot from its row list, dropping the row header if the row
+     * is now empty.
+     *
+     * @param slot
+     *            - slot to unlink
+     */
+    private void unlinkFromRow(int slot) {
+        if (left[slot] != NIL) {
+            right[left[slot]] = right[slot];
+        }
+        else if (right[slot] != NIL) {
+            rowHeads.put(rows[slot], right[slot]); // new first slot
+        }
+        else {
+            rowHeads.remove(rows[slot]); // row is now empty
+        }
+        if (right[slot] != NIL) {
+            left[right[slot]] = left[slot];
+        }
+    }
+
+
+    /**
+     * Unlink a slot from its col list, dropping the col header if the col
+     * is now empty.
+     *
+     * @param slot
+     *            - slot to unlink
+     */
+    private void unlinkFromCol(int slot) {
+        if (up[slot] != NIL) {
+            down[up[slot]] = down[slot];
+        }
+        else if (down[slot] != NIL) {
+            colHeads.put(cols[slot], down[slot]); // new first slot
+        }
+        else {
+            colHeads.remove(cols[slot]); // col is now empty
+        }
+        if (down[slot] != NIL) {
+            up[down[slot]] = up[slot];
+        }
+    }
+
+
+    /**
+     * Take a slot off the free list, or a never used one, growing the
+     * arrays if they are full.
+     *
+     * @return the slot number
+     */
+    private int allocate() {
+        int slot;
+        if (freeHead != NIL) {
+            slot = freeHead;
+            freeHead = right[slot];
+        }
+        else {
+            if (highWater == rows.length) {
+                grow();
+            }
+            slot = highWater++;
+        }
+        return slot;
+    }
+
+
+    /**
+     * Put a slot that is no longer linked anywhere on the free list.
+     *
+     * @param slot
+     *            - slot to release
+     */
+    private void release(int slot) {
+        right[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+
+    /**
+     * Double the capacity of every slot array.
+     */
+    private void grow() {
+        int capacity = rows.length * 2;
+        rows = Arrays.copyOf(rows, capacity);
+        cols = Arrays.copyOf(cols, capacity);
+        values = Arrays.copyOf(values, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        up = Arrays.copyOf(up, capacity);
+        down = Arrays.copyOf(down, capacity);
+    }
+}
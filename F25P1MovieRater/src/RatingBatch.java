@@ -0,0 +1,188 @@
+import java.util.Arrays;
+
+/**
+ * Growable batch of (row, col, value) triples kept in parallel int arrays,
+ * used to hand many ratings to SparseMatrix.insertAll at once.
+ *
+ * The sort helpers return a permutation of entry positions rather than
+ * moving the entries, and are stable, so when the same (row, col) shows up
+ * twice the later entry still comes after the earlier one.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class RatingBatch {
+
+    private static final int INITIAL_CAPACITY = 64; // starting entry count
+    private static final int DIGIT_BITS = 8; // radix sort digit size
+    private static final int BUCKETS = 1 << DIGIT_BITS;
+
+    private int[] rows; // row (reviewer) of each entry
+    private int[] cols; // col (movie) of each entry
+    private int[] values; // value (score) of each entry
+    private int size; // number of entries
+
+    /**
+     * Create a new, empty RatingBatch.
+     */
+    RatingBatch() {
+        rows = new int[INITIAL_CAPACITY];
+        cols = new int[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+    }
+
+
+    /**
+     * Add an entry to the end of the batch.
+     *
+     * @param row
+     *            - row value (reviewer)
+     * @param col
+     *            - column value (movie)
+     * @param val
+     *            - value (score)
+     */
+    void add(int row, int col, int val) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            cols = Arrays.copyOf(cols, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        rows[size] = row;
+        cols[size] = col;
+        values[size++] = val;
+    }
+
+
+    /**
+     * Drop every entry, keeping the arrays for reuse.
+     */
+    void clear() {
+        size = 0;
+    }
+
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Get the row of an entry.
+     *
+     * @param i
+     *            - entry position
+     * @return the row
+     */
+    int row(int i) {
+        return rows[i];
+    }
+
+
+    /**
+     * Get the col of an entry.
+     *
+     * @param i
+     *            - entry position
+     * @return the col
+     */
+    int col(int i) {
+        return cols[i];
+    }
+
+
+    /**
+     * Get the value of an entry.
+     *
+     * @param i
+     *            - entry position
+     * @return the value
+     */
+    int value(int i) {
+        return values[i];
+    }
+
+
+    /**
+     * Get the entry positions sorted by (row, col), or by (col, row).
+     *
+     * @param byRow
+     *            - true for (row, col) order, false for (col, row)
+     * @return the sorted permutation of 0 .. size() - 1
+     */
+    int[] sortedOrder(boolean byRow) {
+        if (byRow) {
+            return sortedOrder(rows, cols, size);
+        }
+        return sortedOrder(cols, rows, size);
+    }
+
+
+    /**
+     * Stable LSD radix sort of the positions 0 .. n - 1 by (primary,
+     * secondary), treating both as signed ints. Digits where every key is
+     * the same (the high bytes of small ids, usually) are skipped.
+     *
+     * @param primary
+     *            - the main sort key of each position
+     * @param secondary
+     *            - the key that breaks ties in primary
+     * @param n
+     *            - number of positions to sort
+     * @return the sorted permutation
+     */
+    static int[] sortedOrder(int[] primary, int[] secondary, int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int[] spare = new int[n];
+        int[] counts = new int[BUCKETS + 1];
+
+        // least significant key first, so primary ends up deciding
+        for (int pass = 0; pass < 2 * Integer.SIZE / DIGIT_BITS; pass++) {
+            int[] keys = pass < Integer.SIZE / DIGIT_BITS ? secondary
+                : primary;
+            int shift = (pass * DIGIT_BITS) % Integer.SIZE;
+
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[digit(keys[order[i]], shift) + 1]++;
+            }
+            if (n == 0 || counts[digit(keys[order[0]], shift) + 1] == n) {
+                continue; // every key has the same digit here
+            }
+            for (int b = 0; b < BUCKETS; b++) {
+                counts[b + 1] += counts[b];
+            }
+            for (int i = 0; i < n; i++) {
+                spare[counts[digit(keys[order[i]], shift)]++] = order[i];
+            }
+            int[] swap = order;
+            order = spare;
+            spare = swap;
+        }
+        return order;
+    }
+
+
+    /**
+     * Get one radix digit of a signed key, with the sign bit flipped so
+     * negative keys sort before positive ones.
+     *
+     * @param key
+     *            - the key
+     * @param shift
+     *            - bit position of the digit
+     * @return the digit, 0 .. BUCKETS - 1
+     */
+    private static int digit(int key, int shift) {
+        return ((key ^ Integer.MIN_VALUE) >>> shift) & (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,317 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bulk loader for rating files. Each line holds 'reviewer movie score',
+ * separated by spaces, tabs or commas. Lines that do not start with a
+ * number (a CSV header, a comment) are skipped, lines that do not hold
+ * exactly three numbers are counted as malformed, and ratings that
+ * addReview would refuse are counted as rejected.
+ *
+ * The file is read through a FileChannel into one reusable buffer and
+ * parsed byte by byte, with no String per line. Ratings are collected into
+ * a RatingBatch and handed to the database BATCH_SIZE at a time, so each
+ * batch is sorted and linked with one pass per dimension.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class RatingLoader {
+
+    /** most ratings collected before they are linked into the matrix */
+    static final int BATCH_SIZE = 1 << 22;
+
+    private static final int BUFFER_BYTES = 1 << 20; // read buffer size
+
+    private final ByteBuffer buffer; // reused read buffer
+    private final RatingBatch batch; // ratings waiting to be linked
+    private final int[] fields; // numbers parsed so far on this line
+
+    // parser state, carried across buffer refills
+    private int fieldCount; // numbers finished on this line
+    private long number; // number being parsed
+    private boolean negative; // number being parsed has a '-'
+    private boolean inNumber; // in the middle of a number
+    private boolean skipLine; // ignore the rest of this line
+    private boolean badLine; // this line is malformed
+
+    private long lines; // data lines seen
+    private long loaded; // ratings handed to the database
+    private long rejected; // well formed but out of range ratings
+    private long malformed; // lines that did not hold three numbers
+
+    /**
+     * Create a new RatingLoader.
+     */
+    public RatingLoader() {
+        buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        batch = new RatingBatch();
+        fields = new int[3];
+    }
+
+
+    /**
+     * Load every rating in a file into the database.
+     *
+     * @param file
+     *            the file to read
+     * @param db
+     *            the database to add the ratings to
+     * @return counts and timing for this load
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public Stats load(Path file, MovieRaterDB db) throws IOException {
+        long start = System.nanoTime();
+        resetLine();
+        lines = 0;
+        loaded = 0;
+        rejected = 0;
+        malformed = 0;
+        batch.clear();
+
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    accept(buffer.get(), db);
+                }
+                buffer.clear();
+            }
+        }
+        accept((byte)'\n', db); // finish a last line with no new line
+        flush(db);
+        return new Stats(lines, loaded, rejected, malformed, System.nanoTime()
+            - start);
+    }
+
+
+    /**
+     * Feed one byte to the line parser.
+     *
+     * @param b
+     *            - the byte
+     * @param db
+     *            - where full batches go
+     */
+    private void accept(byte b, MovieRaterDB db) {
+        if (b == '\n' || b == '\r') {
+            endNumber();
+            endLine(db);
+        }
+        else if (skipLine || badLine) {
+            return;
+        }
+        else if (b >= '0' && b <= '9') {
+            if (!inNumber) {
+                inNumber = true;
+                number = 0;
+            }
+            number = number * 10 + (b - '0');
+            if (number > Integer.MAX_VALUE + 1L) {
+                badLine = true; // does not fit in an int
+            }
+        }
+        else if (b == '-' && !inNumber && !negative) {
+            negative = true;
+        }
+        else if (b == ' ' || b == '\t' || b == ',') {
+            endNumber();
+        }
+        else if (fieldCount == 0 && !inNumber && !negative) {
+            skipLine = true; // header or comment line
+        }
+        else {
+            badLine = true;
+        }
+    }
+
+
+    /**
+     * Finish the number being parsed, if any, and store it as the next
+     * field of the line.
+     */
+    private void endNumber() {
+        if (!inNumber) {
+            if (negative) {
+                badLine = true; // a '-' with no digits
+            }
+            return;
+        }
+        long value = negative ? -number : number;
+        if (fieldCount == fields.length || value > Integer.MAX_VALUE) {
+            badLine = true;
+        }
+        else {
+            fields[fieldCount++] = (int)value;
+        }
+        inNumber = false;
+        negative = false;
+    }
+
+
+    /**
+     * Finish the current line: count it and add its rating to the batch.
+     *
+     * @param db
+     *            - where a full batch goes
+     */
+    private void endLine(MovieRaterDB db) {
+        if (!skipLine && (fieldCount > 0 || badLine)) {
+            lines++;
+            if (badLine || fieldCount != fields.length) {
+                malformed++;
+            }
+            else if (!MovieRaterDB.isValid(fields[0], fields[1], fields[2])) {
+                rejected++;
+            }
+            else {
+                batch.add(fields[0], fields[1], fields[2]);
+                if (batch.size() == BATCH_SIZE) {
+                    flush(db);
+                }
+            }
+        }
+        resetLine();
+    }
+
+
+    /**
+     * Link the collected ratings into the database and empty the batch.
+     *
+     * @param db
+     *            - the database
+     */
+    private void flush(MovieRaterDB db) {
+        loaded += batch.size();
+        db.addBatch(batch);
+        batch.clear();
+    }
+
+
+    /**
+     * Reset the parser state for a new line.
+     */
+    private void resetLine() {
+        fieldCount = 0;
+        inNumber = false;
+        negative = false;
+        skipLine = false;
+        badLine = false;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Counts and timing for one load.
+     */
+    public static class Stats {
+        private final long lines; // data lines seen
+        private final long loaded; // ratings added
+        private final long rejected; // out of range ratings
+        private final long malformed; // lines without three numbers
+        private final long nanos; // time the load took
+
+        /**
+         * Create a new Stats object.
+         *
+         * @param lines
+         *            - data lines seen
+         * @param loaded
+         *            - ratings added
+         * @param rejected
+         *            - out of range ratings
+         * @param malformed
+         *            - lines without three numbers
+         * @param nanos
+         *            - time the load took
+         */
+        Stats(long lines, long loaded, long rejected, long malformed,
+            long nanos) {
+            this.lines = lines;
+            this.loaded = loaded;
+            this.rejected = rejected;
+            this.malformed = malformed;
+            this.nanos = nanos;
+        }
+
+
+        /**
+         * Get the number of data lines seen.
+         *
+         * @return the number of lines
+         */
+        public long getLines() {
+            return lines;
+        }
+
+
+        /**
+         * Get the number of ratings added to the database.
+         *
+         * @return the number of ratings loaded
+         */
+        public long getLoaded() {
+            return loaded;
+        }
+
+
+        /**
+         * Get the number of ratings refused for bad values.
+         *
+         * @return the number of rejected ratings
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+
+        /**
+         * Get the number of lines that did not hold three numbers.
+         *
+         * @return the number of malformed lines
+         */
+        public long getMalformed() {
+            return malformed;
+        }
+
+
+        /**
+         * Get how long the load took.
+         *
+         * @return the elapsed time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+
+        /**
+         * Get the load throughput.
+         *
+         * @return ratings loaded per second
+         */
+        public double ratingsPerSecond() {
+            return nanos == 0 ? 0 : loaded * 1e9 / nanos;
+        }
+
+
+        /**
+         * Summarize the load on one line.
+         *
+         * @return the summary
+         */
+        @Override
+        public String toString() {
+            return String.format("loaded %d of %d lines (%d rejected, "
+                + "%d malformed) in %.3f s, %.0f ratings/s", loaded, lines,
+                rejected, malformed, nanos / 1e9, ratingsPerSecond());
+        }
+    }
+}
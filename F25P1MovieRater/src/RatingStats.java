@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * Summary of the ratings of one reviewer or one movie: how many there are,
+ * their sum, and how many of each score from 1 to 10. MovieRaterDB copies
+ * these straight from the aggregates kept on the header, so getting them
+ * does not walk the ratings.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+public class RatingStats {
+
+    private int count; // number of ratings
+    private long sum; // sum of the scores
+    private final int[] histogram; // ratings with each score, [score - 1]
+
+    /**
+     * Create an empty RatingStats, to be filled with add().
+     */
+    RatingStats() {
+        histogram = new int[SparseMatrix.HeaderNode.HISTOGRAM_SIZE];
+    }
+
+
+    /**
+     * Create a RatingStats from the aggregates of a row or col header.
+     *
+     * @param header
+     *            - the header to copy from
+     */
+    RatingStats(SparseMatrix.HeaderNode header) {
+        this();
+        count = header.getCount();
+        sum = header.getSum();
+        for (int score = 1; score <= histogram.length; score++) {
+            histogram[score - 1] = header.getHistogram(score);
+        }
+    }
+
+
+    /**
+     * Count one more rating, while the stats are being built.
+     *
+     * @param score
+     *            - its score (1-10)
+     */
+    void add(int score) {
+        count++;
+        sum += score;
+        histogram[score - 1]++;
+    }
+
+
+    /**
+     * Get the number of ratings.
+     *
+     * @return the count
+     */
+    public int getCount() {
+        return count;
+    }
+
+
+    /**
+     * Get the sum of the scores.
+     *
+     * @return the sum
+     */
+    public long getSum() {
+        return sum;
+    }
+
+
+    /**
+     * Get the average score.
+     *
+     * @return the mean score, 0 if there are no ratings
+     */
+    public double getAverage() {
+        return count == 0 ? 0 : (double)sum / count;
+    }
+
+
+    /**
+     * Get the number of ratings with a given score.
+     *
+     * @param score
+     *            - the score (1-10)
+     * @return how many ratings have that score, 0 for a score outside 1-10
+     */
+    public int getHistogram(int score) {
+        if (score < 1 || score > histogram.length) {
+            return 0;
+        }
+        return histogram[score - 1];
+    }
+
+
+    /**
+     * Describe the stats on one line.
+     *
+     * @return the count, average and histogram
+     */
+    @Override
+    public String toString() {
+        return String.format("count %d, average %.2f, histogram %s", count,
+            getAverage(), Arrays.toString(histogram));
+    }
+}
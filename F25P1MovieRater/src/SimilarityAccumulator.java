@@ -0,0 +1,290 @@
+/**
+ * Scratch buffer for the candidate driven similarity searches. For every
+ * candidate id it keeps the running sum of absolute score differences and
+ * the number of shared entries, in flat int/long arrays (open addressing,
+ * linear probing) so no objects are created per candidate.
+ *
+ * -a slot is empty when its count is 0
+ * -the slots used since the last reset() are remembered so reset() and
+ * best() only touch those instead of the whole table
+ * -best(k) keeps a bounded heap of positions with the worst kept candidate
+ * on top, so a top-k query is one pass plus O(size log k) compares
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class SimilarityAccumulator {
+
+    private static final int INITIAL_CAPACITY = 64; // must be a power of 2
+
+    private int[] keys; // candidate id stored in each slot
+    private long[] diffs; // sum of |score difference| for each slot
+    private int[] counts; // number of shared entries, 0 if slot is empty
+    private int[] used; // slots filled since the last reset
+    private int size; // number of filled slots
+    private int[] heap; // positions kept by best(k), reused between calls
+
+    /**
+     * Create a new, empty SimilarityAccumulator.
+     */
+    SimilarityAccumulator() {
+        allocate(INITIAL_CAPACITY);
+        heap = new int[INITIAL_CAPACITY];
+    }
+
+
+    /**
+     * Add one shared entry between the target and a candidate.
+     *
+     * @param candidate
+     *            - id of the candidate movie or reviewer
+     * @param diff
+     *            - absolute difference between the two scores
+     */
+    void add(int candidate, int diff) {
+        int slot = slotFor(candidate);
+        if (counts[slot] == 0) {
+            if ((size + 1) * 2 > keys.length) {
+                grow(); // keep the table at most half full
+                slot = slotFor(candidate);
+            }
+            keys[slot] = candidate;
+            used[size++] = slot;
+        }
+        diffs[slot] += diff;
+        counts[slot]++;
+    }
+
+
+    /**
+     * Forget every candidate so the buffer can be reused for another query.
+     */
+    void reset() {
+        for (int i = 0; i < size; i++) {
+            int slot = used[i];
+            counts[slot] = 0;
+            diffs[slot] = 0;
+        }
+        size = 0;
+    }
+
+
+    /**
+     * Get the number of candidates that share at least one entry.
+     *
+     * @return the number of candidates
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Get the candidate id stored at a position in insertion order.
+     *
+     * @param i
+     *            - position, 0 <= i < size()
+     * @return the candidate id
+     */
+    int candidate(int i) {
+        return keys[used[i]];
+    }
+
+
+    /**
+     * Get the similarity score of the candidate at a position, computed
+     * the same way as the merge-join helpers in MovieRaterDB.
+     *
+     * @param i
+     *            - position, 0 <= i < size()
+     * @return the mean absolute difference over the shared entries
+     */
+    double score(int i) {
+        int slot = used[i];
+        return (double)diffs[slot] / counts[slot];
+    }
+
+
+    /**
+     * Find the candidate with the lowest score, using the lowest id to
+     * break ties.
+     *
+     * @return the best candidate id, or -1 if there are no candidates
+     */
+    int best() {
+        int bestId = -1;
+        double lowestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            double score = score(i);
+            int id = candidate(i);
+            if (score < lowestScore || (score == lowestScore && id < bestId)) {
+                lowestScore = score;
+                bestId = id;
+            }
+        }
+        return bestId;
+    }
+
+
+    /**
+     * Find the k candidates with the lowest scores, in the order best()
+     * would pick them one after another: lowest score first, lowest id
+     * first among equal scores.
+     *
+     * @param k
+     *            - most candidates to return
+     * @return the candidate ids, best first; shorter than k if there are
+     *         fewer candidates, empty if k is not positive
+     */
+    int[] best(int k) {
+        int limit = Math.max(0, Math.min(k, size));
+        if (heap.length < limit) {
+            heap = new int[limit];
+        }
+        int kept = 0;
+        for (int i = 0; i < size && limit > 0; i++) {
+            if (kept < limit) {
+                heap[kept] = i; // sift the new position up
+                int child = kept++;
+                while (child > 0) {
+                    int parent = (child - 1) >>> 1;
+                    if (!worse(heap[child], heap[parent])) {
+                        break;
+                    }
+                    swap(child, parent);
+                    child = parent;
+                }
+            }
+            else if (worse(heap[0], i)) {
+                heap[0] = i; // replace the worst kept, sift it down
+                siftDown(0, kept);
+            }
+        }
+
+        // pop the worst off the top until the heap is empty
+        int[] ids = new int[kept];
+        while (kept > 0) {
+            ids[--kept] = candidate(heap[0]);
+            heap[0] = heap[kept];
+            siftDown(0, kept);
+        }
+        return ids;
+    }
+
+
+    /**
+     * Check whether one position ranks after another.
+     *
+     * @param a
+     *            - a position, 0 <= a < size()
+     * @param b
+     *            - another position, 0 <= b < size()
+     * @return true if a has the higher score, or the same score and the
+     *         higher id
+     */
+    private boolean worse(int a, int b) {
+        double scoreA = score(a);
+        double scoreB = score(b);
+        return scoreA > scoreB || (scoreA == scoreB && candidate(a) > candidate(
+            b));
+    }
+
+
+    /**
+     * Move the heap entry at a position down until neither child is worse.
+     *
+     * @param parent
+     *            - heap position to start at
+     * @param kept
+     *            - number of entries in the heap
+     */
+    private void siftDown(int parent, int kept) {
+        while (true) {
+            int worst = parent;
+            int left = 2 * parent + 1;
+            if (left < kept && worse(heap[left], heap[worst])) {
+                worst = left;
+            }
+            if (left + 1 < kept && worse(heap[left + 1], heap[worst])) {
+                worst = left + 1;
+            }
+            if (worst == parent) {
+                return;
+            }
+            swap(parent, worst);
+            parent = worst;
+        }
+    }
+
+
+    /**
+     * Swap two heap entries.
+     *
+     * @param a
+     *            - heap position
+     * @param b
+     *            - heap position
+     */
+    private void swap(int a, int b) {
+        int temp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = temp;
+    }
+
+
+    /**
+     * Find the slot that holds a candidate, or the empty slot it should go
+     * in.
+     *
+     * @param candidate
+     *            - id to look for
+     * @return the slot index
+     */
+    private int slotFor(int candidate) {
+        int mask = keys.length - 1;
+        int hash = candidate * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (counts[slot] != 0 && keys[slot] != candidate) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    /**
+     * Double the table and move every filled slot over.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldDiffs = diffs;
+        int[] oldCounts = counts;
+        int[] oldUsed = used;
+        int oldSize = size;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldSize; i++) {
+            int from = oldUsed[i];
+            int slot = slotFor(oldKeys[from]);
+            keys[slot] = oldKeys[from];
+            diffs[slot] = oldDiffs[from];
+            counts[slot] = oldCounts[from];
+            used[size++] = slot;
+        }
+    }
+
+
+    /**
+     * Replace the table with empty arrays of the given capacity.
+     *
+     * @param capacity
+     *            - new table size (a power of 2)
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        diffs = new long[capacity];
+        counts = new int[capacity];
+        used = new int[capacity / 2 + 1];
+        size = 0;
+    }
+}
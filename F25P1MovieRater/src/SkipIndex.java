@@ -0,0 +1,219 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Skip list levels over one long row or column of a SparseMatrix, so a
+ * point insert, lookup or remove in it takes O(log n) steps instead of a
+ * walk down the whole list. The nodes themselves are not changed: the
+ * levels are separate Entry chains that point into the list, and the list
+ * keeps its plain right/down links, so rowList, colList and the similarity
+ * merge-joins walk it exactly as before.
+ *
+ * -a node gets an entry on level 0 with probability 1/FANOUT, on level 1
+ * with probability 1/FANOUT^2, and so on, decided when it is added
+ * -each level is a sorted singly linked chain starting at a dummy head;
+ * an entry's down points at the same node's entry one level lower
+ * -level 0 entries point at list nodes, so before() returns a list node
+ * at most about FANOUT steps short of the place being searched for
+ *
+ * SparseMatrix builds an index for a list once it holds THRESHOLD values,
+ * and must tell it about every node linked into (added()) or unlinked from
+ * (removing()) the list after that.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class SkipIndex {
+
+    /** lists with at least this many values get an index */
+    static final int THRESHOLD = 256;
+
+    private static final int FANOUT_BITS = 3; // log2 of the fanout
+    private static final int FANOUT_MASK = (1 << FANOUT_BITS) - 1;
+    private static final int MAX_LEVELS = 32 / FANOUT_BITS; // from one int
+
+    private final boolean row; // true over a row (by col), false a col
+    private final Entry[] heads; // dummy head of each level
+    private int levels; // levels in use, from the bottom
+
+    /**
+     * One entry on one level: the node it stands for, the next entry on
+     * the level, and the node's entry on the level below.
+     */
+    private static class Entry {
+        private final SparseMatrix.Node node; // null for a dummy head
+        private Entry next; // next entry on this level, by key
+        private final Entry down; // same node one level down, or null
+
+        /**
+         * Create a new Entry.
+         *
+         * @param node
+         *            - node the entry stands for
+         * @param next
+         *            - next entry on the level
+         * @param down
+         *            - the node's entry one level down
+         */
+        Entry(SparseMatrix.Node node, Entry next, Entry down) {
+            this.node = node;
+            this.next = next;
+            this.down = down;
+        }
+    }
+
+    /**
+     * Build an index over a whole list.
+     *
+     * @param first
+     *            - first node of the list
+     * @param row
+     *            - true if the list is a row (keyed by col), false if it
+     *            is a col (keyed by row)
+     */
+    SkipIndex(SparseMatrix.Node first, boolean row) {
+        this.row = row;
+        heads = new Entry[MAX_LEVELS];
+        Entry[] tails = new Entry[MAX_LEVELS]; // last entry of each level
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            heads[level] = new Entry(null, null, level == 0
+                ? null
+                : heads[level - 1]);
+            tails[level] = heads[level];
+        }
+        for (SparseMatrix.Node n = first; n != null; n = next(n)) {
+            int height = randomHeight();
+            Entry below = null;
+            for (int level = 0; level < height; level++) {
+                below = new Entry(n, null, below);
+                tails[level].next = below;
+                tails[level] = below;
+            }
+            levels = Math.max(levels, height);
+        }
+    }
+
+
+    /**
+     * Find a node close before a key, going down the levels.
+     *
+     * @param key
+     *            - col (in a row) or row (in a col) to search for
+     * @return an indexed node with a key below it, the closest on level 0,
+     *         or null if no indexed node is below it
+     */
+    SparseMatrix.Node before(int key) {
+        if (levels == 0) {
+            return null;
+        }
+        Entry e = heads[levels - 1];
+        while (true) {
+            while (e.next != null && key(e.next.node) < key) {
+                e = e.next;
+            }
+            if (e.down == null) {
+                return e.node;
+            }
+            e = e.down;
+        }
+    }
+
+
+    /**
+     * Give a node just linked into the list its entries, if it draws any.
+     *
+     * @param node
+     *            - the new node
+     */
+    void added(SparseMatrix.Node node) {
+        int height = randomHeight();
+        if (height == 0) {
+            return; // 7 times in 8
+        }
+        levels = Math.max(levels, height);
+        int key = key(node);
+        // find the entry to splice after on each of the node's levels,
+        // from the top down, then splice from the bottom up
+        Entry[] before = new Entry[height];
+        Entry e = heads[levels - 1];
+        for (int level = levels - 1; level >= 0; level--) {
+            while (e.next != null && key(e.next.node) < key) {
+                e = e.next;
+            }
+            if (level < height) {
+                before[level] = e;
+            }
+            e = e.down;
+        }
+        Entry below = null;
+        for (int level = 0; level < height; level++) {
+            below = new Entry(node, before[level].next, below);
+            before[level].next = below;
+        }
+    }
+
+
+    /**
+     * Drop a node's entries before it is unlinked from the list.
+     *
+     * @param node
+     *            - the node being removed
+     */
+    void removing(SparseMatrix.Node node) {
+        int key = key(node);
+        Entry e = levels == 0 ? null : heads[levels - 1];
+        while (e != null) {
+            while (e.next != null && key(e.next.node) < key) {
+                e = e.next;
+            }
+            if (e.next != null && e.next.node == node) {
+                e.next = e.next.next;
+            }
+            e = e.down;
+        }
+        while (levels > 0 && heads[levels - 1].next == null) {
+            levels--; // the top level is empty now
+        }
+    }
+
+
+    /**
+     * Get the key of a node in this list.
+     *
+     * @param node
+     *            - the node
+     * @return its col in a row, its row in a col
+     */
+    private int key(SparseMatrix.Node node) {
+        return row ? node.getCol() : node.getRow();
+    }
+
+
+    /**
+     * Get the next node of the list.
+     *
+     * @param node
+     *            - a node of the list
+     * @return the node after it, or null
+     */
+    private SparseMatrix.Node next(SparseMatrix.Node node) {
+        return row ? node.getRight() : node.getDown();
+    }
+
+
+    /**
+     * Draw how many levels a new node gets entries on: at least k with
+     * probability 1/FANOUT^k.
+     *
+     * @return the number of levels, 0 most of the time
+     */
+    private static int randomHeight() {
+        int bits = ThreadLocalRandom.current().nextInt();
+        int height = 0;
+        while (height < MAX_LEVELS && (bits & FANOUT_MASK) == 0) {
+            height++;
+            bits >>>= FANOUT_BITS;
+        }
+        return height;
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * The class containing the implementation of Sparse Matrix data structure.
  * 
@@ -10,6 +13,10 @@ public class SparseMatrix {
     private HeaderNode rowHeader; // start of the header list of the row headers
     private HeaderNode colHeader; // start of the header list of the column
                                   // headers
+    private HeaderDirectory rowDirectory; // index over the row header list
+    private HeaderDirectory colDirectory; // index over the col header list
+    private MatrixListener listener; // told about every change, may be null
+    private MatrixCounters counters; // counts the work done, may be null
 
     /**
      * node class for the values inside the orthogonal matrix
@@ -90,6 +97,26 @@ public class SparseMatrix {
         public Node getDown() {
             return down;
         }
+
+
+        /**
+         * Get the current value of left.
+         * 
+         * @return The value of left for this object.
+         */
+        public Node getLeft() {
+            return left;
+        }
+
+
+        /**
+         * Get the current value of up.
+         * 
+         * @return The value of up for this object.
+         */
+        public Node getUp() {
+            return up;
+        }
     }
 
 
@@ -98,12 +125,28 @@ public class SparseMatrix {
      * 
      * -n is the next headerNode, so down for row and left for column
      * -nNode is the start of the doubly linked list of that row/col
+     * -count, sum and histogram describe the values in the list and are
+     * kept up to date by every write, so stats need no walk
+     * -finger is the node the last write touched in the list (or null), a
+     * place to start the next walk from; only writes move it, and every
+     * removal moves it off the node being removed
+     * -skip holds skip levels over the list once it is long (see
+     * SkipIndex), built by the write that makes it long, so writes find
+     * their place in O(log n); null if short
      */
     public static class HeaderNode {
+        /** values from 1 to HISTOGRAM_SIZE get a histogram bucket */
+        public static final int HISTOGRAM_SIZE = 10;
+
         private int index; // index of header on the header list chain
         private HeaderNode n; // next HeaderNode, below for row, to the right
                               // for col
         private Node nNode; // start of the data values attached to header
+        private int count; // number of values in the list
+        private long sum; // sum of the values in the list
+        private int[] histogram; // count of each value 1..10, made on demand
+        private Node finger; // node the last write touched, or null
+        private SkipIndex skip; // skip levels over a long list, or null
 
         /**
          * Create a new HeaderNode object.
@@ -178,6 +221,62 @@ public class SparseMatrix {
         public void setN(HeaderNode n) {
             this.n = n;
         }
+
+
+        /**
+         * Get the number of values in this row/col.
+         * 
+         * @return the count
+         */
+        public int getCount() {
+            return count;
+        }
+
+
+        /**
+         * Get the sum of the values in this row/col.
+         * 
+         * @return the sum
+         */
+        public long getSum() {
+            return sum;
+        }
+
+
+        /**
+         * Get how many values in this row/col equal a given value.
+         * 
+         * @param value
+         *            - a value from 1 to HISTOGRAM_SIZE
+         * @return the number of values equal to it, 0 for a value outside
+         *         the histogram
+         */
+        public int getHistogram(int value) {
+            if (histogram == null || value < 1 || value > HISTOGRAM_SIZE) {
+                return 0;
+            }
+            return histogram[value - 1];
+        }
+
+
+        /**
+         * Add a value to, or take it out of, the aggregates.
+         * 
+         * @param value
+         *            - the value
+         * @param delta
+         *            - 1 when the value is added, -1 when it is removed
+         */
+        void record(int value, int delta) {
+            count += delta;
+            sum += (long)value * delta;
+            if (value >= 1 && value <= HISTOGRAM_SIZE) {
+                if (histogram == null) {
+                    histogram = new int[HISTOGRAM_SIZE];
+                }
+                histogram[value - 1] += delta;
+            }
+        }
     }
 
     /**
@@ -188,7 +287,36 @@ public class SparseMatrix {
         // Create the starting (dummy) headers. Lists will grow on demand
         rowHeader = new HeaderNode(0);
         colHeader = new HeaderNode(0);
+        rowDirectory = new HeaderDirectory(rowHeader);
+        colDirectory = new HeaderDirectory(colHeader);
+
+    }
+
+
+    /**
+     * Attach a listener that is told about every insert, value change and
+     * removal from now on, replacing any listener attached before.
+     *
+     * @param listener
+     *            - the listener, or null to detach it
+     */
+    public void setListener(MatrixListener listener) {
+        this.listener = listener;
+    }
 
+
+    /**
+     * Count header lookups and list walks into the given counters from
+     * now on, replacing any counters attached before.
+     *
+     * @param counters
+     *            - the counters, or null to stop counting
+     */
+    void setCounters(MatrixCounters counters) {
+        this.counters = counters;
+        if (counters != null) {
+            counters.attach(this);
+        }
     }
 
 
@@ -208,26 +336,30 @@ public class SparseMatrix {
 
         HeaderNode headRow = findRowHeader(row); // find header for row you want
                                                  // to insert to
-        Node currentRow = headRow.getnNode(); // start Node of the row you want
-                                              // to insert to
-
-        Node prevRow = null; // placeholder to move through list
-
-        // Traverse the row to find the correct position for the new node.
-        // The original code only checked the first node. This loop finds the
-        // correct position for insertion or finds an existing node to update.
-        while (currentRow != null && currentRow.col < col) {
-            prevRow = currentRow;
-            currentRow = currentRow.right;
-        }
+        // Find the correct position for insertion, or an existing node to
+        // update, walking from the row's finger when that is closer
+        Node prevRow = rowBefore(headRow, col);
+        Node currentRow = prevRow == null ? headRow.getnNode() : prevRow.right;
 
         // If a node for this movie already exists, just update the score.
         if (currentRow != null && currentRow.col == col) {
+            int old = currentRow.value;
             currentRow.value = val;
+            headRow.record(old, -1);
+            headRow.record(val, 1);
+            HeaderNode headCol = peekColHeader(col);
+            headCol.record(old, -1);
+            headCol.record(val, 1);
+            headRow.finger = currentRow;
+            headCol.finger = currentRow;
+            if (listener != null && old != val) {
+                listener.changed(currentRow, old);
+            }
             return; // The node is updated, so we are done.
         }
 
         // Insert the new node into the row list
+        headRow.record(val, 1);
         newNode.left = prevRow;
         newNode.right = currentRow;
         if (prevRow != null) {
@@ -239,18 +371,14 @@ public class SparseMatrix {
         if (currentRow != null) {
             currentRow.left = newNode;
         }
+        linked(headRow, newNode, true);
 
         // find header for col you want to insert to
         HeaderNode headCol = findColHeader(col);
-        // start Node of the col you want to insert to
-        Node currentCol = headCol.getnNode();
-        Node prevCol = null; // placeholder to move through the list
-
-        // Traverse the column to find the correct position for the new node
-        while (currentCol != null && currentCol.row < row) {
-            prevCol = currentCol;
-            currentCol = currentCol.down;
-        }
+        headCol.record(val, 1);
+        // Find the correct position for the new node in the column
+        Node prevCol = colBefore(headCol, row);
+        Node currentCol = prevCol == null ? headCol.getnNode() : prevCol.down;
 
         // Insert the new node into the column list
         newNode.up = prevCol;
@@ -264,6 +392,150 @@ public class SparseMatrix {
         if (currentCol != null) {
             currentCol.up = newNode; // iterate to next node
         }
+        linked(headCol, newNode, false);
+        headRow.finger = newNode;
+        headCol.finger = newNode;
+        if (listener != null) {
+            listener.inserted(newNode);
+        }
+    }
+
+
+    /**
+     * Inserts every entry of a batch, with the same result as calling
+     * insert() for each entry in order (so for a repeated (row, col) the
+     * last value wins).
+     *
+     * The batch is sorted by (row, col) and merged into each row with a
+     * cursor that only moves forward, then the new nodes are sorted by
+     * (col, row) and merged into each column the same way. That is one
+     * linear pass per dimension instead of a full row walk and column walk
+     * per entry.
+     *
+     * With a listener attached the entries are inserted one at a time
+     * instead, so that every event sees a matrix where all earlier changes
+     * have been reported and none of the later ones have been made.
+     *
+     * @param batch
+     *            - the entries to insert
+     */
+    public void insertAll(RatingBatch batch) {
+        int n = batch.size();
+        if (listener != null) {
+            for (int e = 0; e < n; e++) {
+                insert(batch.row(e), batch.col(e), batch.value(e));
+            }
+            return;
+        }
+        int[] order = batch.sortedOrder(true);
+        Node[] created = new Node[n]; // new nodes, still missing col links
+        int made = 0;
+
+        // row pass: merge each row's entries into the row list
+        int i = 0;
+        while (i < n) {
+            int row = batch.row(order[i]);
+            HeaderNode headRow = findRowHeader(row);
+            Node prevRow = rowBefore(headRow, batch.col(order[i]));
+            Node currentRow = prevRow == null
+                ? headRow.getnNode()
+                : prevRow.right;
+            for (; i < n && batch.row(order[i]) == row; i++) {
+                int col = batch.col(order[i]);
+                if (headRow.skip != null) {
+                    // jump ahead through the skip levels, not the list
+                    prevRow = rowBefore(headRow, col);
+                    currentRow = prevRow == null
+                        ? headRow.getnNode()
+                        : prevRow.right;
+                }
+                while (currentRow != null && currentRow.col < col) {
+                    prevRow = currentRow;
+                    currentRow = currentRow.right;
+                }
+                // already rated (before, or earlier in this batch): update
+                if (currentRow != null && currentRow.col == col) {
+                    int old = currentRow.value;
+                    currentRow.value = batch.value(order[i]);
+                    headRow.record(old, -1);
+                    headRow.record(currentRow.value, 1);
+                    HeaderNode headCol = peekColHeader(col);
+                    // a node made earlier in this batch is not in its col
+                    // yet, the col pass records its final value
+                    if (headCol != null && (currentRow.up != null
+                        || currentRow.down != null || headCol
+                            .getnNode() == currentRow)) {
+                        headCol.record(old, -1);
+                        headCol.record(currentRow.value, 1);
+                    }
+                    continue;
+                }
+                Node newNode = new Node(row, col, batch.value(order[i]));
+                headRow.record(newNode.value, 1);
+                newNode.left = prevRow;
+                newNode.right = currentRow;
+                if (prevRow != null) {
+                    prevRow.right = newNode;
+                }
+                else {
+                    headRow.setnNode(newNode); // New first node for this row
+                }
+                if (currentRow != null) {
+                    currentRow.left = newNode;
+                }
+                linked(headRow, newNode, true);
+                currentRow = newNode; // a repeat of this col updates it
+                created[made++] = newNode;
+            }
+            headRow.finger = currentRow; // last node touched in the row
+        }
+
+        // col pass: merge the new nodes into each column list
+        int[] newRows = new int[made];
+        int[] newCols = new int[made];
+        for (int k = 0; k < made; k++) {
+            newRows[k] = created[k].row;
+            newCols[k] = created[k].col;
+        }
+        order = RatingBatch.sortedOrder(newCols, newRows, made);
+        int k = 0;
+        while (k < made) {
+            int col = newCols[order[k]];
+            HeaderNode headCol = findColHeader(col);
+            Node prevCol = colBefore(headCol, created[order[k]].row);
+            Node currentCol = prevCol == null
+                ? headCol.getnNode()
+                : prevCol.down;
+            for (; k < made && newCols[order[k]] == col; k++) {
+                Node newNode = created[order[k]];
+                headCol.record(newNode.value, 1);
+                if (headCol.skip != null) {
+                    // jump ahead through the skip levels, not the list
+                    prevCol = colBefore(headCol, newNode.row);
+                    currentCol = prevCol == null
+                        ? headCol.getnNode()
+                        : prevCol.down;
+                }
+                while (currentCol != null && currentCol.row < newNode.row) {
+                    prevCol = currentCol;
+                    currentCol = currentCol.down;
+                }
+                newNode.up = prevCol;
+                newNode.down = currentCol;
+                if (prevCol != null) {
+                    prevCol.down = newNode;
+                }
+                else {
+                    headCol.setnNode(newNode); // New first node for this col
+                }
+                if (currentCol != null) {
+                    currentCol.up = newNode;
+                }
+                linked(headCol, newNode, false);
+                prevCol = newNode;
+            }
+            headCol.finger = prevCol; // last node added to the col
+        }
     }
 
 
@@ -275,24 +547,48 @@ public class SparseMatrix {
      * @return String of values in column
      */
     public String colList(int col) {
-        String fString = ""; // string to concatenate and return
-        HeaderNode colNode = findColHeader(col); // find header for col you want
-                                                 // to print
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            if (!colList(col, fString)) {
+                return null;
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString(); // return list string
+    }
 
-        fString = colNode.getIndex() + fString;
-        fString = fString + ":";
-        Node current = colNode.getnNode(); // placeholder to traverse the list
 
-        if (current == null) {
-            return null;
+    /**
+     * print col from top to bottom, writing straight to the output in one
+     * pass instead of building up a String
+     * 
+     * @param col
+     *            column you want to list
+     * @param out
+     *            where the 'X: X X...' line is written
+     * @return true if the column was written, false if it has no values
+     *         (nothing is written then)
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean colList(int col, Appendable out) throws IOException {
+        HeaderNode colNode = peekColHeader(col); // find header for col you want
+                                                 // to print
+        if (colNode == null || colNode.getnNode() == null) {
+            return false;
         }
 
+        appendInt(out, colNode.getIndex());
+        out.append(':');
+        Node current = colNode.getnNode(); // placeholder to traverse the list
         while (current != null) {
-            fString = fString + " " + current.value;
+            out.append(' ');
+            appendInt(out, current.value);
             current = current.down;
         }
-
-        return fString; // return list string
+        return true;
     }
 
 
@@ -304,24 +600,48 @@ public class SparseMatrix {
      * @return String of values in row
      */
     public String rowList(int row) {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            if (!rowList(row, fString)) {
+                return null;
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString(); // return string list
+    }
 
-        String fString = ""; // string to concatenate and return
-        // find header for col you want to print
-        HeaderNode rowNode = findRowHeader(row);
-
-        fString = rowNode.getIndex() + fString;
-        fString = fString + ":";
-        Node current = rowNode.getnNode(); // placeholder to traverse the list
 
-        if (current == null) {
-            return null;
+    /**
+     * print row from left to right, writing straight to the output in one
+     * pass instead of building up a String
+     * 
+     * @param row
+     *            you want to list
+     * @param out
+     *            where the 'X: X X...' line is written
+     * @return true if the row was written, false if it has no values
+     *         (nothing is written then)
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public boolean rowList(int row, Appendable out) throws IOException {
+        // find header for row you want to print
+        HeaderNode rowNode = peekRowHeader(row);
+        if (rowNode == null || rowNode.getnNode() == null) {
+            return false;
         }
 
+        appendInt(out, rowNode.getIndex());
+        out.append(':');
+        Node current = rowNode.getnNode(); // placeholder to traverse the list
         while (current != null) {
-            fString = fString + " " + current.value;
+            out.append(' ');
+            appendInt(out, current.value);
             current = current.right;
         }
-        return fString; // return string list
+        return true;
     }
 
 
@@ -331,8 +651,30 @@ public class SparseMatrix {
      * @return String of all values in matrix, "" if null
      */
     public String matrixList() {
+        StringBuilder fString = new StringBuilder(); // string to return
+        try {
+            matrixList(fString);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder never throws
+        }
+        return fString.toString();
+    }
 
-        String fString = ""; // string to concatenate and return
+
+    /**
+     * list whole matrix using 'X: (X,X) (X,X)...' format, writing each row
+     * straight to the output in one pass. Rows are separated by a new line
+     * and there is no new line after the last one, so the output matches
+     * matrixList().
+     * 
+     * @param out
+     *            where the listing is written
+     * @throws IOException
+     *             if writing to out fails
+     */
+    public void matrixList(Appendable out) throws IOException {
+        boolean first = true; // no new line before the first row
 
         HeaderNode tempRowHeader = rowHeader; // placeholder to traverse the
                                               // header list
@@ -341,17 +683,56 @@ public class SparseMatrix {
             // placeholder to traverse the list
             Node currentRow = tempRowHeader.getnNode();
             if (currentRow != null) {
-                fString = fString + tempRowHeader.getIndex() + ":";
+                if (!first) {
+                    out.append('\n');
+                }
+                first = false;
+                appendInt(out, tempRowHeader.getIndex());
+                out.append(':');
                 while (currentRow != null) {
-                    fString = fString + " (" + currentRow.col + ", "
-                        + currentRow.value + ")";
+                    out.append(" (");
+                    appendInt(out, currentRow.col);
+                    out.append(", ");
+                    appendInt(out, currentRow.value);
+                    out.append(')');
                     currentRow = currentRow.right;
                 }
-                fString = fString + "\n";
             }
             tempRowHeader = tempRowHeader.getN(); // iterate to next node
         }
-        return fString.trim(); // return string minus new line char at end
+    }
+
+
+    /**
+     * Writes an int in decimal without creating a String for it.
+     * 
+     * @param out
+     *            where the digits are written
+     * @param value
+     *            the int to write
+     * @throws IOException
+     *             if writing to out fails
+     */
+    static void appendInt(Appendable out, int value)
+        throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder)out).append(value);
+            return;
+        }
+        // work with the negative value so MIN_VALUE does not overflow
+        int neg = value < 0 ? value : -value;
+        if (value < 0) {
+            out.append('-');
+        }
+        int divisor = -1; // largest power of ten (as a negative) <= |value|
+        while (neg <= divisor * 10 && divisor > Integer.MIN_VALUE / 10) {
+            divisor *= 10;
+        }
+        while (divisor != 0) {
+            out.append((char)('0' + neg / divisor));
+            neg %= divisor;
+            divisor /= 10;
+        }
     }
 
 
@@ -365,13 +746,14 @@ public class SparseMatrix {
      * @return The Node at (row, col), or null if not found.
      */
     private Node getNode(int row, int col) {
-        HeaderNode headRow = findRowHeader(row);
+        HeaderNode headRow = peekRowHeader(row);
+        if (headRow == null) {
+            return null; // no such row, so no such node
+        }
 
-        Node curr = headRow.getnNode();
         // Traverse the row list (which is faster than traversing a column)
-        while (curr != null && curr.col < col) {
-            curr = curr.right;
-        }
+        Node prev = rowBefore(headRow, col);
+        Node curr = prev == null ? headRow.getnNode() : prev.right;
 
         // If we found the node at the exact column
         if (curr != null && curr.col == col) {
@@ -382,9 +764,24 @@ public class SparseMatrix {
     }
 
 
+    /**
+     * Check if there is a score at (row, col).
+     * 
+     * @param row
+     *            The row index
+     * @param col
+     *            The col index
+     * @return True if there is one
+     */
+    public boolean contains(int row, int col) {
+        return getNode(row, col) != null;
+    }
+
+
     /**
      * Removes a single node (score) from the matrix at (row, col).
-     * This method unlinks the node from both its row and column lists.
+     * This method unlinks the node from both its row and column lists, and
+     * drops the row or column header if that left it empty.
      *
      * @param row
      *            The row (reviewer) index
@@ -398,6 +795,20 @@ public class SparseMatrix {
         if (nodeToRemove == null) {
             return false;
         }
+        if (listener != null) {
+            listener.removing(nodeToRemove);
+        }
+        peekRowHeader(row).record(nodeToRemove.value, -1);
+        peekColHeader(col).record(nodeToRemove.value, -1);
+        // move the fingers off the node, to the one before it
+        peekRowHeader(row).finger = nodeToRemove.left;
+        peekColHeader(col).finger = nodeToRemove.up;
+        if (peekRowHeader(row).skip != null) {
+            peekRowHeader(row).skip.removing(nodeToRemove);
+        }
+        if (peekColHeader(col).skip != null) {
+            peekColHeader(col).skip.removing(nodeToRemove);
+        }
 
         // Unlink from horizontal (row) list
         if (nodeToRemove.left != null) {
@@ -406,7 +817,7 @@ public class SparseMatrix {
         }
         else {
             // It IS the first node, so update the row header
-            findRowHeader(row).setnNode(nodeToRemove.right);
+            peekRowHeader(row).setnNode(nodeToRemove.right);
         }
 
         if (nodeToRemove.right != null) {
@@ -420,19 +831,24 @@ public class SparseMatrix {
         }
         else {
             // It IS the first node, so update the column header
-            findColHeader(col).setnNode(nodeToRemove.down);
+            peekColHeader(col).setnNode(nodeToRemove.down);
         }
         if (nodeToRemove.down != null) {
             nodeToRemove.down.up = nodeToRemove.up;
         }
 
+        compactRow(row);
+        compactCol(col);
         return true;
     }
 
 
     /**
      * Removes an entire row (all ratings for a reviewer).
-     * This iterates the row and unlinks each node from its respective column.
+     * This iterates the row and unlinks each node from its respective column,
+     * and from the front of the row, so a listener told about one node sees
+     * the rest of the row still there and the part before it gone.
+     * The row header, and any column header left empty, are dropped.
      *
      * @param row
      *            The row (reviewer) to remove.
@@ -440,39 +856,58 @@ public class SparseMatrix {
      *         reviewer did not exist or had no ratings.
      */
     public boolean removeRow(int row) {
-        HeaderNode headRow = findRowHeader(row);
+        HeaderNode headRow = peekRowHeader(row);
 
-        if (headRow.getnNode() == null) {
+        if (headRow == null || headRow.getnNode() == null) {
             return false;
         }
 
         Node curr = headRow.getnNode();
         while (curr != null) {
+            if (listener != null) {
+                listener.removing(curr);
+            }
+            headRow.record(curr.value, -1);
+            peekColHeader(curr.col).record(curr.value, -1);
+            peekColHeader(curr.col).finger = curr.up; // off the node
+            if (peekColHeader(curr.col).skip != null) {
+                peekColHeader(curr.col).skip.removing(curr);
+            }
             // For each node in the row, we must unlink it from its column list
             if (curr.up != null) {
                 curr.up.down = curr.down;
             }
             else {
                 // This node was the first in its column, update column header
-                findColHeader(curr.col).setnNode(curr.down);
+                peekColHeader(curr.col).setnNode(curr.down);
             }
 
             if (curr.down != null) {
                 curr.down.up = curr.up;
             }
+            compactCol(curr.col);
 
             curr = curr.right; // Move to the next node in the row
+            headRow.setnNode(curr); // the row now starts after the old node
+            if (curr != null) {
+                curr.left = null;
+            }
         }
 
         // Finally, clear the row header's pointer, deleting the entire row list
         headRow.setnNode(null);
+        headRow.finger = null;
+        headRow.skip = null;
+        compactRow(row);
         return true;
     }
 
 
     /**
      * Removes an entire column (all ratings for a movie).
-     * This iterates the column and unlinks each node from its respective row.
+     * This iterates the column and unlinks each node from its respective row,
+     * and from the top of the column, like removeRow.
+     * The column header, and any row header left empty, are dropped.
      *
      * @param col
      *            The column (movie) to remove.
@@ -480,97 +915,276 @@ public class SparseMatrix {
      *         movie did not exist or had no ratings.
      */
     public boolean removeCol(int col) {
-        HeaderNode headCol = findColHeader(col);
+        HeaderNode headCol = peekColHeader(col);
 
-        if (headCol.getnNode() == null) {
+        if (headCol == null || headCol.getnNode() == null) {
             return false;
         }
 
         Node curr = headCol.getnNode();
         while (curr != null) {
+            if (listener != null) {
+                listener.removing(curr);
+            }
+            headCol.record(curr.value, -1);
+            peekRowHeader(curr.row).record(curr.value, -1);
+            peekRowHeader(curr.row).finger = curr.left; // off the node
+            if (peekRowHeader(curr.row).skip != null) {
+                peekRowHeader(curr.row).skip.removing(curr);
+            }
             // For each node in the column, unlink it from its row list
             if (curr.left != null) {
                 curr.left.right = curr.right;
             }
             else {
                 // This node was the first in its row, update row header
-                findRowHeader(curr.row).setnNode(curr.right);
+                peekRowHeader(curr.row).setnNode(curr.right);
             }
 
             if (curr.right != null) {
                 curr.right.left = curr.left;
             }
+            compactRow(curr.row);
 
             curr = curr.down; // Move to the next node in the column
+            headCol.setnNode(curr); // the col now starts after the old node
+            if (curr != null) {
+                curr.up = null;
+            }
         }
 
         // Clear the column header's pointer, deleting the entire column list
         headCol.setnNode(null);
+        headCol.finger = null;
+        headCol.skip = null;
+        compactCol(col);
         return true;
     }
 
 
     /**
-     * Helper to locate row header that you want
-     * 
+     * Tell a list's skip levels about a node just linked into it, or give
+     * the list skip levels once the link makes it SkipIndex.THRESHOLD
+     * values long. Only writes get here, so searches never build an index
+     * and readers never write to the headers.
+     *
+     * @param head
+     *            - header of the row or col
+     * @param node
+     *            - the node just linked in
      * @param row
-     *            index of the row you are searching for
-     * @return null or the header of the row you are searching for
+     *            - true if head is a row
      */
-    public HeaderNode findRowHeader(int row) {
-        // Start 'prev' at the dummy header (index 0)
-        HeaderNode prev = rowHeader;
-        // Start 'curr' at the first *real* header (index >= 1)
-        HeaderNode curr = rowHeader.n;
+    private static void linked(HeaderNode head, Node node, boolean row) {
+        if (head.skip != null) {
+            head.skip.added(node);
+        }
+        else if (head.count >= SkipIndex.THRESHOLD) {
+            head.skip = new SkipIndex(head.getnNode(), row);
+        }
+    }
+
+
+    /**
+     * Find where a col belongs in a row: the last node with a smaller col.
+     * The walk starts from the row's finger when it looks closer than the
+     * start of the row, going right from it if the col is past it and left
+     * if not, so writes that move along a row in order take a step or two.
+     * A row long enough to have skip levels (see linked) is searched
+     * through them instead, so a write anywhere in it takes O(log n)
+     * steps. Nothing is written, so lookups can share it with readers.
+     * 
+     * @param headRow
+     *            header of the row to search
+     * @param col
+     *            col whose place you want
+     * @return the last node with a col below col, or null if there is none
+     */
+    private Node rowBefore(HeaderNode headRow, int col) {
+        Node finger = headRow.finger;
+        if (finger != null && finger.col < col && (finger.right == null
+            || finger.right.col >= col)) {
+            return finger; // the place is right after the finger
+        }
 
-        // Traverse the header list to find the correct sorted position
-        while (curr != null && curr.index < row) {
+        Node prev = null;
+        Node curr = headRow.getnNode();
+        int hops = 0; // nodes stepped over, for the counters
+        if (headRow.skip != null) {
+            // a node a few steps short of the place, or the finger if nearer
+            prev = headRow.skip.before(col);
+            if (finger != null && finger.col < col && (prev == null
+                || finger.col > prev.col)) {
+                prev = finger;
+            }
+            curr = prev == null ? curr : prev.right;
+        }
+        else if (finger != null && finger.col < col) {
+            prev = finger; // the place is after the finger
+            curr = finger.right;
+        }
+        else if (finger != null && (long)finger.col - col < (long)col
+            - curr.col) {
+            // the place is before the finger and nearer to it than the start
+            prev = finger.left;
+            while (prev != null && prev.col >= col) {
+                prev = prev.left;
+                hops++;
+            }
+            curr = null; // no forward walk needed
+        }
+        while (curr != null && curr.col < col) {
             prev = curr;
-            curr = curr.n;
+            curr = curr.right;
+            hops++;
         }
+        if (counters != null) {
+            counters.rowHops(hops);
+        }
+        return prev;
+    }
 
-        // Case 1: The header for this row already exists. Return it.
-        if (curr != null && curr.index == row) {
-            return curr;
+
+    /**
+     * Find where a row belongs in a col: the last node with a smaller row,
+     * starting from the col's finger or skip levels like rowBefore.
+     * 
+     * @param headCol
+     *            header of the col to search
+     * @param row
+     *            row whose place you want
+     * @return the last node with a row below row, or null if there is none
+     */
+    private Node colBefore(HeaderNode headCol, int row) {
+        Node finger = headCol.finger;
+        if (finger != null && finger.row < row && (finger.down == null
+            || finger.down.row >= row)) {
+            return finger; // the place is right after the finger
+        }
+
+        Node prev = null;
+        Node curr = headCol.getnNode();
+        int hops = 0; // nodes stepped over, for the counters
+        if (headCol.skip != null) {
+            // a node a few steps short of the place, or the finger if nearer
+            prev = headCol.skip.before(row);
+            if (finger != null && finger.row < row && (prev == null
+                || finger.row > prev.row)) {
+                prev = finger;
+            }
+            curr = prev == null ? curr : prev.down;
+        }
+        else if (finger != null && finger.row < row) {
+            prev = finger; // the place is after the finger
+            curr = finger.down;
+        }
+        else if (finger != null && (long)finger.row - row < (long)row
+            - curr.row) {
+            // the place is before the finger and nearer to it than the start
+            prev = finger.up;
+            while (prev != null && prev.row >= row) {
+                prev = prev.up;
+                hops++;
+            }
+            curr = null; // no forward walk needed
+        }
+        while (curr != null && curr.row < row) {
+            prev = curr;
+            curr = curr.down;
+            hops++;
+        }
+        if (counters != null) {
+            counters.colHops(hops);
         }
+        return prev;
+    }
 
-        // Case 2: Header not found. Create it and insert it between pre and cur
-        HeaderNode newNode = new HeaderNode(row);
-        newNode.n = curr; // Links new node to the next one (or null if at end)
-        prev.n = newNode; // Links the previous node to our new one
-        return newNode;
+
+    /**
+     * Helper to locate row header that you want. The header is looked up in
+     * the row directory, and only created and linked into the sorted header
+     * list if it is not there yet.
+     * 
+     * @param row
+     *            index of the row you are searching for
+     * @return the header of the row you are searching for
+     */
+    public HeaderNode findRowHeader(int row) {
+        if (counters != null) {
+            counters.headerLookup(rowDirectory.find(row) == null);
+        }
+        return rowDirectory.findOrCreate(row);
     }
 
 
     /**
-     * Helper to locate col header that you want
+     * Helper to locate col header that you want. The header is looked up in
+     * the col directory, and only created and linked into the sorted header
+     * list if it is not there yet.
      * 
      * @param col
-     *            index of the row you are searching for
-     * @return HeaderNode - null or the header node of the row you are searching
-     *         for
+     *            index of the col you are searching for
+     * @return HeaderNode - the header node of the col you are searching for
      */
     public HeaderNode findColHeader(int col) {
-        HeaderNode prev = colHeader;
-        HeaderNode curr = colHeader.n;
-
-        // Traverse the header list to find the correct sorted position
-        while (curr != null && curr.index < col) {
-            prev = curr;
-            curr = curr.n;
+        if (counters != null) {
+            counters.headerLookup(colDirectory.find(col) == null);
         }
+        return colDirectory.findOrCreate(col);
+    }
 
-        // Case 1: The header for this col already exists. Return it.
-        if (curr != null && curr.index == col) {
-            return curr;
+
+    /**
+     * Looks up the row header without creating one, so reads and deletes of
+     * unknown rows do not grow the header list.
+     * 
+     * @param row
+     *            index of the row you are searching for
+     * @return the header of the row, or null if the row has no header
+     */
+    public HeaderNode peekRowHeader(int row) {
+        return rowDirectory.find(row);
+    }
+
+
+    /**
+     * Looks up the col header without creating one, so reads and deletes of
+     * unknown cols do not grow the header list.
+     * 
+     * @param col
+     *            index of the col you are searching for
+     * @return the header of the col, or null if the col has no header
+     */
+    public HeaderNode peekColHeader(int col) {
+        return colDirectory.find(col);
+    }
+
+
+    /**
+     * Unlinks the row header if its row no longer has any nodes.
+     * 
+     * @param row
+     *            index of the row to check
+     */
+    private void compactRow(int row) {
+        HeaderNode headRow = rowDirectory.find(row);
+        if (headRow != null && headRow.getnNode() == null) {
+            rowDirectory.remove(row);
         }
+    }
 
-        // Case 2: Header not found. Create and insert.
-        HeaderNode newNode = new HeaderNode(col);
-        newNode.n = curr;
-        prev.n = newNode;
-        return newNode;
 
+    /**
+     * Unlinks the col header if its col no longer has any nodes.
+     * 
+     * @param col
+     *            index of the col to check
+     */
+    private void compactCol(int col) {
+        HeaderNode headCol = colDirectory.find(col);
+        if (headCol != null && headCol.getnNode() == null) {
+            colDirectory.remove(col);
+        }
     }
 
 
@@ -593,4 +1207,174 @@ public class SparseMatrix {
         return colHeader;
     }
 
+
+    /**
+     * Gets the number of rows that hold values.
+     * 
+     * @return the number of row headers
+     */
+    public int getRowCount() {
+        return rowDirectory.size();
+    }
+
+
+    /**
+     * Gets the number of cols that hold values.
+     * 
+     * @return the number of col headers
+     */
+    public int getColCount() {
+        return colDirectory.size();
+    }
+
+
+    /**
+     * Gets the number of values in the matrix, by adding up the counts kept
+     * on the row headers (one step per row, not per value).
+     * 
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        long nodes = 0;
+        for (HeaderNode h = rowHeader.getN(); h != null; h = h.getN()) {
+            nodes += h.getCount();
+        }
+        return nodes;
+    }
+
+
+
+    /**
+     * Get an Appender for bulk loading this matrix, which must be empty.
+     *
+     * @return a new Appender
+     * @throws IllegalStateException
+     *             if the matrix already holds values
+     */
+    Appender appender() {
+        if (rowDirectory.size() != 0 || colDirectory.size() != 0) {
+            throw new IllegalStateException("matrix is not empty");
+        }
+        return new Appender();
+    }
+
+
+    /**
+     * Bulk loader that links values given in strictly increasing (row, col)
+     * order straight onto the ends of their lists, with no search: the row
+     * being built is always the last row, and every node goes at the tail
+     * of its column, which the Appender remembers. Listeners are not told.
+     */
+    class Appender {
+        private final IntIntHashMap tailSlots; // col -> index into tails
+        private Node[] tails; // last node of each col seen so far
+        private HeaderNode[] heads; // header of each col seen so far
+        private HeaderNode headRow; // row being appended to, null at start
+        private Node last; // last node appended to headRow
+
+        /**
+         * Create a new Appender.
+         */
+        Appender() {
+            tailSlots = new IntIntHashMap();
+            tails = new Node[16];
+            heads = new HeaderNode[16];
+        }
+
+
+        /**
+         * Link a value after every value appended so far.
+         *
+         * @param row
+         *            - row value (reviewer)
+         * @param col
+         *            - column value (movie)
+         * @param val
+         *            - value (score)
+         * @throws IllegalArgumentException
+         *             if (row, col) is not after the last appended value
+         */
+        void append(int row, int col, int val) {
+            if (headRow != null && (row < headRow.getIndex() || (row == headRow
+                .getIndex() && col <= last.col))) {
+                throw new IllegalArgumentException("(" + row + ", " + col
+                    + ") is out of order");
+            }
+            if (headRow == null || row != headRow.getIndex()) {
+                headRow = findRowHeader(row);
+                last = null;
+            }
+            Node newNode = new Node(row, col, val);
+            newNode.left = last;
+            if (last == null) {
+                headRow.setnNode(newNode);
+            }
+            else {
+                last.right = newNode;
+            }
+            last = newNode;
+            headRow.record(val, 1);
+            linked(headRow, newNode, true);
+
+            int slot = tailSlots.get(col);
+            if (slot == IntIntHashMap.MISSING) {
+                slot = tailSlots.size();
+                if (slot == tails.length) {
+                    tails = Arrays.copyOf(tails, slot * 2);
+                    heads = Arrays.copyOf(heads, slot * 2);
+                }
+                tailSlots.put(col, slot);
+                heads[slot] = findColHeader(col);
+                heads[slot].setnNode(newNode);
+            }
+            else {
+                tails[slot].down = newNode;
+                newNode.up = tails[slot];
+            }
+            heads[slot].record(val, 1);
+            tails[slot] = newNode;
+            linked(heads[slot], newNode, false);
+        }
+    }
+
+
+    /**
+     * Callbacks for changes to the matrix, used to keep derived data (like
+     * MovieSimilarityCache) up to date without rescanning.
+     *
+     * -inserted is called once the new node is linked into its row and col
+     * -changed is called after a node's value was set to a different value
+     * -removing is called while the node is still linked; during removeRow
+     * and removeCol the nodes reported before it are already unlinked
+     */
+    public interface MatrixListener {
+
+        /**
+         * A node was added.
+         *
+         * @param node
+         *            - the new node, already linked
+         */
+        void inserted(Node node);
+
+
+        /**
+         * A node's value changed.
+         *
+         * @param node
+         *            - the node, holding its new value
+         * @param oldValue
+         *            - the value it had before
+         */
+        void changed(Node node, int oldValue);
+
+
+        /**
+         * A node is about to be unlinked.
+         *
+         * @param node
+         *            - the node, still linked
+         */
+        void removing(Node node);
+    }
 }
@@ -0,0 +1,439 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of the changes made to a MovieRaterDB. The file
+ * starts with an 8 byte header (MAGIC, VERSION) followed by fixed size
+ * records:
+ *
+ * -op (1 byte), then three ints a, b, c, then a CRC32 of those 13 bytes
+ * -ADD a=reviewer b=movie c=score, DELETE_SCORE a=reviewer b=movie,
+ * DELETE_REVIEWER a=reviewer, DELETE_MOVIE a=movie, CLEAR
+ *
+ * Group commit: records are collected in a buffer and written and forced
+ * to disk together, so one fsync covers a whole group. A group is forced
+ * once groupSize records are waiting, when sync() or close() is called, or
+ * maxDelayMillis after its first record was appended, whichever comes
+ * first; a shared daemon thread does the last. So a record waits at most
+ * about maxDelayMillis to become durable, and is only durable after the
+ * sync that covers it. The methods are synchronized against that thread.
+ *
+ * If a write or force fails, the log is marked failed and every later
+ * append, sync or reset throws: what reached the disk is unknown, so the
+ * only way on is to reopen the log, which replays what did.
+ *
+ * On open, the records already in the file are replayed into the
+ * database. Replay stops at the first short or corrupt record (the tail a
+ * crash in the middle of a write leaves behind), and the file is cut back
+ * to the last good record so new records follow it cleanly.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class WriteAheadLog implements Closeable {
+
+    static final byte ADD = 1; // record ops
+    static final byte DELETE_SCORE = 2;
+    static final byte DELETE_REVIEWER = 3;
+    static final byte DELETE_MOVIE = 4;
+    static final byte CLEAR = 5;
+
+    private static final int MAGIC = 0x4D52574C; // "MRWL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final ScheduledThreadPoolExecutor FLUSHER = flusher();
+    private static final int BODY_BYTES = 13; // op + 3 ints
+    static final int RECORD_BYTES = BODY_BYTES + 4; // body + CRC32
+
+    private final FileChannel channel; // the log file, positioned at its end
+    private final ByteBuffer pending; // records not written yet
+    private final int groupSize; // records per forced write
+    private final long maxDelayMillis; // longest a record waits to be forced
+    private ScheduledFuture<?> lateSync; // forces the waiting group, or null
+    private final CRC32 crc; // reused checksum
+    private long replayed; // records replayed on open
+    private long syncs; // forced writes done
+    private IOException failure; // why a write or force failed, or null
+
+    /**
+     * Open a log, creating it if needed, and replay what it holds.
+     *
+     * @param file
+     *            - the log file
+     * @param groupSize
+     *            - records collected before they are written and forced
+     *            together, 1 to force every record
+     * @param maxDelayMillis
+     *            - longest a record waits before its group is forced
+     * @param db
+     *            - the database to replay the existing records into
+     * @throws IOException
+     *             if the file cannot be read or written, or is not a log
+     */
+    WriteAheadLog(
+        Path file,
+        int groupSize,
+        long maxDelayMillis,
+        MovieRaterDB db)
+        throws IOException {
+        if (groupSize <= 0) {
+            throw new IllegalArgumentException("groupSize must be positive: "
+                + groupSize);
+        }
+        if (maxDelayMillis <= 0) {
+            throw new IllegalArgumentException(
+                "maxDelayMillis must be positive: " + maxDelayMillis);
+        }
+        this.groupSize = groupSize;
+        this.maxDelayMillis = maxDelayMillis;
+        pending = ByteBuffer.allocate(groupSize * RECORD_BYTES);
+        crc = new CRC32();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = replay(db);
+            channel.truncate(end); // drop a torn tail
+            channel.position(end);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Add a record to the log, writing and forcing the group if it is full,
+     * or making sure it is forced within maxDelayMillis if not.
+     *
+     * @param op
+     *            - the operation
+     * @param a
+     *            - first argument
+     * @param b
+     *            - second argument
+     * @param c
+     *            - third argument
+     * @throws IOException
+     *             if the group cannot be written, or the log failed
+     *             before
+     */
+    synchronized void append(byte op, int a, int b, int c)
+        throws IOException {
+        checkUsable();
+        int start = pending.position();
+        pending.put(op).putInt(a).putInt(b).putInt(c);
+        crc.reset();
+        crc.update(pending.array(), start, BODY_BYTES);
+        pending.putInt((int)crc.getValue());
+        if (pending.position() == groupSize * RECORD_BYTES) {
+            sync();
+        }
+        else if (lateSync == null) {
+            // first record of the group: start its clock
+            lateSync = FLUSHER.schedule(this::syncLate, maxDelayMillis,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Throw away every record and log a CLEAR. Used for clear(), after
+     * which nothing before it matters.
+     *
+     * @throws IOException
+     *             if the file cannot be cut, or the log failed before
+     */
+    synchronized void reset() throws IOException {
+        truncate();
+        append(CLEAR, 0, 0, 0);
+        sync();
+    }
+
+
+    /**
+     * Throw away every record, waiting ones included, leaving an empty
+     * log. Used once a checkpoint holds every change logged so far.
+     *
+     * @throws IOException
+     *             if the file cannot be cut, or the log failed before
+     */
+    synchronized void truncate() throws IOException {
+        checkUsable();
+        if (lateSync != null) {
+            lateSync.cancel(false); // nothing left for it to force
+            lateSync = null;
+        }
+        pending.clear();
+        try {
+            channel.truncate(HEADER_BYTES);
+            channel.position(HEADER_BYTES);
+            channel.force(false);
+        }
+        catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+
+    /**
+     * Write the waiting records and force them to disk.
+     *
+     * @throws IOException
+     *             if writing fails, or the log failed before
+     */
+    synchronized void sync() throws IOException {
+        checkUsable();
+        if (lateSync != null) {
+            lateSync.cancel(false); // this sync covers its group
+            lateSync = null;
+        }
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            channel.force(false);
+        }
+        catch (IOException e) {
+            failure = e; // part of the group may be on disk, or none
+            throw e;
+        }
+        finally {
+            pending.clear(); // never leave the buffer flipped
+        }
+        syncs++;
+    }
+
+
+    /**
+     * Get the number of records replayed when the log was opened.
+     *
+     * @return the record count
+     */
+    synchronized long replayed() {
+        return replayed;
+    }
+
+
+    /**
+     * Get the number of forced writes done since the log was opened.
+     *
+     * @return the sync count
+     */
+    synchronized long syncs() {
+        return syncs;
+    }
+
+
+    /**
+     * Sync the waiting records and close the file. A failed log is closed
+     * without syncing.
+     *
+     * @throws IOException
+     *             if writing or closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (failure == null) {
+                sync();
+            }
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+
+    /**
+     * Force the waiting group because its first record has waited
+     * maxDelayMillis. Runs on the flusher thread; a failure is kept, so
+     * the next append or sync reports it.
+     */
+    private synchronized void syncLate() {
+        lateSync = null;
+        if (failure != null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            sync();
+        }
+        catch (IOException e) {
+            // sync() recorded it as the log's failure
+        }
+    }
+
+
+    /**
+     * Make the thread that forces groups which waited too long: one for
+     * every log, a daemon, so it never keeps the program running.
+     *
+     * @return the executor
+     */
+    private static ScheduledThreadPoolExecutor flusher() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+            1, task -> {
+                Thread thread = new Thread(task, "WriteAheadLog flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.setRemoveOnCancelPolicy(true); // drop cancelled syncs
+        return executor;
+    }
+
+
+    /**
+     * Make sure no write or force has failed yet.
+     *
+     * @throws IOException
+     *             if one has, with that failure as the cause
+     */
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw new IOException("log failed earlier, reopen it", failure);
+        }
+    }
+
+
+    /**
+     * Replay every good record into the database. Runs of adds are linked
+     * in as one sorted batch, like CommandProcessor does. Writes the header
+     * if the file is empty.
+     *
+     * @param db
+     *            - the database to replay into
+     * @return the file position after the last good record
+     * @throws IOException
+     *             if reading fails or the file is not a log
+     */
+    private long replay(MovieRaterDB db) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (channel.size() < HEADER_BYTES) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+            return HEADER_BYTES;
+        }
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("not a MovieRater log");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+        RatingBatch adds = new RatingBatch();
+        long good = HEADER_BYTES; // end of the last good record
+        long at = HEADER_BYTES; // file position of buffer's start
+        boolean torn = false;
+        channel.position(HEADER_BYTES);
+        while (!torn && channel.read(buffer) > 0) {
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_BYTES) {
+                int start = buffer.position();
+                crc.reset();
+                crc.update(buffer.array(), start, BODY_BYTES);
+                byte op = buffer.get();
+                int a = buffer.getInt();
+                int b = buffer.getInt();
+                int c = buffer.getInt();
+                if (buffer.getInt() != (int)crc.getValue()) {
+                    torn = true;
+                    break;
+                }
+                apply(db, adds, op, a, b, c);
+                good = at + buffer.position();
+                replayed++;
+            }
+            at += buffer.position();
+            buffer.compact();
+        }
+        flushAdds(db, adds);
+        return good;
+    }
+
+
+    /**
+     * Apply one replayed record.
+     *
+     * @param db
+     *            - the database
+     * @param adds
+     *            - adds waiting to be linked in
+     * @param op
+     *            - the operation
+     * @param a
+     *            - first argument
+     * @param b
+     *            - second argument
+     * @param c
+     *            - third argument
+     * @throws IOException
+     *             if the op is not known
+     */
+    private static void apply(
+        MovieRaterDB db,
+        RatingBatch adds,
+        byte op,
+        int a,
+        int b,
+        int c)
+        throws IOException {
+        if (op == ADD) {
+            adds.add(a, b, c);
+            if (adds.size() == RatingLoader.BATCH_SIZE) {
+                flushAdds(db, adds);
+            }
+            return;
+        }
+        flushAdds(db, adds); // later ops must see the adds before them
+        switch (op) {
+            case DELETE_SCORE:
+                db.deleteScore(a, b);
+                break;
+            case DELETE_REVIEWER:
+                db.deleteReviewer(a);
+                break;
+            case DELETE_MOVIE:
+                db.deleteMovie(a);
+                break;
+            case CLEAR:
+                db.clear();
+                break;
+            default:
+                throw new IOException("bad log op " + op);
+        }
+    }
+
+
+    /**
+     * Link the waiting adds into the database.
+     *
+     * @param db
+     *            - the database
+     * @param adds
+     *            - the adds, emptied
+     */
+    private static void flushAdds(MovieRaterDB db, RatingBatch adds) {
+        if (adds.size() > 0) {
+            db.addBatch(adds);
+            adds.clear();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ids from 1 to n with a Zipf distribution: id k comes up in
+ * proportion to 1 / k^exponent, so a few ids (the blockbuster movies, the
+ * heavy reviewers) get most of the ratings, like real rating data. Used to
+ * build synthetic data for MovieRaterBenchmark.
+ *
+ * The cumulative distribution is computed once, and each draw is a binary
+ * search over it. The same seed always gives the same ids.
+ *
+ * @author benblucher, austink23
+ *
+ * @version Oct 17, 2026
+ */
+class ZipfGenerator {
+
+    private final double[] cdf; // cdf[k - 1] = P(id <= k)
+    private final Random random; // source of the draws
+
+    /**
+     * Create a new ZipfGenerator.
+     *
+     * @param n
+     *            - largest id
+     * @param exponent
+     *            - skew, 0 for uniform, about 1 for typical rating data
+     * @param seed
+     *            - random seed
+     */
+    ZipfGenerator(int n, double exponent, long seed) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        cdf = new double[n];
+        double total = 0;
+        for (int k = 1; k <= n; k++) {
+            total += 1 / Math.pow(k, exponent);
+            cdf[k - 1] = total;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= total;
+        }
+        random = new Random(seed);
+    }
+
+
+    /**
+     * Draw the next id.
+     *
+     * @return an id from 1 to n
+     */
+    int next() {
+        int i = Arrays.binarySearch(cdf, random.nextDouble());
+        if (i < 0) {
+            i = -i - 1; // first k with P(id <= k) above the draw
+        }
+        return Math.min(i, cdf.length - 1) + 1;
+    }
+}